@@ -0,0 +1,160 @@
+package assembler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the JMH benchmarks of the assembler with the usual JMH options, always with the GC profiler
+// so every result comes with its allocation rate and bytes per operation
+public class AssemblerBenchmark {
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+    
+    // A generated program, its bytes and where each of its lines starts and ends
+    @State(Scope.Benchmark)
+    public static class Source {
+        @Param("100000")
+        public int lines;
+        
+        @Param("0.3")
+        public double labels;
+        
+        @Param("0.1")
+        public double format4;
+        
+        @Param("0.5")
+        public double base;
+        
+        @Param("0.15")
+        public double data;
+        
+        @Param("0.5")
+        public double words;
+        
+        File file;
+        byte[] bytes;
+        int[] starts;
+        int[] ends;
+        
+        @Setup(Level.Trial)
+        public void generate() throws IOException {
+            file = File.createTempFile("bench", ".asm");
+            generator().generate(lines, file);
+            bytes = Files.readAllBytes(file.toPath());
+            
+            int count = 0;
+            
+            for (byte b : bytes) {
+                if (b == '\n') {
+                    count++;
+                }
+            }
+            
+            starts = new int[count];
+            ends = new int[count];
+            
+            for (int i = 0, line = 0, start = 0; i < bytes.length; i++) {
+                if (bytes[i] == '\n') {
+                    starts[line] = start;
+                    ends[line++] = i;
+                    start = i + 1;
+                }
+            }
+        }
+        
+        @TearDown(Level.Trial)
+        public void delete() {
+            file.delete();
+        }
+        
+        // A generator of programs with this one's mix
+        SourceGenerator generator() {
+            return new SourceGenerator(42).setLabelDensity(labels).setFormat4Ratio(format4).setBaseUsage(base)
+                    .setDataRatio(data).setWordRatio(words);
+        }
+        
+        // An empty file for the output of the benchmarks that assemble it
+        File output(String suffix) throws IOException {
+            File output = File.createTempFile("bench", suffix);
+            
+            output.deleteOnExit();
+            
+            return output;
+        }
+    }
+    
+    // The units of work done by a benchmark whose operation is a whole pass or load, reported
+    // alongside it as rates
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Statements {
+        public long statements;
+        
+        @Setup(Level.Iteration)
+        public void reset() {
+            statements = 0;
+        }
+    }
+    
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Records {
+        public long records;
+        public long bytes;
+        
+        @Setup(Level.Iteration)
+        public void reset() {
+            records = 0;
+            bytes = 0;
+        }
+    }
+    
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Instructions {
+        public long instructions;
+        
+        @Setup(Level.Iteration)
+        public void reset() {
+            instructions = 0;
+        }
+    }
+    
+    static class NullChannel implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            
+            src.position(src.limit());
+            
+            return n;
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+}
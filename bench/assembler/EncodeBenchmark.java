@@ -0,0 +1,96 @@
+package assembler;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Encoding one instruction of each format, and writing one text record, per operation
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class EncodeBenchmark {
+    private static final String[][] INSTRUCTIONS = {
+        { "\tFIX", "\tFLOAT", "\tNORM" },
+        { "\tCLEAR\tX", "\tCOMPR\tA,S", "\tSHIFTL\tT,4" },
+        { "\tLDA\t#3", "\tCOMP\t#0", "\tLDT\t#2048" },
+        { "\t+LDA\t#3", "\t+JSUB\t#4096", "\t+LDT\t#1024" },
+    };
+    
+    @State(Scope.Thread)
+    public static class Encoding {
+        @Param({ "1", "2", "3", "4" })
+        public int format;
+        
+        Assembler assembler;
+        AssemblyContext context;
+        CodeBuffer code;
+        Statement[] statements;
+        int next;
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            Lexer lexer = new Lexer(new SymbolPool(), new SymbolTable());
+            String[] lines = INSTRUCTIONS[format - 1];
+            
+            assembler = new Assembler();
+            context = new AssemblyContext();
+            code = new CodeBuffer();
+            statements = new Statement[lines.length];
+            
+            for (int i = 0; i < lines.length; i++) {
+                byte[] bytes = lines[i].getBytes();
+                
+                statements[i] = lexer.parse(bytes, 0, bytes.length);
+            }
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class Records {
+        ObjectProgramWriter writer;
+        byte[] record;
+        int address;
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            writer = new ObjectProgramWriter(new AssemblerBenchmark.NullChannel());
+            record = new byte[TextRecord.DEFAULT_LENGTH];
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            writer.flush();
+        }
+    }
+    
+    @Benchmark
+    public CodeBuffer encode(Encoding encoding) throws Exception {
+        Statement statement = encoding.statements[encoding.next];
+        
+        encoding.next = encoding.next + 1 == encoding.statements.length ? 0 : encoding.next + 1;
+        encoding.code.clear();
+        encoding.assembler.assembleInstruction(statement, encoding.context, encoding.code);
+        
+        return encoding.code;
+    }
+    
+    @Benchmark
+    public void textRecord(Records records) throws IOException {
+        records.writer.text(records.address++, records.record, 0, records.record.length);
+    }
+}
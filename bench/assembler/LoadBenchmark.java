@@ -0,0 +1,109 @@
+package assembler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Loading the generated program until the memory is full, and running a counting loop in the
+// simulator
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+    // The relocating loader takes a program of one control section, which a program of any mix
+    // with at most this many lines stays in
+    static final int LOAD_LINES = 200000;
+    
+    @State(Scope.Benchmark)
+    public static class Objects {
+        @Param({ "text", "binary", "text.long" })
+        public String format;
+        
+        File object;
+        byte[] memory;
+        
+        @Setup(Level.Trial)
+        public void setUp(AssemblerBenchmark.Source source) throws IOException {
+            AssemblerOptions options = new AssemblerOptions().setOutputFormat(format.equals("binary") ? OutputFormat.BINARY : OutputFormat.TEXT);
+            
+            if (format.equals("text.long")) {
+                options.setRecordLength(TextRecord.MAX_LENGTH);
+            }
+            
+            File program = source.output(".asm");
+            
+            source.generator().generate(Math.min(source.lines, LOAD_LINES), program);
+            object = source.output(format.equals("binary") ? ".obj" : ".o");
+            memory = new byte[1 << 24];
+            new Assembler(options).assemble(program, object);
+            program.delete();
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            object.delete();
+        }
+    }
+    
+    @State(Scope.Benchmark)
+    public static class Loop {
+        File source;
+        File object;
+        
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            source = File.createTempFile("loop", ".asm");
+            object = BatchAssembler.outputFile(source, OutputFormat.TEXT);
+            Files.write(source.toPath(), ("LOOP\tSTART\t0\nFIRST\tLDX\t#0\n\tLDA\t#0\nNEXT\tADD\t#1\n\tTIX\tCOUNT\n"
+                    + "\tJLT\tNEXT\n\tSTA\tSUM\n\tRSUB\nCOUNT\tWORD\t1000000\nSUM\tRESW\t1\n\tEND\tFIRST\n").getBytes());
+            new Assembler().assemble(source, object);
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            source.delete();
+            object.delete();
+        }
+    }
+    
+    // Relocates copies of the program one after another until the memory is full
+    @Benchmark
+    public RelocatingLoader load(Objects objects, AssemblerBenchmark.Records counters) throws IOException {
+        RelocatingLoader loader = new RelocatingLoader(objects.memory);
+        int length = loader.load(objects.object).length();
+        
+        while (loader.next() + length <= objects.memory.length) {
+            loader.load(objects.object);
+        }
+        
+        counters.records += loader.records();
+        counters.bytes += loader.bytes();
+        
+        return loader;
+    }
+    
+    @Benchmark
+    public void simulate(Loop loop, AssemblerBenchmark.Instructions counters) throws IOException {
+        try (Simulator simulator = new Simulator()) {
+            simulator.load(loop.object);
+            counters.instructions += simulator.run().instructions();
+        }
+    }
+}
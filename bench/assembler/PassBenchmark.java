@@ -0,0 +1,155 @@
+package assembler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The front end and the two passes over the generated program
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PassBenchmark {
+    // One Lexer, with its symbol pool and table, reused for every line, as pass 1 does
+    @State(Scope.Thread)
+    public static class Lexing {
+        Lexer lexer;
+        int line;
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            lexer = new Lexer(new SymbolPool(), new SymbolTable());
+            line = 0;
+        }
+    }
+    
+    // The program after pass 1, for pass 2: a store and context for each control section, as a
+    // program past the address space of format 4 has several
+    @State(Scope.Thread)
+    public static class Pass1 {
+        Assembler assembler;
+        List<AssemblyContext> contexts;
+        List<StatementStore> stores;
+        File output;
+        
+        @Setup(Level.Trial)
+        public void setUp(AssemblerBenchmark.Source source) throws IOException {
+            assembler = new Assembler();
+            contexts = new ArrayList<>();
+            stores = new ArrayList<>();
+            output = source.output(".o");
+            
+            for (long next = 0; next >= 0; ) {
+                AssemblyContext context = new AssemblyContext();
+                StatementStore store = new StatementStore();
+                
+                contexts.add(context);
+                stores.add(store);
+                next = assembler.processPass1(source.file, next, Long.MAX_VALUE, store, context);
+            }
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            for (StatementStore store : stores) {
+                store.close();
+            }
+            
+            output.delete();
+        }
+    }
+    
+    // A quarter of the lines invoke a macro, SUM with the same few arguments and COPY with a
+    // unique label, so the expansions come from the memoized templates
+    @State(Scope.Benchmark)
+    public static class Macros {
+        Assembler assembler;
+        File file;
+        
+        @Setup(Level.Trial)
+        public void setUp(AssemblerBenchmark.Source source) throws IOException {
+            StringBuilder text = new StringBuilder("MACROS\tSTART\t0\n");
+            
+            text.append("SUM\tMACRO\t&A,&B,&C\n\tLDA\t&A\n\tADD\t&B\n\tSTA\t&C\n\tMEND\n");
+            text.append("COPY\tMACRO\t&FROM,&TO,&N\n\tLDX\t#0\n$LOOP\tLDCH\t&FROM,X\n\tSTCH\t&TO,X\n\tTIX\t#&N\n\tJLT\t$LOOP\n\tMEND\n");
+            
+            for (int i = 0; i < source.lines / 4; i++) {
+                text.append(i % 2 == 0 ? "\tSUM\tX" + i % 16 + ",Y,Z\n" : "\tCOPY\tX" + i % 16 + ",Y,8\n");
+            }
+            
+            for (int i = 0; i < 16; i++) {
+                text.append("X" + i + "\tWORD\t" + i + "\n");
+            }
+            
+            text.append("Y\tRESW\t1\nZ\tRESW\t1\n\tEND\tMACROS\n");
+            assembler = new Assembler();
+            file = source.output(".asm");
+            Files.write(file.toPath(), text.toString().getBytes());
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            file.delete();
+        }
+    }
+    
+    // One source line per operation
+    @Benchmark
+    public Statement lex(AssemblerBenchmark.Source source, Lexing lexing) {
+        int line = lexing.line;
+        
+        lexing.line = line + 1 == source.starts.length ? 0 : line + 1;
+        
+        return lexing.lexer.parse(source.bytes, source.starts[line], source.ends[line]);
+    }
+    
+    // Every control section in turn
+    @Benchmark
+    public void pass1(AssemblerBenchmark.Source source, AssemblerBenchmark.Statements counters) throws IOException {
+        Assembler assembler = new Assembler();
+        
+        for (long next = 0; next >= 0; ) {
+            try (StatementStore store = new StatementStore()) {
+                next = assembler.processPass1(source.file, next, Long.MAX_VALUE, store, new AssemblyContext());
+                counters.statements += store.size();
+            }
+        }
+    }
+    
+    @Benchmark
+    public void pass2(Pass1 pass1, AssemblerBenchmark.Statements counters) throws IOException {
+        for (int k = 0; k < pass1.stores.size(); k++) {
+            pass1.assembler.processPass2(pass1.stores.get(k), pass1.output, pass1.contexts.get(k), null, null);
+            counters.statements += pass1.stores.get(k).size();
+        }
+    }
+    
+    @Benchmark
+    public void macroExpand(Macros macros, AssemblerBenchmark.Statements counters) throws IOException {
+        AssemblyContext context = new AssemblyContext();
+        
+        context.setMacros(new MacroProcessor(new MacroTable(), context.symbolTable(), false));
+        
+        try (StatementStore store = new StatementStore()) {
+            macros.assembler.processPass1(macros.file, store, context);
+            counters.statements += store.size();
+        }
+    }
+}
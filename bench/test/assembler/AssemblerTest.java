@@ -0,0 +1,61 @@
+package assembler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AssemblerTest {
+    @TempDir
+    File dir;
+    
+    // The errors of assembling the source with the options
+    private List<String> assemble(String source, AssemblerOptions options) throws IOException {
+        File input = new File(dir, "p.asm");
+        AssemblyContext context = new AssemblyContext();
+        
+        Files.write(input.toPath(), source.getBytes());
+        new Assembler(options).assemble(input, new File(dir, "p.o"), context);
+        
+        return context.errors();
+    }
+    
+    // A format 4 target past the 20 bit address field, forward and backward
+    @Test
+    void format4TargetOutOfRange() throws IOException {
+        String forward = "P\tSTART\t0\nF\t+JSUB\tFAR\n\tRESB\t1048576\nFAR\tRSUB\n\tEND\tF\n";
+        String backward = "P\tSTART\t0\nF\tJ\tL\n\tRESB\t1048576\nFAR\tRSUB\nL\t+JSUB\tFAR\n\tEND\tF\n";
+        
+        for (AssemblerOptions options : new AssemblerOptions[] { new AssemblerOptions(), new AssemblerOptions().setOnePass(true), new AssemblerOptions().setPipelined(true) }) {
+            assertEquals(List.of("Displacement out of range: FAR"), assemble(forward, options));
+            assertTrue(assemble(backward, options).contains("Displacement out of range: FAR"));
+        }
+    }
+    
+    @Test
+    void format4TargetAtLastAddress() throws IOException {
+        String source = "P\tSTART\t0\nF\t+JSUB\tLAST\n\tRESB\t1048571\nLAST\tRSUB\n\tEND\tF\n";
+        
+        assertEquals(List.of(), assemble(source, new AssemblerOptions()));
+        assertEquals(List.of(), assemble(source, new AssemblerOptions().setOnePass(true)));
+    }
+    
+    // An incremental run reuses nothing a run with relaxation turned the other way cached
+    @Test
+    void incrementalCacheKeepsRelaxation() throws IOException {
+        String source = "P\tSTART\t0\nF\tJSUB\tFAR\n\tRESB\t8192\nFAR\tRSUB\n\tEND\tF\n";
+        AssemblerOptions relaxed = new AssemblerOptions().setIncremental(true).setRelax(true);
+        AssemblerOptions strict = new AssemblerOptions().setIncremental(true);
+        
+        assertEquals(List.of(), assemble(source, relaxed));
+        assertEquals(List.of("Displacement out of range: FAR"), assemble(source, strict));
+        assertEquals(List.of(), assemble(source, relaxed));
+        assertEquals(List.of(), assemble(source, relaxed));
+    }
+}
@@ -0,0 +1,37 @@
+package assembler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SourceGeneratorTest {
+    @TempDir
+    File dir;
+    
+    // A program past the address space of format 4 goes on in control sections that each fit it
+    @Test
+    void largeProgramAssembles() throws IOException {
+        File input = new File(dir, "p.asm");
+        File output = new File(dir, "p.o");
+        AssemblyContext context = new AssemblyContext();
+        
+        new SourceGenerator(42).generate(1000000, input);
+        new Assembler().assemble(input, output, context);
+        assertEquals(List.of(), context.errors());
+        
+        List<String> headers = Files.readAllLines(output.toPath()).stream().filter(line -> line.startsWith("H")).toList();
+        
+        assertTrue(headers.size() > 1);
+        
+        for (String header : headers) {
+            assertTrue(Integer.parseInt(header.substring(13, 19), 16) <= 0xFFFFF, header);
+        }
+    }
+}
@@ -1,318 +1,1216 @@
 package assembler;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class Assembler {
-    private int _locctr;
-    private int _startAddress;
-    private int _firstExecAddress;
-    private int _programLength;
-    private int _baseAddress;
-    private final Map<String, Operation> _opTable;
+    // nixbpe flag bits of a format 3/4 instruction
+    static final int N = 1 << 5;
+    static final int I = 1 << 4;
+    static final int X = 1 << 3;
+    static final int B = 1 << 2;
+    static final int P = 1 << 1;
+    static final int E = 1;
+    
+    // Pass 2 is encoded in parallel for programs of at least a few chunks
+    static final int CHUNK_SIZE = 8192;
+    static final int PARALLEL_THRESHOLD = 4 * CHUNK_SIZE;
+    static final int PASS1_CHUNK_BYTES = 1 << 22;
+    
+    private final int _memoryLimit;
+    private final OutputFormat _outputFormat;
+    private final boolean _incremental;
+    private final boolean _metrics;
+    private final boolean _onePass;
+    private final boolean _relax;
+    private final boolean _pipelined;
+    private final boolean _listing;
+    private final int _parallelism;
+    private final int _recordLength;
     private final Map<String, Integer> _registerTable;
-    private final Map<String, Integer> _symbolTable;
     
     public Assembler() {
-        _opTable = Utility.getOperaionTable();
+        this(new AssemblerOptions());
+    }
+    
+    public Assembler(int memoryLimit) {
+        this(new AssemblerOptions().setMemoryLimit(memoryLimit));
+    }
+    
+    public Assembler(AssemblerOptions options) {
+        _memoryLimit = options.memoryLimit();
+        _outputFormat = options.outputFormat();
+        _incremental = options.isIncremental();
+        _metrics = options.isMetricsEnabled();
+        _onePass = options.isOnePass();
+        _relax = options.isRelax();
+        _pipelined = options.isPipelined();
+        _listing = options.isListing();
+        _parallelism = options.parallelism();
+        _recordLength = options.recordLength();
         _registerTable = Utility.getRegisterTable();
+    }
+    
+    public OutputFormat outputFormat() {
+        return _outputFormat;
+    }
+    
+    int recordLength() {
+        return _recordLength;
+    }
+    
+    public void assemble(File input, File output) throws IOException {
+        AssemblyContext context = new AssemblyContext();
+        
+        assemble(input, output, context);
         
-        _symbolTable = new HashMap<>();
-        _symbolTable.put(null, 0);
+        for (String error : context.errors()) {
+            System.out.println(error);
+        }
     }
     
-    public void assemble(File input, File output) throws IOException, ClassNotFoundException {
-        File intermediateFile = new File(".assembler.tmp");
-
-        try {
-            intermediateFile.createNewFile();
-
-            processPass1(input, intermediateFile);
-
-            processPass2(intermediateFile, output);
+    public void assemble(File input, File output, AssemblyContext context) throws IOException {
+        if (_metrics && context.metrics() == null) {
+            context.setMetrics(new AssemblyMetrics(input.getPath()));
+        }
+        
+        // Macros are defined as pass 1 reads them; one-pass mode has its own
+        if (_onePass == false) {
+            context.setMacros(new MacroProcessor(new MacroTable(), context.symbolTable(), _incremental));
+        }
+        
+        // The listing is written as pass 2 packs the records, and summarized when it is closed
+        try (Listing listing = _listing && _onePass == false ? new Listing(Listing.file(input), context.symbolTable()) : null) {
+            context.setListing(listing);
+            
+            if (_onePass) {
+                new OnePassAssembler(this).assemble(input, output, context);
+            } else if (_incremental) {
+                assembleIncremental(input, output, context);
+            } else if (_pipelined) {
+                new PipelinedAssembler(this, _memoryLimit, _parallelism).assemble(input, output, context);
+            } else {
+                try (RecordWriter objectProgram = open(output, context)) {
+                    new SectionAssembler(this, _memoryLimit, _parallelism).assemble(input, objectProgram, context, null, null);
+                }
+            }
         } finally {
-            intermediateFile.delete();
+            context.setListing(null);
         }
     }
     
-    private void processPass1(File input, File output) throws IOException {
-        try (Scanner scanner = new Scanner(input);
-             FileOutputStream ostream = new FileOutputStream(output);
-             ObjectOutputStream objOutputStream = new ObjectOutputStream(ostream);) {
+    private void assembleIncremental(File input, File output, AssemblyContext context) throws IOException {
+        File cacheFile = AssemblyCache.cacheFile(input);
+        AssemblyCache previous = AssemblyCache.load(cacheFile);
+        long sourceHash = AssemblyCache.hash(input);
+        long sourceLength = input.length();
+        int options = (_relax ? AssemblyCache.RELAX : 0) | (_onePass ? AssemblyCache.ONE_PASS : 0);
+        
+        // An unchanged source is not assembled again, unless its listing is wanted
+        if (previous != null && context.listing() == null && previous.matches(sourceHash, sourceLength, _outputFormat, _recordLength, options)) {
+            Files.write(output.toPath(), previous.object());
             
-            _locctr = _startAddress = 0;
-            _firstExecAddress = -1;
+            return;
+        }
+        
+        // Turning relaxation on or off changes the code of the lines it promotes, or would have
+        if (previous != null && previous.hasOptions(options) == false) {
+            previous = null;
+        }
+        
+        AssemblyCache cache = new AssemblyCache(sourceHash, sourceLength, _outputFormat, _recordLength, options);
+        
+        // Each control section reuses and fills the cache for its own lines
+        try (RecordWriter objectProgram = open(output, context)) {
+            new SectionAssembler(this, _memoryLimit, _parallelism).assemble(input, objectProgram, context, previous, cache);
+        }
+        
+        if (context.errors().isEmpty()) {
+            cache.setObject(Files.readAllBytes(output.toPath()));
+            cache.save(cacheFile);
+        } else {
+            cacheFile.delete();
+        }
+    }
+    
+    // The object program written to the file, counted in the metrics when there are any
+    RecordWriter open(File output, AssemblyContext context) throws IOException {
+        return context.metrics() != null ? new MeteredRecordWriter(_outputFormat.open(output), context.metrics()) : _outputFormat.open(output);
+    }
+    
+    long processPass1(File input, StatementStore output, AssemblyContext context) throws IOException {
+        return processPass1(input, 0, Long.MAX_VALUE, output, context);
+    }
+    
+    // Pass 1 over the lines that begin in [start, end), up to the CSECT line that begins the next
+    // control section; returns the file position of that line, or -1 when there is none
+    long processPass1(File input, long start, long end, StatementStore output, AssemblyContext context) throws IOException {
+        AssemblyMetrics metrics = context.metrics();
+        long next = -1;
+        
+        if (metrics != null) {
+            metrics.begin(AssemblyMetrics.Phase.PASS1);
+        }
+        
+        if (_parallelism > 1 && Math.min(end, input.length()) - start >= 4L * PASS1_CHUNK_BYTES) {
+            next = processPass1Parallel(input, start, end, output, context);
+        } else {
+            FileChannel channel = FileChannel.open(input.toPath(), StandardOpenOption.READ);
             
-            while (scanner.hasNext()) {
-                try {
-                    Statement statement = Statement.parse(scanner.nextLine());
-
+            try (MappedSourceReader reader = new MappedSourceReader(channel, true, start, end, MappedSourceReader.DEFAULT_SEGMENT_SIZE)) {
+                Lexer lexer = new Lexer(new SymbolPool(), context.symbolTable());
+                int first = context.line();   // lines before the section
+                
+                while (metrics != null ? read(reader, metrics) : reader.next()) {
+                    if (metrics != null) {
+                        metrics.begin(AssemblyMetrics.Phase.PARSE);
+                    }
+                    
+                    Statement statement = lexer.parse(reader.buffer(), reader.lineStart(), reader.lineEnd());
+                    
+                    if (metrics != null) {
+                        metrics.end(AssemblyMetrics.Phase.PARSE);
+                    }
+                    
+                    if (statement == null) {
+                        continue;
+                    }
+                    
+                    statement.setLine(first + reader.lineNumber());
+                    
                     if (statement.isComment()) {
+                        placeComment(statement, output, context);
+                        
                         continue;
+                    } else if (isSectionStart(statement, output, context)) {
+                        next = reader.linePosition();
+                        context.setLine(statement.line() - 1);
+                        
+                        break;
                     }
                     
-                    statement.setLocation(_locctr);
+                    if (_incremental) {
+                        statement.setSourceHash(AssemblyCache.hash(reader.buffer(), reader.lineStart(), reader.lineEnd()));
+                    }
                     
-                    if (statement.label() != null) {
-                        if (_symbolTable.containsKey(statement.label())) {
-                            throw new DuplicateSymbolException(statement);
-                        } else {
-                            _symbolTable.put(statement.label(), _locctr);
-                        }
+                    place(statement, length(statement), output, context);
+                }
+            }
+        }
+        
+        endPass1(output, context);
+        
+        return next;
+    }
+    
+    // A CSECT line begins the next control section, unless the section pass 1 is placing has no
+    // statements yet or the line belongs to a macro definition
+    static boolean isSectionStart(Statement statement, StatementStore output, AssemblyContext context) {
+        return statement.compareTo("CSECT") == 0 && context.statements() > 0 && (context.macros() == null || context.macros().isDefining() == false);
+    }
+    
+    // Comments are kept at the location counter for the listing, and only then; those inside a
+    // macro definition are not
+    static void placeComment(Statement statement, StatementStore output, AssemblyContext context) throws IOException {
+        if (context.listing() != null && (context.macros() == null || context.macros().isDefining() == false)) {
+            statement.setLocation(context.locctr());
+            output.add(statement);
+        }
+    }
+    
+    // Places what pass 1 still holds and seals the symbol table
+    void endPass1(StatementStore output, AssemblyContext context) throws IOException {
+        AssemblyMetrics metrics = context.metrics();
+        
+        // A section that ends without END keeps its own literals
+        if (context.literals().isEmpty() == false) {
+            placeLiterals(output, context);
+        }
+        
+        if (context.macros() != null) {
+            try {
+                context.macros().finish();
+            } catch (InvalidMacroException e) {
+                context.addError(e.getMessage());
+            }
+        }
+        
+        context.setProgramLength(Math.max(context.locctr(), context.highWater()) - context.startAddress());
+        
+        if (metrics != null) {
+            metrics.end(AssemblyMetrics.Phase.PASS1);
+        }
+        
+        resolveSymbols(context);
+    }
+    
+    // Relaxation moves statements, so it needs them all in memory
+    void relax(StatementStore intermediate, AssemblyContext context) {
+        if (_relax == false) {
+            return;
+        }
+        
+        if (intermediate.isSpilled()) {
+            context.addError("Relaxation needs every statement in memory; raise the limit with -m");
+        } else {
+            new Relaxer(intermediate, context).relax();
+        }
+    }
+    
+    // Bytes taken by a statement, which depend on nothing but the statement; -1 for an unknown operation
+    static int length(Statement statement) {
+        switch (statement.operation()) {
+            case "START":
+            case "END":
+            case "BASE":
+            case "NOBASE":
+            case "CSECT":
+            case "EXTDEF":
+            case "EXTREF":
+            case "LTORG":
+            case "EQU":
+            case "ORG":
+                return 0;
+            case "WORD":
+                return 3;
+            case "RESW":
+                int words = count(statement.operand1());
+            
+                return words < 0 ? -1 : 3 * words;
+            case "RESB":
+                return count(statement.operand1());
+            case "BYTE":
+                String s = statement.operand1();
+            
+                switch (s.charAt(0)) {
+                    case 'C':
+                        return s.length() - 3; // C'EOF' -> EOF -> 3 bytes
+                    case 'X':
+                        return (s.length() - 3) / 2; // X'05' -> 05 -> 2 half bytes
+                    default:
+                        return 0;
+                }
+            default:
+                return statement.instruction() != null ? statement.instruction().format().length(statement.isExtended()) : -1;
+        }
+    }
+    
+    // The lines of a macro definition are read by pass 1 too, where RESW &N has no count yet
+    private static int count(String operand) {
+        if (operand == null || operand.isEmpty()) {
+            return -1;
+        }
+        
+        for (int i = 0; i < operand.length(); i++) {
+            if (operand.charAt(i) < '0' || operand.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        
+        return Integer.parseInt(operand);
+    }
+    
+    // Assigns the location of a sized statement and defines its label, in source order
+    void place(Statement statement, int length, StatementStore output, AssemblyContext context) throws IOException {
+        context.setLine(statement.line());
+        
+        // A macro invocation is placed as its expansion, and a definition not at all
+        if (context.macros() != null) {
+            try {
+                List<Statement> expansion = context.macros().process(statement);
+                
+                if (expansion != null) {
+                    for (Statement line : expansion) {
+                        line.setLine(statement.line());
+                        placeStatement(line, length(line), output, context);
                     }
                     
-                    switch (statement.operation()) {
-                        case "START":
-                            _startAddress = Integer.parseInt(statement.operand1());
-                        
-                            statement.setLocation(_locctr = _startAddress);
-                            break;
-                        case "END":
-                            break;
-                        case "WORD":
-                            _locctr += 3;
-                            
-                            break;
-                        case "RESW":
-                            _locctr += 3 * Integer.parseInt(statement.operand1());
-                            
-                            break;
-                        case "RESB":
-                            _locctr += Integer.parseInt(statement.operand1());
-                            
-                            break;
-                        case "BYTE":
-                            String s = statement.operand1();
-
-                            switch (s.charAt(0)) {
-                                case 'C':
-                                    _locctr += (s.length() - 3); // C'EOF' -> EOF -> 3 bytes
-                                    break;
-                                case 'X':
-                                    _locctr += (s.length() - 3) / 2; // X'05' -> 05 -> 2 half bytes
-                                    break;
-                            }
-                            break;
-                        case "BASE":
-                        case "NOBASE":
-                            break;
-                        default:
-                            if (_opTable.containsKey(statement.operation())) {
-                                if (_firstExecAddress < 0) {
-                                    _firstExecAddress = _locctr;
-                                }
-                                
-                                switch (_opTable.get(statement.operation()).format()) {
-                                    case "1":
-                                        _locctr += 1;
-                                        break;
-                                    case "2":
-                                        _locctr += 2;
-                                        break;
-                                    case "3/4":
-                                        _locctr += 3 + (statement.isExtended() ? 1 : 0);
-                                        break;
-                                }
-                            } else {
-                                throw new InvalidOperationCodeException(statement);
-                            }
+                    return;
+                }
+            } catch (InvalidMacroException e) {
+                context.addError(e.getMessage());
+                
+                return;
+            }
+        }
+        
+        placeStatement(statement, length, output, context);
+    }
+    
+    private void placeStatement(Statement statement, int length, StatementStore output, AssemblyContext context) throws IOException {
+        SymbolTable symbolTable = context.symbolTable();
+        AssemblyMetrics metrics = context.metrics();
+        
+        if (statement.compareTo("END") == 0 && context.literals().isEmpty() == false) {
+            placeLiterals(output, context);
+        }
+        
+        try {
+            statement.setLocation(context.locctr());
+            
+            // The label of EQU takes the value of its expression instead
+            if (statement.labelId() >= 0 && statement.compareTo("EQU") != 0
+                    && (symbolTable.isEquated(statement.labelId()) || symbolTable.define(statement.labelId(), context.locctr()) == false)) {
+                throw new DuplicateSymbolException(statement);
+            }
+            
+            if (length < 0) {
+                throw new InvalidOperationCodeException(statement);
+            }
+            
+            if (statement.compareTo("START") == 0 || statement.compareTo("CSECT") == 0) {
+                // A control section is assembled on its own from address 0
+                context.setStartAddress(statement.compareTo("START") == 0 ? Integer.parseInt(statement.operand1()) : 0);
+                context.setLocctr(context.startAddress());
+                
+                statement.setLocation(context.locctr());
+                
+                if (statement.label() != null) {
+                    checkExternalName(statement.label(), context);
+                } else if (statement.compareTo("CSECT") == 0) {
+                    context.addError("Control section needs a name");
+                }
+            } else if (statement.compareTo("EXTREF") == 0) {
+                for (String name : names(statement)) {
+                    checkExternalName(name, context);
+                    
+                    if (symbolTable.defineExternal(symbolTable.id(name)) == false) {
+                        context.addError(new DuplicateSymbolException(name).getMessage());
                     }
+                }
+            } else if (statement.compareTo("EXTDEF") == 0) {
+                for (String name : names(statement)) {
+                    checkExternalName(name, context);
+                }
+            } else if (statement.compareTo("EQU") == 0) {
+                equate(statement, context);
+            } else if (statement.compareTo("ORG") == 0) {
+                origin(statement, context);
+            } else if (statement.instruction() != null) {
+                if (context.firstExecAddress() < 0) {
+                    context.setFirstExecAddress(context.locctr());
+                }
+                
+                if (LiteralTable.isLiteral(statement.operand1())) {
+                    statement.setSymbolIds(statement.labelId(), context.literals().intern(statement, symbolTable));
+                }
+                
+                if (metrics != null && statement.isExtended()) {
+                    metrics.increment(AssemblyMetrics.Counter.FORMAT4);
+                }
+            }
+            
+            context.advance(length);
+            
+            output.add(statement);
+            context.addStatement();
+            
+            if (metrics != null) {
+                metrics.increment(AssemblyMetrics.Counter.STATEMENTS);
+            }
+            
+            if (statement.compareTo("LTORG") == 0) {
+                placeLiterals(output, context);
+            }
+        } catch (DuplicateSymbolException | InvalidOperationCodeException | InvalidLiteralException | InvalidExpressionException | UndefinedSymbolException e) {
+            context.addError(e.getMessage());
+        }
+    }
+    
+    // Defines the label of EQU by its expression, where * is the location counter; the expression
+    // may use symbols defined later, which makes the label wait for them until pass 1 ends
+    private static void equate(Statement statement, AssemblyContext context) throws DuplicateSymbolException, InvalidExpressionException, UndefinedSymbolException {
+        SymbolTable symbolTable = context.symbolTable();
+        String operand = statement.operand1() != null ? statement.operand1() : "";
+        int id = statement.labelId();
+        
+        if (id < 0) {
+            throw new InvalidExpressionException(operand, "EQU needs a label");
+        } else if (symbolTable.isDefined(id) || symbolTable.isEquated(id)) {
+            throw new DuplicateSymbolException(statement);
+        }
+        
+        context.equates().add(id, Expression.compile(operand, symbolTable, true), statement, symbolTable);
+    }
+    
+    // Sets the location counter to an expression of symbols defined before ORG; ORG without an
+    // operand returns to the highest location reached
+    static void origin(Statement statement, AssemblyContext context) throws InvalidExpressionException, UndefinedSymbolException {
+        context.setHighWater(Math.max(context.highWater(), context.locctr()));
+        
+        if (statement.operand1() == null) {
+            context.setLocctr(context.highWater());
+            
+            return;
+        }
+        
+        int locctr = Expression.compile(statement.operand1(), context.symbolTable(), false).evaluate(context.symbolTable(), context.locctr());
+        
+        if (locctr < 0) {
+            throw new InvalidExpressionException(statement.operand1(), "Location out of range");
+        }
+        
+        context.setLocctr(locctr);
+    }
+    
+    // Places the pending pool at the location counter as BYTE statements labeled *, whose labels
+    // define the anonymous symbols of the literals; they take the line of the LTORG or END that
+    // placed them, or the last line of a section that ends without one
+    private void placeLiterals(StatementStore output, AssemblyContext context) throws IOException {
+        LiteralTable literals = context.literals();
+        
+        for (int k = 0; k < literals.size(); k++) {
+            Statement statement = new Statement("*", "BYTE", false, new String[] { literals.operand(k), null }, literals.id(k), -1);
+            
+            statement.setLine(context.line());
+            
+            if (_incremental) {
+                byte[] content = literals.content(k).getBytes(StandardCharsets.ISO_8859_1);
+                
+                statement.setSourceHash(AssemblyCache.hash(content, 0, content.length));
+            }
+            
+            place(statement, length(statement), output, context);
+        }
+        
+        if (context.metrics() != null) {
+            context.metrics().add(AssemblyMetrics.Counter.LITERALS, literals.size());
+        }
+        
+        literals.clear();
+    }
+    
+    // The names listed by EXTDEF and EXTREF
+    static String[] names(Statement statement) {
+        return statement.operand1() != null ? statement.operand1().split(",") : new String[0];
+    }
+    
+    // Section names and external symbols take the six characters of header, define and refer records
+    private static void checkExternalName(String name, AssemblyContext context) {
+        if (name.isEmpty() || name.length() > 6) {
+            context.addError("External name must have 1 to 6 characters: " + name);
+        }
+    }
+    
+    // Parses and sizes byte ranges of the source in parallel. Locations, labels and errors are
+    // then assigned by merging the chunks in source order, which keeps them the same as a serial pass.
+    // The merge stops at the CSECT line that begins the next section, whose position it returns
+    private long processPass1Parallel(File input, long begin, long end, StatementStore output, AssemblyContext context) throws IOException {
+        try (FileChannel channel = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+            long size = Math.min(end, channel.size());
+            ArrayDeque<Future<ParsedChunk>> pending = new ArrayDeque<>();
+            boolean comments = context.listing() != null;
+            int line = context.line();    // lines before the chunk merged next
+            long next = -1;
+            
+            for (long start = begin; start < size && next < 0; start += PASS1_CHUNK_BYTES) {
+                pending.add(ForkJoinPool.commonPool().submit(new ParsedChunk(channel, start, Math.min(size, start + PASS1_CHUNK_BYTES), comments, context.metrics() != null)));
+                
+                if (pending.size() >= 2 * _parallelism) {
+                    ParsedChunk chunk = await(pending.removeFirst());
                     
-    //                Uncomment the next line can show the Loc and Source statements
-    //                System.out.println(statement);
+                    next = merge(chunk, line, output, context);
+                    line += chunk._lines;
+                }
+            }
+            
+            while (pending.isEmpty() == false && next < 0) {
+                ParsedChunk chunk = await(pending.removeFirst());
+                
+                next = merge(chunk, line, output, context);
+                line += chunk._lines;
+            }
+            
+            // The chunks parsed past the section are not needed, but they read the channel
+            while (pending.isEmpty() == false) {
+                await(pending.removeFirst());
+            }
+            
+            return next;
+        }
+    }
+    
+    // The lines of the chunk are numbered on from the given line
+    private long merge(ParsedChunk chunk, int line, StatementStore output, AssemblyContext context) throws IOException {
+        SymbolTable symbolTable = context.symbolTable();
+        SymbolTable local = chunk._symbolTable;
+        int[] ids = new int[local.size()];
+        int section = 0;
+        
+        Arrays.fill(ids, -1);
+        
+        for (int k = 0; k < chunk._statements.size(); k++) {
+            Statement statement = chunk._statements.get(k);
+            int labelId = statement.labelId();
+            int symbolId = statement.symbolId();
+            
+            statement.setLine(line + statement.line());
+            
+            if (statement.isComment()) {
+                placeComment(statement, output, context);
+                
+                continue;
+            }
+            
+            if (section < chunk._sections && chunk._sectionIndexes[section] == k) {
+                if (isSectionStart(statement, output, context)) {
+                    if (context.metrics() != null) {
+                        context.metrics().merge(chunk._metrics);
+                    }
+                    
+                    context.setLine(statement.line() - 1);
                     
-                    objOutputStream.writeObject(statement);
-                } catch (DuplicateSymbolException | InvalidOperationCodeException e) {
-                    System.out.println(e.getMessage());
+                    return chunk._sectionPositions[section];
                 }
+                
+                section++;
+            }
+            
+            if (labelId >= 0 && ids[labelId] < 0) {
+                ids[labelId] = symbolTable.id(local.name(labelId));
+            }
+            
+            if (symbolId >= 0 && ids[symbolId] < 0) {
+                ids[symbolId] = symbolTable.id(local.name(symbolId));
             }
             
-            _programLength = _locctr - _startAddress;
+            statement.setSymbolIds(labelId >= 0 ? ids[labelId] : -1, symbolId >= 0 ? ids[symbolId] : -1);
+            place(statement, chunk._lengths[k], output, context);
         }
+        
+        if (context.metrics() != null) {
+            context.metrics().merge(chunk._metrics);
+        }
+        
+        return -1;
     }
     
-    private void processPass2(File input, File output) throws IOException, ClassNotFoundException {
-        try (FileInputStream istream = new FileInputStream(input);
-             ObjectInputStream objInputStream = new ObjectInputStream(istream);
-             FileWriter objectProgram = new FileWriter(output)) {
+    static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             
-            List<Record> mRecords = new ArrayList<>();
-            TextRecord textRecord = new TextRecord(_startAddress);
-            int lastRecordAddress = _startAddress;
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
             
-            while (istream.available() > 0) {
-                Statement statement = (Statement) objInputStream.readObject();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+    
+    // The statements of the lines that begin in [start, end), with ids of a chunk-local symbol table
+    // and line numbers counted from the chunk's first line, comments too when they are listed, and
+    // the indexes and file positions of the CSECT statements, which may begin sections
+    private class ParsedChunk implements Callable<ParsedChunk> {
+        private final FileChannel _channel;
+        private final long _start;
+        private final long _end;
+        private final boolean _comments;
+        private final SymbolTable _symbolTable;
+        private final List<Statement> _statements;
+        private int _lines;
+        private int[] _lengths;
+        private int[] _sectionIndexes;
+        private long[] _sectionPositions;
+        private int _sections;
+        private final AssemblyMetrics _metrics;
+        
+        private ParsedChunk(FileChannel channel, long start, long end, boolean comments, boolean metrics) {
+            _channel = channel;
+            _start = start;
+            _end = end;
+            _comments = comments;
+            _symbolTable = new SymbolTable();
+            _statements = new ArrayList<>();
+            _lines = 0;
+            _lengths = new int[1024];
+            _sectionIndexes = new int[4];
+            _sectionPositions = new long[4];
+            _sections = 0;
+            _metrics = metrics ? new AssemblyMetrics(null) : null;
+        }
+        
+        @Override
+        public ParsedChunk call() throws IOException {
+            try (MappedSourceReader reader = new MappedSourceReader(_channel, _start, _end)) {
+                Lexer lexer = new Lexer(new SymbolPool(), _symbolTable);
                 
-                if (statement.isComment()) {
-                    continue;
+                while (_metrics != null ? read(reader, _metrics) : reader.next()) {
+                    if (_metrics != null) {
+                        _metrics.begin(AssemblyMetrics.Phase.PARSE);
+                    }
+                    
+                    Statement statement = lexer.parse(reader.buffer(), reader.lineStart(), reader.lineEnd());
+                    
+                    if (_metrics != null) {
+                        _metrics.end(AssemblyMetrics.Phase.PARSE);
+                    }
+                    
+                    if (statement == null || (statement.isComment() && _comments == false)) {
+                        continue;
+                    }
+                    
+                    statement.setLine(reader.lineNumber());
+                    
+                    if (_incremental && statement.isComment() == false) {
+                        statement.setSourceHash(AssemblyCache.hash(reader.buffer(), reader.lineStart(), reader.lineEnd()));
+                    }
+                    
+                    if (_statements.size() == _lengths.length) {
+                        _lengths = Arrays.copyOf(_lengths, _lengths.length * 2);
+                    }
+                    
+                    if (statement.compareTo("CSECT") == 0) {
+                        if (_sections == _sectionIndexes.length) {
+                            _sectionIndexes = Arrays.copyOf(_sectionIndexes, 2 * _sections);
+                            _sectionPositions = Arrays.copyOf(_sectionPositions, 2 * _sections);
+                        }
+                        
+                        _sectionIndexes[_sections] = _statements.size();
+                        _sectionPositions[_sections] = reader.linePosition();
+                        _sections++;
+                    }
+                    
+                    _lengths[_statements.size()] = length(statement);
+                    _statements.add(statement);
                 }
                 
-                if (statement.compareTo("START") == 0) {
-                    objectProgram.write(new HeaderRecord(statement.label(), _startAddress, _programLength).toObjectProgram() + '\n');
+                _lines = reader.lineNumber();
+            }
+            
+            return this;
+        }
+    }
+    
+    static boolean read(LineSource reader, AssemblyMetrics metrics) throws IOException {
+        metrics.begin(AssemblyMetrics.Phase.READ);
+        
+        boolean more = reader.next();
+        
+        metrics.end(AssemblyMetrics.Phase.READ);
+        
+        return more;
+    }
+    
+    // Addresses are bound as labels are defined in pass 1; what is left are the EQUs that wait for
+    // symbols defined after them
+    private static void resolveSymbols(AssemblyContext context) {
+        SymbolTable symbolTable = context.symbolTable();
+        AssemblyMetrics metrics = context.metrics();
+        
+        if (metrics != null) {
+            metrics.begin(AssemblyMetrics.Phase.RESOLVE);
+        }
+        
+        context.equates().resolve(context);
+        
+        if (metrics != null) {
+            int defined = 0;
+            
+            for (int id = 0; id < symbolTable.size(); id++) {
+                if (symbolTable.isDefined(id)) {
+                    defined++;
+                }
+            }
+            
+            metrics.end(AssemblyMetrics.Phase.RESOLVE);
+            metrics.add(AssemblyMetrics.Counter.SYMBOLS, defined);
+        }
+    }
+    
+    void processPass2(StatementStore input, File output, AssemblyContext context, AssemblyCache previous, AssemblyCache cache) throws IOException {
+        AssemblyMetrics metrics = context.metrics();
+        
+        if (metrics != null) {
+            metrics.begin(AssemblyMetrics.Phase.PASS2);
+        }
+        
+        try (RecordWriter objectProgram = open(output, context)) {
+            processPass2(input, objectProgram, context, previous, cache);
+        }
+        
+        if (metrics != null) {
+            metrics.end(AssemblyMetrics.Phase.PASS2);
+        }
+    }
+    
+    void processPass2(StatementStore input, RecordWriter objectProgram, AssemblyContext context, AssemblyCache previous, AssemblyCache cache) throws IOException {
+        AssemblyMetrics metrics = context.metrics();
+        RecordPacker packer = new RecordPacker(objectProgram, context.symbolTable(), context.startAddress(), _recordLength, context.listing());
+        
+        if (cache == null && _parallelism > 1 && input.size() >= PARALLEL_THRESHOLD) {
+            encodeParallel(input, objectProgram, context, packer);
+        } else {
+            CodeBuffer objectCode = new CodeBuffer();
+            
+            for (Statement statement : input) {
+                if (statement.isComment()) {
+                    list(statement, context);
                 } else if (statement.compareTo("END") == 0) {
+                    list(statement, context);
+                    
                     break;
-                } else {
-                    String objectCode = assembleInstruction(statement);
-
-                    // If it is format 4 and not immediate value
-                    if (statement.isExtended() && _symbolTable.containsKey(statement.operand1())) {
-                        mRecords.add(new ModificationRecord(statement.location() + 1, 5));
+                } else if (writeSectionRecords(statement, objectProgram, context) == false) {
+                    objectCode.clear();
+                    
+                    if (metrics != null) {
+                        metrics.begin(AssemblyMetrics.Phase.ENCODE);
                     }
-
-//                    Uncomment next line to show the instruction and corresponding object code
-//                    System.out.println(statement + "\t\t" + objectCode);
                     
-                    if (statement.location() - lastRecordAddress >= 0x1000 || textRecord.add(objectCode) == false) {
-                        objectProgram.write(textRecord.toObjectProgram() + '\n');
-
-                        textRecord = new TextRecord(statement.location());
-                        textRecord.add(objectCode);
+                    try {
+                        if (cache != null) {
+                            assembleCached(statement, context, objectCode, previous, cache);
+                        } else {
+                            assembleInstruction(statement, context, objectCode);
+                        }
+                    } catch (UndefinedSymbolException | DisplacementOutOfRangeException | InvalidExpressionException e) {
+                        context.addError(e.getMessage());
+                        
+                        objectCode.clear();
                     }
                     
-                    lastRecordAddress = statement.location();
+                    if (metrics != null) {
+                        metrics.end(AssemblyMetrics.Phase.ENCODE);
+                    }
+                    
+                    packer.add(statement, objectCode.data(), 0, objectCode.length());
                 }
             }
+        }
+        
+        packer.finish(context.firstExecAddress());
+    }
+    
+    // Writes the header of START and CSECT and the define and refer records of EXTDEF and EXTREF;
+    // false for any other statement
+    static boolean writeSectionRecords(Statement statement, RecordWriter objectProgram, AssemblyContext context) throws IOException {
+        SymbolTable symbolTable = context.symbolTable();
+        
+        if (statement.compareTo("START") == 0 || statement.compareTo("CSECT") == 0) {
+            new HeaderRecord(statement.label(), context.startAddress(), context.programLength()).writeTo(objectProgram);
+        } else if (statement.compareTo("EXTDEF") == 0) {
+            String[] names = names(statement);
+            int[] addresses = new int[names.length];
             
-            objectProgram.write(textRecord.toObjectProgram() + '\n');
+            for (int i = 0; i < names.length; i++) {
+                int id = symbolTable.find(names[i]);
+                
+                if (symbolTable.isDefined(id) && symbolTable.isExternal(id) == false) {
+                    addresses[i] = symbolTable.address(id);
+                } else {
+                    context.addError(new UndefinedSymbolException(names[i]).getMessage());
+                }
+            }
             
-            for (Record r : mRecords) {
-                objectProgram.write(r.toObjectProgram() + '\n');
+            new DefineRecord(names, addresses).writeTo(objectProgram);
+        } else if (statement.compareTo("EXTREF") == 0) {
+            new ReferRecord(names(statement)).writeTo(objectProgram);
+        } else {
+            return false;
+        }
+        
+        list(statement, context);
+        
+        return true;
+    }
+    
+    // Lists a statement that packs no code, such as a comment, when a listing is written
+    static void list(Statement statement, AssemblyContext context) throws IOException {
+        if (context.listing() != null) {
+            context.listing().add(statement, null, 0, 0);
+        }
+    }
+    
+    // Encodes chunks of statements on the fork-join pool while packing the finished ones in order.
+    // The base register at the start of each chunk is tracked while the chunks are collected, so
+    // the chunks are independent; at most a few chunks per worker are in flight at a time.
+    private void encodeParallel(StatementStore input, RecordWriter objectProgram, AssemblyContext context, RecordPacker packer) throws IOException {
+        SymbolTable symbolTable = context.symbolTable();
+        ArrayDeque<Future<EncodedChunk>> pending = new ArrayDeque<>();
+        Statement[] chunk = new Statement[CHUNK_SIZE];
+        int size = 0;
+        int base = context.baseAddress();
+        int chunkBase = base;
+        
+        for (Statement statement : input) {
+            chunk[size++] = statement;
+            
+            if (statement.compareTo("END") == 0) {
+                break;
+            } else if (statement.compareTo("BASE") == 0 && symbolTable.isDefined(statement.symbolId())) {
+                base = symbolTable.address(statement.symbolId());
+            } else if (statement.compareTo("NOBASE") == 0) {
+                base = AssemblyContext.NO_BASE;
             }
             
-            objectProgram.write(new EndRecord(_firstExecAddress).toObjectProgram() + '\n');
+            if (size == CHUNK_SIZE) {
+                pending.add(ForkJoinPool.commonPool().submit(new EncodedChunk(chunk, size, chunkBase, context)));
+                chunk = new Statement[CHUNK_SIZE];
+                size = 0;
+                chunkBase = base;
+                
+                if (pending.size() >= 2 * _parallelism) {
+                    pack(pending.removeFirst(), objectProgram, context, packer);
+                }
+            }
         }
+        
+        if (size > 0) {
+            pending.add(ForkJoinPool.commonPool().submit(new EncodedChunk(chunk, size, chunkBase, context)));
+        }
+        
+        while (pending.isEmpty() == false) {
+            pack(pending.removeFirst(), objectProgram, context, packer);
+        }
+        
+        context.setBaseAddress(base);
     }
     
-    private String assembleInstruction(Statement statement) {
-        String objCode = "";
-
-        if (_opTable.containsKey(statement.operation())) {
-            switch (_opTable.get(statement.operation()).format()) {
-                case "1":
-                    objCode = _opTable.get(statement.operation()).opcode();
+    private void pack(Future<EncodedChunk> future, RecordWriter objectProgram, AssemblyContext context, RecordPacker packer) throws IOException {
+        EncodedChunk chunk = await(future);
+        
+        for (String error : chunk._context.errors()) {
+            context.addError(error);
+        }
+        
+        if (context.metrics() != null) {
+            context.metrics().merge(chunk._context.metrics());
+        }
+        
+        byte[] code = chunk._code.data();
+        
+        for (int k = 0; k < chunk._size; k++) {
+            Statement statement = chunk._statements[k];
+            
+            if (statement.isComment() || statement.compareTo("END") == 0) {
+                list(statement, context);
+            } else if (writeSectionRecords(statement, objectProgram, context) == false) {
+                packer.add(statement, code, chunk._offsets[k], chunk._offsets[k + 1] - chunk._offsets[k]);
+            }
+        }
+    }
+    
+    // The object code of a run of statements, encoded against its own copy of the context
+    private class EncodedChunk implements Callable<EncodedChunk> {
+        private final Statement[] _statements;
+        private final int _size;
+        private final AssemblyContext _context;
+        private final CodeBuffer _code;
+        private final int[] _offsets;
+        
+        private EncodedChunk(Statement[] statements, int size, int baseAddr, AssemblyContext parent) {
+            _statements = statements;
+            _size = size;
+            _context = new AssemblyContext(parent);
+            _code = new CodeBuffer(size * 3);
+            _offsets = new int[size + 1];
+            
+            _context.setBaseAddress(baseAddr);
+            
+            if (parent.metrics() != null) {
+                _context.setMetrics(new AssemblyMetrics(parent.metrics().name()));
+            }
+        }
+        
+        @Override
+        public EncodedChunk call() {
+            AssemblyMetrics metrics = _context.metrics();
+            
+            if (metrics != null) {
+                metrics.begin(AssemblyMetrics.Phase.ENCODE);
+            }
+            
+            for (int k = 0; k < _size; k++) {
+                _offsets[k] = _code.length();
+                
+                try {
+                    assembleInstruction(_statements[k], _context, _code);
+                } catch (UndefinedSymbolException | DisplacementOutOfRangeException | InvalidExpressionException e) {
+                    _context.addError(e.getMessage());
                     
+                    _code.truncate(_offsets[k]);
+                }
+            }
+            
+            _offsets[_size] = _code.length();
+            
+            if (metrics != null) {
+                metrics.end(AssemblyMetrics.Phase.ENCODE);
+            }
+            
+            return this;
+        }
+    }
+    
+    // Reuses the bytes of the previous run when the line, its location, its target and the base are unchanged
+    private void assembleCached(Statement statement, AssemblyContext context, CodeBuffer objCode, AssemblyCache previous, AssemblyCache cache) throws UndefinedSymbolException, DisplacementOutOfRangeException, InvalidExpressionException {
+        SymbolTable symbolTable = context.symbolTable();
+        
+        // The bytes of an expression depend on more than one target
+        if (isExpression(statement)) {
+            assembleInstruction(statement, context, objCode);
+            
+            return;
+        }
+        
+        int target = symbolTable.isDefined(statement.symbolId()) ? symbolTable.address(statement.symbolId()) : SymbolTable.UNDEFINED;
+        int kind = AssemblyCache.kind(symbolTable, statement.symbolId());
+        int base = context.baseAddress();
+        AssemblyCache.Entry entry = previous != null ? previous.find(statement.sourceHash(), statement.location()) : null;
+        
+        if (entry != null && entry.isValid(target, kind, base)) {
+            byte[] code = entry.code();
+            
+            for (int i = 0; i < code.length; i++) {
+                objCode.put(code[i]);
+            }
+        } else {
+            assembleInstruction(statement, context, objCode);
+        }
+        
+        // Directives such as BASE have side effects and are always processed
+        if (objCode.length() > 0) {
+            cache.put(statement.sourceHash(), statement.location(), target, kind, base, objCode.data(), 0, objCode.length());
+        }
+    }
+    
+    void assembleInstruction(Statement statement, AssemblyContext context, CodeBuffer objCode) throws UndefinedSymbolException, DisplacementOutOfRangeException, InvalidExpressionException {
+        SymbolTable symbolTable = context.symbolTable();
+        Operation op = statement.instruction();
+        
+        if (op != null) {
+            switch (op.format()) {
+                case ONE:
+                    objCode.put(op.opcode());
+                
                     break;
-                case "2":
-                    objCode = _opTable.get(statement.operation()).opcode();
-                    
-                    objCode += Integer.toHexString(_registerTable.get(statement.operand1())).toUpperCase();
-                    objCode += Integer.toHexString(_registerTable.get(statement.operand2())).toUpperCase();
-                    
+                case TWO:
+                    int r1 = register(statement.operand1());
+                    int r2 = register(statement.operand2());
+                
+                    if (op.isShift()) {
+                        r2--; // SHIFTL/SHIFTR encode the count minus one
+                    }
+                
+                    objCode.put(op.opcode());
+                    objCode.put((r1 & 0xF) << 4 | (r2 & 0xF));
+                
                     break;
-                case "3/4":
-                    final int n = 1 << 5;
-                    final int i = 1 << 4;
-                    final int x = 1 << 3;
-                    final int b = 1 << 2;
-                    final int p = 1 << 1;
-                    final int e = 1;
-                    
-                    int code = Integer.parseInt(_opTable.get(statement.operation()).opcode(), 16) << 4;
+                case THREE_FOUR:
+                    int code = op.opcode() << 4 | addressingFlags(statement);
                     String operand = statement.operand1();
-                    
+                
                     if (operand == null) {
-                        code = (code | n | i) << 12; // for RSUB, NOBASE
+                        code <<= 12; // for RSUB, NOBASE
                     } else {
-                        switch (operand.charAt(0)) {
-                            case '#': // immediate addressing
-                                code |= i;
-                                
-                                operand = operand.substring(1);
-                                break;
-                            case '@': // indirect addressing
-                                code |= n;
-
-                                operand = operand.substring(1);
-                                break;
-                            default: // simple/direct addressing
-                                code |= n | i;
-
-                                if (statement.operand2() != null) {
-                                    code |= x;
-                                }
-                        }
+                        int start = (code & (N | I)) == (N | I) ? 0 : 1;
+                        int symbolId = statement.symbolId();
+                        int targetAddress;
+                        boolean relative;
+                    
+                        if (symbolId >= 0) {
+                            if (symbolTable.isDefined(symbolId) == false) {
+                                throw new UndefinedSymbolException(statement);
+                            } else if (symbolTable.isExternal(symbolId) && statement.isExtended() == false) {
+                                throw new DisplacementOutOfRangeException(statement, "External symbol needs format 4");
+                            }
                         
-                        int disp;
+                            targetAddress = symbolTable.address(symbolId);
+                            relative = symbolTable.isExternal(symbolId) == false && symbolTable.isAbsolute(symbolId) == false;
+                        } else if (isNumber(operand, start)) {
+                            targetAddress = Integer.parseInt(operand, start, operand.length(), 10);
+                            relative = false;
+                        } else {
+                            Expression expression = expression(statement, start, symbolTable);
                         
-                        if (_symbolTable.get(operand) == null) {
-                            disp = Integer.parseInt(operand);
+                            if (expression.isExternal() && statement.isExtended() == false) {
+                                throw new DisplacementOutOfRangeException(statement, "External symbol needs format 4");
+                            }
+                        
+                            targetAddress = expression.value();
+                            relative = expression.isRelative();
+                        }
+                    
+                        int disp = targetAddress;
+                    
+                        if (relative == false || statement.isExtended()) {
+                            // Numbers go into the field as they are, as do the addresses of format 4,
+                            // which must fit its 20 bits whether they are relative or not
+                            if (disp < 0 || disp > (statement.isExtended() ? 0xFFFFF : 0xFFF)) {
+                                throw new DisplacementOutOfRangeException(statement);
+                            }
                         } else {
-                            int targetAddress = _symbolTable.get(operand);
+                            disp -= statement.location() + 3;
+                        
+                            if (disp >= -2048 && disp <= 2047) {
+                                code |= P;
+                            } else {
+                                code |= B;
+                            
+                                if (context.metrics() != null) {
+                                    context.metrics().increment(AssemblyMetrics.Counter.BASE_RELATIVE);
+                                }
                             
-                            disp = targetAddress;
+                                disp = targetAddress - context.baseAddress();
                             
-                            if (statement.isExtended() == false) {
-                                disp -= statement.location() + 3;
-                                
-                                if (disp >= -2048 && disp <= 2047) {
-                                    code |= p;
-                                } else {
-                                    code |= b;
-                                    
-                                    disp = targetAddress - _baseAddress;
+                                if (context.baseAddress() == AssemblyContext.NO_BASE || disp < 0 || disp > 4095) {
+                                    throw new DisplacementOutOfRangeException(statement);
                                 }
                             }
                         }
-                        
+                    
                         if (statement.isExtended()) {
-                            code |= e;
-                            
+                            code |= E;
+                        
                             code = (code << 20) | (disp & 0xFFFFF);
                         } else {
                             code = (code << 12) | (disp & 0xFFF);
                         }
                     }
-                    
-                    objCode = String.format(statement.isExtended() ? "%08X" : "%06X", code);
-                    
+                
+                    if (statement.isExtended()) {
+                        objCode.put32(code);
+                    } else {
+                        objCode.put24(code);
+                    }
+                
                     break;
             }
         } else if (statement.compareTo("BYTE") == 0) {
             String s = statement.operand1();
-            char type = s.charAt(0);
+            int end = s.lastIndexOf('\'');
             
-            s = s.substring(s.indexOf('\'') + 1, s.lastIndexOf('\''));
-            
-            switch (type) {
+            switch (s.charAt(0)) {
                 case 'C':
-                    for (char ch : s.toCharArray()) {
-                        objCode += Integer.toHexString(ch).toUpperCase();
+                    for (int k = 2; k < end; k++) {
+                        objCode.put(s.charAt(k));
                     }
                 
                     break;
                 case 'X':
-                    objCode = s;
-                    
+                    for (int k = 2; k + 1 < end; k += 2) {
+                        objCode.put(Character.digit(s.charAt(k), 16) << 4 | Character.digit(s.charAt(k + 1), 16));
+                    }
+                
                     break;
             }
         } else if (statement.compareTo("WORD") == 0) {
-            objCode = String.format("%06X", statement.operand1());
+            String operand = statement.operand1();
+            
+            objCode.put24(isNumber(operand, 0) ? Integer.parseInt(operand) : expression(statement, 0, symbolTable).value());
         } else if (statement.compareTo("BASE") == 0) {
-            _baseAddress = _symbolTable.get(statement.operand1());
+            if (symbolTable.isDefined(statement.symbolId()) == false) {
+                throw new UndefinedSymbolException(statement);
+            }
+            
+            context.setBaseAddress(symbolTable.address(statement.symbolId()));
         } else if (statement.compareTo("NOBASE") == 0) {
-            _baseAddress = 0;
+            context.setBaseAddress(AssemblyContext.NO_BASE);
         }
+    }
+    
+    // The operand of a statement from the given offset, past any # or @, compiled on first use
+    private static Expression expression(Statement statement, int start, SymbolTable symbolTable) throws UndefinedSymbolException, InvalidExpressionException {
+        Expression expression = statement.expression();
+        
+        if (expression == null) {
+            expression = Expression.compile(statement.operand1().substring(start), symbolTable, false);
+        }
+        
+        expression.evaluate(symbolTable, statement.location());
+        statement.setExpression(expression);
         
-        return objCode;
+        return expression;
+    }
+    
+    // A decimal number, possibly negative, from the given offset
+    static boolean isNumber(String operand, int start) {
+        if (start < operand.length() && operand.charAt(start) == '-') {
+            start++;
+        }
+        
+        if (start == operand.length()) {
+            return false;
+        }
+        
+        for (int i = start; i < operand.length(); i++) {
+            if (operand.charAt(i) < '0' || operand.charAt(i) > '9') {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    // A WORD or format 3/4 operand that is neither a number nor a single symbol, such as BUFEND-BUFFER;
+    // WORD of a symbol counts too, since its modification record comes from its expression
+    static boolean isExpression(Statement statement) {
+        String operand = statement.operand1();
+        Operation op = statement.instruction();
+        
+        if (operand == null) {
+            return false;
+        } else if (op == null) {
+            return statement.compareTo("WORD") == 0 && isNumber(operand, 0) == false;
+        }
+        
+        return op.format() == Format.THREE_FOUR && statement.symbolId() < 0 && isNumber(operand, operand.charAt(0) == '#' || operand.charAt(0) == '@' ? 1 : 0) == false;
+    }
+    
+    // The n, i and x bits selected by the operand of a format 3/4 instruction
+    static int addressingFlags(Statement statement) {
+        String operand = statement.operand1();
+        
+        if (operand == null) {
+            return N | I;
+        }
+        
+        switch (operand.charAt(0)) {
+            case '#': // immediate addressing
+                return I;
+            case '@': // indirect addressing
+                return N;
+            default: // simple/direct addressing
+                return statement.operand2() != null ? N | I | X : N | I;
+        }
+    }
+    
+    private int register(String operand) {
+        Integer r = _registerTable.get(operand);
+        
+        return r != null ? r : Integer.parseInt(operand); // SVC n, SHIFTL r1,n
     }
     
     public static void main(String[] args) {
-        try {
-            Assembler asm = new Assembler();
-            
-            asm.assemble(new File("copy.asm"), new File("copy.o"));
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
+        if (args.length == 0) {
+            try {
+                Assembler asm = new Assembler();
+                
+                asm.assemble(new File("copy.asm"), new File("copy.o"));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else {
+            System.exit(BatchAssembler.main(args));
         }
     }
 }
@@ -0,0 +1,149 @@
+package assembler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+// Sends the files to a running AssemblerServer, or assembles them in process when there is none.
+// Only the output format is passed on; any other option runs the build in process.
+public class AssemblerClient {
+    public static int run(String[] args) {
+        String address = String.valueOf(AssemblerServer.DEFAULT_PORT);
+        OutputFormat format = OutputFormat.TEXT;
+        List<String> local = new ArrayList<>();
+        List<File> paths = new ArrayList<>();
+        boolean remote = true;
+        
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-a":
+                    address = args[++i];
+                    break;
+                case "-f":
+                    format = OutputFormat.valueOf(args[i + 1].toUpperCase());
+                    local.add(args[i]);
+                    local.add(args[++i]);
+                    break;
+                default:
+                    if (args[i].startsWith("-") && args[i].length() > 1) {
+                        remote = false;
+                    } else {
+                        paths.add(new File(args[i]));
+                    }
+                
+                    local.add(args[i]);
+            }
+        }
+        
+        if (remote) {
+            try (SocketChannel channel = AssemblerServer.connect(AssemblerServer.address(address))) {
+                return assemble(channel, format, paths);
+            } catch (IOException e) {
+                // no daemon listening, fall through
+            }
+        }
+        
+        return BatchAssembler.main(local.toArray(new String[0]));
+    }
+    
+    private static int assemble(SocketChannel channel, OutputFormat format, List<File> paths) throws IOException {
+        InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+        
+        if (paths.size() == 1 && paths.get(0).getPath().equals("-")) {
+            byte[] source = System.in.readAllBytes();
+            
+            AssemblerServer.writeLine(out, "SOURCE\t" + format + "\t" + source.length);
+            out.write(source);
+            out.flush();
+            
+            Response response = response(in, null, System.err);
+            
+            if (response._object != null) {
+                System.out.write(response._object);
+                System.out.flush();
+            }
+            
+            return response.failed() ? 1 : 0;
+        }
+        
+        List<File> inputs = BatchAssembler.collect(paths);
+        List<File> failed = new ArrayList<>();
+        
+        for (File input : inputs) {
+            File output = BatchAssembler.outputFile(input, format);
+            
+            AssemblerServer.writeLine(out, "ASSEMBLE\t" + format + "\t" + input.getAbsolutePath() + "\t" + output.getAbsolutePath());
+            out.flush();
+            
+            if (response(in, input, System.out).failed()) {
+                failed.add(input);
+            }
+        }
+        
+        System.out.println("Assembled " + (inputs.size() - failed.size()) + " of " + inputs.size() + " files");
+        
+        if (failed.isEmpty() == false) {
+            System.out.println("Failed:");
+            
+            for (File input : failed) {
+                System.out.println("  " + input);
+            }
+        }
+        
+        return failed.isEmpty() ? 0 : 1;
+    }
+    
+    // Prints the errors of one response and collects its payload
+    private static Response response(InputStream in, File input, PrintStream log) throws IOException {
+        Response response = new Response();
+        
+        while (true) {
+            String line = AssemblerServer.readLine(in);
+            
+            if (line == null) {
+                throw new IOException("Connection closed by the server");
+            }
+            
+            String[] fields = line.split("\t", 2);
+            
+            switch (fields[0]) {
+                case "ERROR":
+                    log.println((input != null ? input + ": " : "") + fields[1]);
+                    response._errors++;
+                    break;
+                case "OK":
+                    response._object = new byte[Integer.parseInt(fields[1])];
+                
+                    AssemblerServer.readFully(in, response._object);
+                
+                    return response;
+                default:
+                    log.println((input != null ? input + ": " : "") + (fields.length > 1 ? fields[1] : line));
+                
+                    return response;
+            }
+        }
+    }
+    
+    private static class Response {
+        private byte[] _object;
+        private int _errors;
+        
+        private boolean failed() {
+            return _object == null || _errors > 0;
+        }
+    }
+    
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+}
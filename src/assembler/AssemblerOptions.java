@@ -0,0 +1,132 @@
+package assembler;
+
+public class AssemblerOptions {
+    private int _memoryLimit;
+    private OutputFormat _outputFormat;
+    private boolean _incremental;
+    private boolean _metrics;
+    private boolean _onePass;
+    private boolean _relax;
+    private boolean _pipelined;
+    private boolean _listing;
+    private int _parallelism;
+    private int _recordLength;
+    
+    public AssemblerOptions() {
+        _memoryLimit = StatementStore.DEFAULT_MEMORY_LIMIT;
+        _outputFormat = OutputFormat.TEXT;
+        _incremental = false;
+        _metrics = false;
+        _onePass = false;
+        _relax = false;
+        _pipelined = false;
+        _listing = false;
+        _parallelism = Runtime.getRuntime().availableProcessors();
+        _recordLength = TextRecord.DEFAULT_LENGTH;
+    }
+    
+    public int memoryLimit() {
+        return _memoryLimit;
+    }
+    
+    public AssemblerOptions setMemoryLimit(int memoryLimit) {
+        _memoryLimit = memoryLimit;
+        
+        return this;
+    }
+    
+    public OutputFormat outputFormat() {
+        return _outputFormat;
+    }
+    
+    public AssemblerOptions setOutputFormat(OutputFormat outputFormat) {
+        _outputFormat = outputFormat;
+        
+        return this;
+    }
+    
+    public boolean isIncremental() {
+        return _incremental;
+    }
+    
+    public AssemblerOptions setIncremental(boolean incremental) {
+        _incremental = incremental;
+        
+        return this;
+    }
+    
+    public boolean isMetricsEnabled() {
+        return _metrics;
+    }
+    
+    public AssemblerOptions setMetricsEnabled(boolean metrics) {
+        _metrics = metrics;
+        
+        return this;
+    }
+    
+    public boolean isOnePass() {
+        return _onePass;
+    }
+    
+    public AssemblerOptions setOnePass(boolean onePass) {
+        _onePass = onePass;
+        
+        return this;
+    }
+    
+    // Promote format 3 instructions whose target is out of reach to format 4 instead of failing
+    public boolean isRelax() {
+        return _relax;
+    }
+    
+    public AssemblerOptions setRelax(boolean relax) {
+        _relax = relax;
+        
+        return this;
+    }
+    
+    // Run reading, parsing, pass 1, encoding and writing as stages on their own threads
+    public boolean isPipelined() {
+        return _pipelined;
+    }
+    
+    public AssemblerOptions setPipelined(boolean pipelined) {
+        _pipelined = pipelined;
+        
+        return this;
+    }
+    
+    // Write a <source>.lst listing with a cross reference next to each source
+    public boolean isListing() {
+        return _listing;
+    }
+    
+    public AssemblerOptions setListing(boolean listing) {
+        _listing = listing;
+        
+        return this;
+    }
+    
+    // Workers used to encode a single large program; 1 keeps pass 2 sequential
+    public int parallelism() {
+        return _parallelism;
+    }
+    
+    public AssemblerOptions setParallelism(int parallelism) {
+        _parallelism = Math.max(1, parallelism);
+        
+        return this;
+    }
+    
+    // Bytes of code per text record, for loaders that take records longer than the usual 0x20
+    public int recordLength() {
+        return _recordLength;
+    }
+    
+    public AssemblerOptions setRecordLength(int recordLength) {
+        _recordLength = Math.max(1, Math.min(recordLength, TextRecord.MAX_LENGTH));
+        
+        return this;
+    }
+}
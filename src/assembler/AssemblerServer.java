@@ -0,0 +1,309 @@
+package assembler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Long-running assembler that keeps the JIT-compiled code and the operation tables warm between builds.
+//
+// Requests and responses are lines of tab-separated fields:
+//   ASSEMBLE <format> <input> <output>   assembles a file
+//   SOURCE <format> <length>             followed by <length> bytes of source
+//   PING, SHUTDOWN
+// Every request is answered by zero or more "ERROR <message>" lines and then either
+// "OK <length>" followed by <length> bytes of object program (empty for ASSEMBLE) or "FAIL <message>".
+public class AssemblerServer implements Closeable {
+    public static final int DEFAULT_PORT = 5151;
+    
+    private final Map<OutputFormat, Assembler> _assemblers;
+    private final SocketAddress _address;
+    private final ServerSocketChannel _server;
+    private final ExecutorService _executor;
+    private volatile boolean _running;
+    
+    public AssemblerServer(AssemblerOptions options, SocketAddress address, int threads) throws IOException {
+        _assemblers = new EnumMap<>(OutputFormat.class);
+        
+        for (OutputFormat format : OutputFormat.values()) {
+            _assemblers.put(format, new Assembler(copy(options).setOutputFormat(format)));
+        }
+        
+        _address = address;
+        
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath()); // left over by a killed daemon
+            
+            _server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            _server = ServerSocketChannel.open();
+        }
+        
+        _server.bind(address);
+        _executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        _running = true;
+    }
+    
+    private static AssemblerOptions copy(AssemblerOptions options) {
+        return new AssemblerOptions()
+                .setMemoryLimit(options.memoryLimit())
+                .setIncremental(options.isIncremental())
+                .setOnePass(options.isOnePass())
+                .setRelax(options.isRelax())
+                .setRecordLength(options.recordLength())
+                .setPipelined(options.isPipelined())
+                .setListing(options.isListing())
+                .setParallelism(options.parallelism());
+    }
+    
+    // A port number on the loopback interface, or the path of a Unix domain socket
+    public static SocketAddress address(String spec) {
+        if (spec.matches("[0-9]+")) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(spec));
+        } else {
+            return UnixDomainSocketAddress.of(spec);
+        }
+    }
+    
+    public static SocketChannel connect(SocketAddress address) throws IOException {
+        if (address instanceof UnixDomainSocketAddress) {
+            SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            
+            try {
+                channel.connect(address);
+            } catch (IOException e) {
+                channel.close();
+                
+                throw e;
+            }
+            
+            return channel;
+        } else {
+            return SocketChannel.open(address);
+        }
+    }
+    
+    public void serve() throws IOException {
+        while (_running) {
+            final SocketChannel channel;
+            
+            try {
+                channel = _server.accept();
+            } catch (IOException e) {
+                if (_running) {
+                    throw e;
+                }
+                
+                break; // closed by SHUTDOWN
+            }
+            
+            _executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handle(channel);
+                }
+            });
+        }
+    }
+    
+    private void handle(SocketChannel channel) {
+        try (SocketChannel c = channel) {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(c));
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(c));
+            String line;
+            
+            while ((line = readLine(in)) != null) {
+                String[] fields = line.split("\t");
+                
+                switch (fields[0]) {
+                    case "ASSEMBLE":
+                        assemble(fields, out);
+                        break;
+                    case "SOURCE":
+                        byte[] source = new byte[Integer.parseInt(fields[2])];
+                    
+                        readFully(in, source);
+                        assemble(fields, source, out);
+                        break;
+                    case "PING":
+                        writeLine(out, "PONG");
+                        break;
+                    case "SHUTDOWN":
+                        writeLine(out, "OK\t0");
+                        out.flush();
+                        close();
+                    
+                        return;
+                    default:
+                        writeLine(out, "FAIL\tUnknown request: " + fields[0]);
+                }
+                
+                out.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            // the client went away or sent garbage; other connections are unaffected
+        }
+    }
+    
+    private void assemble(String[] fields, OutputStream out) throws IOException {
+        AssemblyContext context = new AssemblyContext();
+        
+        try {
+            _assemblers.get(OutputFormat.valueOf(fields[1])).assemble(new File(fields[2]), new File(fields[3]), context);
+        } catch (IOException | RuntimeException e) {
+            writeErrors(out, context);
+            writeLine(out, "FAIL\t" + e);
+            
+            return;
+        }
+        
+        writeErrors(out, context);
+        writeLine(out, "OK\t0");
+    }
+    
+    // Inline source goes through temporary files so that it is assembled exactly like a file
+    private void assemble(String[] fields, byte[] source, OutputStream out) throws IOException {
+        OutputFormat format = OutputFormat.valueOf(fields[1]);
+        AssemblyContext context = new AssemblyContext();
+        File input = File.createTempFile("assembler", ".asm");
+        File output = File.createTempFile("assembler", format.extension());
+        
+        try {
+            Files.write(input.toPath(), source);
+            _assemblers.get(format).assemble(input, output, context);
+            
+            byte[] object = Files.readAllBytes(output.toPath());
+            
+            writeErrors(out, context);
+            writeLine(out, "OK\t" + object.length);
+            out.write(object);
+        } catch (IOException | RuntimeException e) {
+            writeErrors(out, context);
+            writeLine(out, "FAIL\t" + e);
+        } finally {
+            input.delete();
+            output.delete();
+            AssemblyCache.cacheFile(input).delete();
+            Listing.file(input).delete();
+        }
+    }
+    
+    private static void writeErrors(OutputStream out, AssemblyContext context) throws IOException {
+        for (String error : context.errors()) {
+            writeLine(out, "ERROR\t" + error);
+        }
+    }
+    
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return line.size() > 0 ? line.toString(StandardCharsets.UTF_8) : null;
+            }
+            
+            line.write(b);
+        }
+        
+        return line.toString(StandardCharsets.UTF_8);
+    }
+    
+    static void readFully(InputStream in, byte[] buf) throws IOException {
+        for (int n = 0; n < buf.length; ) {
+            int count = in.read(buf, n, buf.length - n);
+            
+            if (count < 0) {
+                throw new EOFException();
+            }
+            
+            n += count;
+        }
+    }
+    
+    static void writeLine(OutputStream out, String line) throws IOException {
+        out.write(line.replace('\n', ' ').getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+    }
+    
+    @Override
+    public void close() throws IOException {
+        _running = false;
+        _executor.shutdown();
+        _server.close();
+        
+        if (_address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) _address).getPath());
+        }
+    }
+    
+    public static void main(String[] args) {
+        AssemblerOptions options = new AssemblerOptions();
+        String address = String.valueOf(DEFAULT_PORT);
+        int threads = Runtime.getRuntime().availableProcessors();
+        
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-a":
+                    address = args[++i];
+                    break;
+                case "-t":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-m":
+                    options.setMemoryLimit(Integer.parseInt(args[++i]));
+                    break;
+                case "-p":
+                    options.setParallelism(Integer.parseInt(args[++i]));
+                    break;
+                case "-i":
+                    options.setIncremental(true);
+                    break;
+                case "-l":
+                    options.setListing(true);
+                    break;
+                case "--one-pass":
+                    options.setOnePass(true);
+                    break;
+                case "--relax":
+                    options.setRelax(true);
+                    break;
+                case "--record-length":
+                    options.setRecordLength(Integer.decode(args[++i]));
+                    break;
+                case "--pipeline":
+                    options.setPipelined(true);
+                    break;
+                default:
+                    System.out.println("Usage: java assembler.AssemblerServer [-a port|socket-path] [-t threads] [-m count] [-p workers] [-i] [-l] [--one-pass] [--relax] [--record-length bytes] [--pipeline]");
+                    System.exit(2);
+            }
+        }
+        
+        try (AssemblerServer server = new AssemblerServer(options, address(address), threads)) {
+            server.serve();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package assembler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+public class AssemblyCache {
+    private static final int MAGIC = 0x53584343; // "SXCC"
+    private static final int VERSION = 4;
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+    
+    // How a target is addressed, which its value alone does not tell: an absolute EQU symbol goes
+    // into the displacement as it is
+    static final int RELATIVE = 0;
+    static final int ABSOLUTE = 1;
+    static final int EXTERNAL = 2;
+    
+    // Options that change the code of the lines; a cache made with other options is not reused
+    static final int RELAX = 1;
+    static final int ONE_PASS = 2;
+    
+    private final long _sourceHash;
+    private final long _sourceLength;
+    private final OutputFormat _outputFormat;
+    private final int _recordLength;
+    private final int _options;
+    private final Map<Long, Entry> _entries;
+    private byte[] _object;
+    
+    public AssemblyCache(long sourceHash, long sourceLength, OutputFormat outputFormat, int recordLength, int options) {
+        _sourceHash = sourceHash;
+        _sourceLength = sourceLength;
+        _outputFormat = outputFormat;
+        _recordLength = recordLength;
+        _options = options;
+        _entries = new HashMap<>();
+    }
+    
+    public static File cacheFile(File source) {
+        return new File(source.getPath() + ".cache");
+    }
+    
+    // The object program also depends on how its code is split into records
+    public boolean matches(long sourceHash, long sourceLength, OutputFormat outputFormat, int recordLength, int options) {
+        return _sourceHash == sourceHash && _sourceLength == sourceLength && _outputFormat == outputFormat && _recordLength == recordLength && _options == options && _object != null;
+    }
+    
+    // Whether the lines were encoded with the same options, without which no entry is valid
+    public boolean hasOptions(int options) {
+        return _options == options;
+    }
+    
+    public byte[] object() {
+        return _object;
+    }
+    
+    public void setObject(byte[] object) {
+        _object = object;
+    }
+    
+    public int size() {
+        return _entries.size();
+    }
+    
+    // An empty cache for the lines of one control section, merged into this one once it is encoded
+    AssemblyCache section() {
+        return new AssemblyCache(_sourceHash, _sourceLength, _outputFormat, _recordLength, _options);
+    }
+    
+    void merge(AssemblyCache section) {
+        _entries.putAll(section._entries);
+    }
+    
+    static int kind(SymbolTable symbolTable, int id) {
+        return symbolTable.isExternal(id) ? EXTERNAL : symbolTable.isAbsolute(id) ? ABSOLUTE : RELATIVE;
+    }
+    
+    // Encoded bytes of a line, valid while its text, location, target, its kind and base stay the same
+    public Entry find(long lineHash, int location) {
+        Entry entry = _entries.get(key(lineHash, location));
+        
+        return entry != null && entry._lineHash == lineHash && entry._location == location ? entry : null;
+    }
+    
+    public void put(long lineHash, int location, int target, int kind, int base, byte[] code, int offset, int length) {
+        byte[] bytes = new byte[length];
+        
+        System.arraycopy(code, offset, bytes, 0, length);
+        _entries.put(key(lineHash, location), new Entry(lineHash, location, target, kind, base, bytes));
+    }
+    
+    private static long key(long lineHash, int location) {
+        return lineHash * 31 + location;
+    }
+    
+    public static long hash(byte[] buf, int start, int end) {
+        long h = FNV_OFFSET;
+        
+        for (int i = start; i < end; i++) {
+            h = (h ^ (buf[i] & 0xFF)) * FNV_PRIME;
+        }
+        
+        return h;
+    }
+    
+    public static long hash(File file) throws IOException {
+        long h = FNV_OFFSET;
+        byte[] buf = new byte[1 << 16];
+        
+        try (InputStream istream = new FileInputStream(file)) {
+            int n;
+            
+            while ((n = istream.read(buf)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    h = (h ^ (buf[i] & 0xFF)) * FNV_PRIME;
+                }
+            }
+        }
+        
+        return h;
+    }
+    
+    public static AssemblyCache load(File cacheFile) {
+        if (cacheFile.isFile() == false) {
+            return null;
+        }
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            
+            AssemblyCache cache = new AssemblyCache(in.readLong(), in.readLong(), OutputFormat.values()[in.readUnsignedByte()], in.readUnsignedByte(), in.readUnsignedByte());
+            byte[] object = new byte[in.readInt()];
+            
+            in.readFully(object);
+            cache.setObject(object);
+            
+            for (int count = in.readInt(); count > 0; count--) {
+                long lineHash = in.readLong();
+                int location = in.readInt();
+                int target = in.readInt();
+                int kind = in.readUnsignedByte();
+                int base = in.readInt();
+                byte[] code = new byte[in.readUnsignedShort()];
+                
+                in.readFully(code);
+                cache._entries.put(key(lineHash, location), new Entry(lineHash, location, target, kind, base, code));
+            }
+            
+            return cache;
+        } catch (IOException | RuntimeException e) {
+            return null; // a damaged cache only costs a full assembly
+        }
+    }
+    
+    public void save(File cacheFile) throws IOException {
+        File tmp = new File(cacheFile.getPath() + ".tmp");
+        
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(_sourceHash);
+            out.writeLong(_sourceLength);
+            out.writeByte(_outputFormat.ordinal());
+            out.writeByte(_recordLength);
+            out.writeByte(_options);
+            out.writeInt(_object.length);
+            out.write(_object);
+            out.writeInt(_entries.size());
+            
+            for (Entry entry : _entries.values()) {
+                out.writeLong(entry._lineHash);
+                out.writeInt(entry._location);
+                out.writeInt(entry._target);
+                out.writeByte(entry._kind);
+                out.writeInt(entry._base);
+                out.writeShort(entry._code.length);
+                out.write(entry._code);
+            }
+        }
+        
+        Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    public static class Entry {
+        private final long _lineHash;
+        private final int _location;
+        private final int _target;
+        private final int _kind;
+        private final int _base;
+        private final byte[] _code;
+        
+        private Entry(long lineHash, int location, int target, int kind, int base, byte[] code) {
+            _lineHash = lineHash;
+            _location = location;
+            _target = target;
+            _kind = kind;
+            _base = base;
+            _code = code;
+        }
+        
+        public boolean isValid(int target, int kind, int base) {
+            return _target == target && _kind == kind && _base == base;
+        }
+        
+        public byte[] code() {
+            return _code;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package assembler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class AssemblyContext {
+    public static final int NO_BASE = -1;
+    
+    private int _locctr;
+    private int _startAddress;
+    private int _firstExecAddress;
+    private int _programLength;
+    private int _baseAddress;
+    private int _highWater;
+    private int _line;
+    private int _statements;
+    private final SymbolTable _symbolTable;
+    private final LiteralTable _literals;
+    private final Equates _equates;
+    private final List<String> _errors;
+    private AssemblyMetrics _metrics;
+    private Listing _listing;
+    private MacroProcessor _macros;
+    
+    public AssemblyContext() {
+        _locctr = _startAddress = _programLength = 0;
+        _baseAddress = NO_BASE;
+        _firstExecAddress = -1;
+        _highWater = 0;
+        _line = _statements = 0;
+        
+        _symbolTable = new SymbolTable();
+        _literals = new LiteralTable();
+        _equates = new Equates();
+        
+        _errors = new ArrayList<>();
+        _metrics = null;
+        _listing = null;
+        _macros = null;
+    }
+    
+    // A copy for a worker of the same job: the symbol table is shared, errors and metrics are not
+    AssemblyContext(AssemblyContext parent) {
+        _locctr = parent._locctr;
+        _startAddress = parent._startAddress;
+        _firstExecAddress = parent._firstExecAddress;
+        _programLength = parent._programLength;
+        _baseAddress = parent._baseAddress;
+        _highWater = parent._highWater;
+        
+        _symbolTable = parent._symbolTable;
+        _literals = new LiteralTable();
+        _equates = new Equates();
+        
+        _errors = new ArrayList<>();
+        _metrics = null;
+        _listing = null;
+        _macros = null;
+    }
+    
+    public int locctr() {
+        return _locctr;
+    }
+    
+    public void setLocctr(int locctr) {
+        _locctr = locctr;
+    }
+    
+    public void advance(int length) {
+        _locctr += length;
+    }
+    
+    // The highest location counter left by ORG, where ORG without an operand returns to
+    int highWater() {
+        return _highWater;
+    }
+    
+    void setHighWater(int locctr) {
+        _highWater = locctr;
+    }
+    
+    // The source line pass 1 has reached: that of the statement placed last, or the line before
+    // the CSECT where it stopped
+    int line() {
+        return _line;
+    }
+    
+    void setLine(int line) {
+        _line = line;
+    }
+    
+    // Statements placed by pass 1, comments aside
+    int statements() {
+        return _statements;
+    }
+    
+    void addStatement() {
+        _statements++;
+    }
+    
+    public int startAddress() {
+        return _startAddress;
+    }
+    
+    public void setStartAddress(int startAddr) {
+        _startAddress = startAddr;
+    }
+    
+    public int firstExecAddress() {
+        return _firstExecAddress;
+    }
+    
+    public void setFirstExecAddress(int firstExecAddr) {
+        _firstExecAddress = firstExecAddr;
+    }
+    
+    public int programLength() {
+        return _programLength;
+    }
+    
+    public void setProgramLength(int length) {
+        _programLength = length;
+    }
+    
+    public int baseAddress() {
+        return _baseAddress;
+    }
+    
+    public void setBaseAddress(int baseAddr) {
+        _baseAddress = baseAddr;
+    }
+    
+    public SymbolTable symbolTable() {
+        return _symbolTable;
+    }
+    
+    // The pending literal pool
+    LiteralTable literals() {
+        return _literals;
+    }
+    
+    // The symbols defined by EQU
+    Equates equates() {
+        return _equates;
+    }
+    
+    public void addError(String message) {
+        _errors.add(message);
+    }
+    
+    public List<String> errors() {
+        return Collections.unmodifiableList(_errors);
+    }
+    
+    // Null unless metrics are collected, so every probe costs a single null check
+    public AssemblyMetrics metrics() {
+        return _metrics;
+    }
+    
+    public void setMetrics(AssemblyMetrics metrics) {
+        _metrics = metrics;
+    }
+    
+    // Null unless a listing is written; workers never list
+    Listing listing() {
+        return _listing;
+    }
+    
+    void setListing(Listing listing) {
+        _listing = listing;
+    }
+    
+    // Expands the macro invocations of the source, null when it defines none
+    MacroProcessor macros() {
+        return _macros;
+    }
+    
+    void setMacros(MacroProcessor macros) {
+        _macros = macros;
+    }
+}
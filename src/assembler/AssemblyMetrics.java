@@ -0,0 +1,191 @@
+package assembler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class AssemblyMetrics {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    
+    // Only the coarse phases are emitted as JFR events; the per-line ones are just accumulated
+    public enum Phase {
+        READ(false), PARSE(false), PASS1(true), RESOLVE(true), PASS2(true), ENCODE(false), WRITE(false);
+        
+        private final boolean _traced;
+        
+        private Phase(boolean traced) {
+            _traced = traced;
+        }
+    }
+    
+    public enum Counter {
+        STATEMENTS, SYMBOLS, FORMAT4, BASE_RELATIVE, LITERALS, TEXT_RECORDS, MODIFICATION_RECORDS
+    }
+    
+    private final String _name;
+    private final long[] _time;
+    private final long[] _allocated;
+    private final long[] _startTime;
+    private final long[] _startAllocated;
+    private final AssemblyPhaseEvent[] _events;
+    private final long[] _counters;
+    private final Map<String, long[]> _stages;   // batches, items, nanos, stalled nanos
+    
+    public AssemblyMetrics(String name) {
+        int phases = Phase.values().length;
+        
+        _name = name;
+        _time = new long[phases];
+        _allocated = new long[phases];
+        _startTime = new long[phases];
+        _startAllocated = new long[phases];
+        _events = new AssemblyPhaseEvent[phases];
+        _counters = new long[Counter.values().length];
+        _stages = new LinkedHashMap<>();
+    }
+    
+    public String name() {
+        return _name;
+    }
+    
+    public void begin(Phase phase) {
+        int i = phase.ordinal();
+        
+        _startAllocated[i] = allocatedBytes();
+        _startTime[i] = System.nanoTime();
+        
+        if (phase._traced && AssemblyPhaseEvent.ENABLED.isEnabled()) {
+            AssemblyPhaseEvent event = new AssemblyPhaseEvent(_name, phase.name());
+            
+            event.begin();
+            _events[i] = event;
+        }
+    }
+    
+    public void end(Phase phase) {
+        int i = phase.ordinal();
+        
+        _time[i] += System.nanoTime() - _startTime[i];
+        _allocated[i] += allocatedBytes() - _startAllocated[i];
+        
+        if (_events[i] != null) {
+            _events[i].commit();
+            _events[i] = null;
+        }
+    }
+    
+    public void increment(Counter counter) {
+        _counters[counter.ordinal()]++;
+    }
+    
+    public void add(Counter counter, long n) {
+        _counters[counter.ordinal()] += n;
+    }
+    
+    // Throughput of a pipeline stage: the batches and items through it, the time it ran and the
+    // part of that time it stalled, waiting for input or for room in its output
+    public void addStage(String stage, long batches, long items, long nanos, long stalledNanos) {
+        long[] values = _stages.computeIfAbsent(stage, name -> new long[4]);
+        
+        values[0] += batches;
+        values[1] += items;
+        values[2] += nanos;
+        values[3] += stalledNanos;
+    }
+    
+    // Adds the measurements of a worker that ran part of a phase
+    public void merge(AssemblyMetrics other) {
+        for (int i = 0; i < _time.length; i++) {
+            _time[i] += other._time[i];
+            _allocated[i] += other._allocated[i];
+        }
+        
+        for (int i = 0; i < _counters.length; i++) {
+            _counters[i] += other._counters[i];
+        }
+        
+        for (Map.Entry<String, long[]> stage : other._stages.entrySet()) {
+            long[] values = stage.getValue();
+            
+            addStage(stage.getKey(), values[0], values[1], values[2], values[3]);
+        }
+    }
+    
+    public long time(Phase phase) {
+        return _time[phase.ordinal()];
+    }
+    
+    public long allocated(Phase phase) {
+        return _allocated[phase.ordinal()];
+    }
+    
+    public long count(Counter counter) {
+        return _counters[counter.ordinal()];
+    }
+    
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+        } else {
+            return 0;
+        }
+    }
+    
+    public String toJson() {
+        StringBuilder s = new StringBuilder("{\"file\":\"");
+        
+        for (char ch : String.valueOf(_name).toCharArray()) {
+            if (ch == '"' || ch == '\\') {
+                s.append('\\');
+            }
+            
+            s.append(ch);
+        }
+        
+        s.append("\",\"phases\":{");
+        
+        for (Phase phase : Phase.values()) {
+            if (phase.ordinal() > 0) {
+                s.append(',');
+            }
+            
+            s.append('"').append(phase.name().toLowerCase()).append("\":{\"nanos\":").append(time(phase))
+                    .append(",\"allocatedBytes\":").append(allocated(phase)).append('}');
+        }
+        
+        s.append("},\"counters\":{");
+        
+        for (Counter counter : Counter.values()) {
+            if (counter.ordinal() > 0) {
+                s.append(',');
+            }
+            
+            s.append('"').append(counter.name().toLowerCase()).append("\":").append(count(counter));
+        }
+        
+        s.append('}');
+        
+        // Only pipelined runs have stages
+        if (_stages.isEmpty() == false) {
+            s.append(",\"stages\":{");
+            
+            for (Map.Entry<String, long[]> stage : _stages.entrySet()) {
+                long[] values = stage.getValue();
+                
+                if (s.charAt(s.length() - 1) != '{') {
+                    s.append(',');
+                }
+                
+                s.append('"').append(stage.getKey()).append("\":{\"batches\":").append(values[0])
+                        .append(",\"items\":").append(values[1])
+                        .append(",\"nanos\":").append(values[2])
+                        .append(",\"stalledNanos\":").append(values[3]).append('}');
+            }
+            
+            s.append('}');
+        }
+        
+        return s.append('}').toString();
+    }
+}
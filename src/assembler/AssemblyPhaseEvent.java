@@ -0,0 +1,24 @@
+package assembler;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("assembler.Phase")
+@Label("Assembly Phase")
+@Category("Assembler")
+class AssemblyPhaseEvent extends Event {
+    static final AssemblyPhaseEvent ENABLED = new AssemblyPhaseEvent(null, null);
+    
+    @Label("File")
+    final String file;
+    
+    @Label("Phase")
+    final String phase;
+    
+    AssemblyPhaseEvent(String file, String phase) {
+        this.file = file;
+        this.phase = phase;
+    }
+}
@@ -0,0 +1,325 @@
+package assembler;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class BatchAssembler {
+    private final Assembler _assembler;
+    private final int _threads;
+    private final boolean _run;
+    
+    public BatchAssembler(Assembler assembler, int threads) {
+        this(assembler, threads, false);
+    }
+    
+    // With run, every program assembled without errors is also executed on the simulator
+    public BatchAssembler(Assembler assembler, int threads, boolean run) {
+        _assembler = assembler;
+        _threads = Math.max(1, threads);
+        _run = run;
+    }
+    
+    public List<Result> assemble(List<File> inputs) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(_threads, Math.max(1, inputs.size())));
+        
+        try {
+            List<Future<Result>> futures = new ArrayList<>(inputs.size());
+            
+            for (final File input : inputs) {
+                futures.add(executor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        return assemble(input);
+                    }
+                }));
+            }
+            
+            List<Result> results = new ArrayList<>(inputs.size());
+            
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    private Result assemble(File input) {
+        File output = outputFile(input, _assembler.outputFormat());
+        AssemblyContext context = new AssemblyContext();
+        
+        try {
+            _assembler.assemble(input, output, context);
+            
+            Simulator.Report run = _run && context.errors().isEmpty() ? run(output, _assembler.outputFormat()) : null;
+            
+            return new Result(input, output, context.errors(), context.metrics(), run, null);
+        } catch (IOException | RuntimeException e) {
+            return new Result(input, output, context.errors(), context.metrics(), null, e);
+        }
+    }
+    
+    // Devices read <name>.<id> and write <name>.<id>.out next to the object file, for regression runs
+    private static Simulator.Report run(File output, OutputFormat format) throws IOException {
+        try (Simulator simulator = new Simulator()) {
+            if (format == OutputFormat.IMAGE) {
+                simulator.loadImage(output, -1);
+            } else {
+                simulator.load(output);
+            }
+            
+            String name = output.getName();
+            
+            simulator.setDeviceFiles(new File(output.getParentFile(), name.substring(0, name.lastIndexOf('.'))));
+            
+            return simulator.run();
+        }
+    }
+    
+    public static File outputFile(File input, OutputFormat format) {
+        String name = input.getName();
+        int pos = name.lastIndexOf('.');
+        
+        return new File(input.getParentFile(), (pos > 0 ? name.substring(0, pos) : name) + format.extension());
+    }
+    
+    public static List<File> collect(List<File> paths) {
+        List<File> files = new ArrayList<>();
+        
+        for (File path : paths) {
+            if (path.isDirectory()) {
+                File[] children = path.listFiles();
+                
+                if (children != null) {
+                    Arrays.sort(children);
+                    
+                    for (File child : children) {
+                        if (child.isFile() && child.getName().endsWith(".asm")) {
+                            files.add(child);
+                        }
+                    }
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        
+        return files;
+    }
+    
+    public static int main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        AssemblerOptions options = new AssemblerOptions();
+        List<File> paths = new ArrayList<>();
+        File stats = null;
+        boolean run = false;
+        
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-j":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-m":
+                    options.setMemoryLimit(Integer.parseInt(args[++i]));
+                    break;
+                case "-p":
+                    options.setParallelism(Integer.parseInt(args[++i]));
+                    break;
+                case "-i":
+                    options.setIncremental(true);
+                    break;
+                case "-l":
+                    options.setListing(true);
+                    break;
+                case "-f":
+                    options.setOutputFormat(OutputFormat.valueOf(args[++i].toUpperCase()));
+                    break;
+                case "--one-pass":
+                    options.setOnePass(true);
+                    break;
+                case "--relax":
+                    options.setRelax(true);
+                    break;
+                case "--record-length":
+                    options.setRecordLength(Integer.decode(args[++i]));
+                    break;
+                case "--pipeline":
+                    options.setPipelined(true);
+                    break;
+                case "--run":
+                    run = true;
+                    break;
+                case "--stats":
+                    options.setMetricsEnabled(true);
+                    stats = new File(args[++i]);
+                    break;
+                default:
+                    paths.add(new File(args[i]));
+            }
+        }
+        
+        if (paths.size() == 1 && paths.get(0).getPath().equals("-")) {
+            return assembleStream(options);
+        }
+        
+        List<Result> results;
+        
+        try {
+            results = new BatchAssembler(new Assembler(options), threads, run).assemble(collect(paths));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            
+            return 1;
+        }
+        
+        int failures = 0;
+        
+        for (Result result : results) {
+            for (String error : result.errors()) {
+                System.out.println(result.input() + ": " + error);
+            }
+            
+            if (result.run() != null) {
+                System.out.println(result.input() + ": " + result.run());
+            }
+            
+            if (result.failed()) {
+                failures++;
+            }
+        }
+        
+        System.out.println("Assembled " + (results.size() - failures) + " of " + results.size() + " files");
+        
+        if (failures > 0) {
+            System.out.println("Failed:");
+            
+            for (Result result : results) {
+                if (result.failed()) {
+                    if (result.exception() != null) {
+                        System.out.println("  " + result.input() + ": " + result.exception());
+                    } else if (result.run() != null && result.run().isFault()) {
+                        System.out.println("  " + result.input() + ": " + result.run().stop());
+                    } else {
+                        System.out.println("  " + result.input());
+                    }
+                }
+            }
+        }
+        
+        if (stats != null) {
+            try {
+                writeStats(results, stats);
+            } catch (IOException e) {
+                System.out.println("Cannot write " + stats + ": " + e.getMessage());
+            }
+        }
+        
+        return failures > 0 ? 1 : 0;
+    }
+    
+    // Assembles standard input to standard output in one pass, reporting errors on standard error
+    private static int assembleStream(AssemblerOptions options) {
+        AssemblyContext context = new AssemblyContext();
+        
+        try (RecordWriter writer = options.outputFormat().open(System.out)) {
+            new OnePassAssembler(options).assemble(System.in, writer, context);
+        } catch (IOException e) {
+            System.err.println(e);
+            
+            return 1;
+        }
+        
+        for (String error : context.errors()) {
+            System.err.println(error);
+        }
+        
+        return context.errors().isEmpty() ? 0 : 1;
+    }
+    
+    public static void writeStats(List<Result> results, File output) throws IOException {
+        try (Writer writer = new BufferedWriter(new FileWriter(output))) {
+            writer.write("[");
+            
+            String separator = "\n";
+            
+            for (Result result : results) {
+                if (result.metrics() != null) {
+                    writer.write(separator);
+                    writer.write(result.metrics().toJson());
+                    separator = ",\n";
+                }
+            }
+            
+            writer.write("\n]\n");
+        }
+    }
+    
+    public static class Result {
+        private final File _input;
+        private final File _output;
+        private final List<String> _errors;
+        private final AssemblyMetrics _metrics;
+        private final Simulator.Report _run;
+        private final Exception _exception;
+        
+        public Result(File input, File output, List<String> errors, AssemblyMetrics metrics, Exception exception) {
+            this(input, output, errors, metrics, null, exception);
+        }
+        
+        public Result(File input, File output, List<String> errors, AssemblyMetrics metrics, Simulator.Report run, Exception exception) {
+            _input = input;
+            _output = output;
+            _errors = Collections.unmodifiableList(new ArrayList<>(errors));
+            _metrics = metrics;
+            _run = run;
+            _exception = exception;
+        }
+        
+        public File input() {
+            return _input;
+        }
+        
+        public File output() {
+            return _output;
+        }
+        
+        public List<String> errors() {
+            return _errors;
+        }
+        
+        public AssemblyMetrics metrics() {
+            return _metrics;
+        }
+        
+        // Null unless the program was run
+        public Simulator.Report run() {
+            return _run;
+        }
+        
+        public Exception exception() {
+            return _exception;
+        }
+        
+        public boolean failed() {
+            return _exception != null || _errors.isEmpty() == false || (_run != null && _run.isFault());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package assembler;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+public class BinaryObjectReader implements Closeable {
+    private final DataInputStream _istream;
+    
+    public BinaryObjectReader(File input) throws IOException {
+        this(new FileInputStream(input));
+    }
+    
+    public BinaryObjectReader(InputStream istream) throws IOException {
+        _istream = new DataInputStream(new BufferedInputStream(istream, 1 << 16));
+        
+        byte[] magic = new byte[BinaryObjectWriter.MAGIC.length];
+        
+        _istream.readFully(magic);
+        
+        if (isBinary(magic) == false) {
+            throw new IOException("Not a binary object file");
+        }
+        
+        int version = _istream.readUnsignedShort();
+        
+        if (version != BinaryObjectWriter.VERSION) {
+            throw new IOException("Unsupported object file version: " + version);
+        }
+    }
+    
+    public void read(RecordWriter writer) throws IOException {
+        byte[] code = new byte[0xFF];
+        byte[] name = new byte[6];
+        int tag;
+        
+        while ((tag = _istream.read()) >= 0) {
+            switch (tag) {
+                case 'H':
+                    writer.header(readName(name), _istream.readInt(), _istream.readInt());
+                    break;
+                case 'T':
+                    int startAddr = _istream.readInt();
+                    int length = _istream.readInt();
+                
+                    if (length > code.length) {
+                        code = new byte[length];
+                    }
+                
+                    _istream.readFully(code, 0, length);
+                    writer.text(startAddr, code, 0, length);
+                    break;
+                case 'M':
+                    writer.modification(_istream.readInt(), _istream.readUnsignedByte());
+                    break;
+                case 'S':
+                    int modifiedLoc = _istream.readInt();
+                    int modifiedLen = _istream.readUnsignedByte();
+                    char sign = (char) _istream.readUnsignedByte();
+                
+                    writer.modification(modifiedLoc, modifiedLen, sign, readName(name));
+                    break;
+                case 'D':
+                    String[] definitions = new String[_istream.readUnsignedShort()];
+                    int[] addresses = new int[definitions.length];
+                
+                    for (int i = 0; i < definitions.length; i++) {
+                        definitions[i] = readName(name);
+                        addresses[i] = _istream.readInt();
+                    }
+                
+                    writer.define(definitions, addresses);
+                    break;
+                case 'R':
+                    String[] references = new String[_istream.readUnsignedShort()];
+                
+                    for (int i = 0; i < references.length; i++) {
+                        references[i] = readName(name);
+                    }
+                
+                    writer.refer(references);
+                    break;
+                case 'E':
+                    writer.end(_istream.readInt());
+                    break;
+                default:
+                    throw new IOException("Unknown record tag: " + tag);
+            }
+        }
+    }
+    
+    private String readName(byte[] name) throws IOException {
+        _istream.readFully(name);
+        
+        return new String(name, StandardCharsets.ISO_8859_1).trim();
+    }
+    
+    public static boolean isBinary(byte[] magic) {
+        if (magic.length < BinaryObjectWriter.MAGIC.length) {
+            return false;
+        }
+        
+        for (int i = 0; i < BinaryObjectWriter.MAGIC.length; i++) {
+            if (magic[i] != BinaryObjectWriter.MAGIC[i]) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    public static boolean isBinary(File file) throws IOException {
+        byte[] magic = new byte[BinaryObjectWriter.MAGIC.length];
+        
+        try (DataInputStream istream = new DataInputStream(new FileInputStream(file))) {
+            istream.readFully(magic);
+        } catch (EOFException e) {
+            return false;
+        }
+        
+        return isBinary(magic);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        _istream.close();
+    }
+}
@@ -0,0 +1,108 @@
+package assembler;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+ * Binary object file layout (big-endian):
+ *
+ *   magic "SXOB", u16 version
+ *   'H' name[6] u32 start u32 length
+ *   'T' u32 start u32 length byte[length]      (one per text record)
+ *   'M' u32 location u8 half-bytes             (one per modification record)
+ *   'S' u32 location u8 half-bytes u8 sign name[6]
+ *                                              (one per modification by an external symbol)
+ *   'D' u16 count (name[6] u32 address)[count]
+ *   'R' u16 count name[6][count]
+ *   'E' u32 entry point
+ */
+public class BinaryObjectWriter implements RecordWriter {
+    private final DataOutputStream _ostream;
+    
+    public static final byte[] MAGIC = { 'S', 'X', 'O', 'B' };
+    public static final int VERSION = 1;
+    
+    public BinaryObjectWriter(File output) throws IOException {
+        this(new FileOutputStream(output));
+    }
+    
+    public BinaryObjectWriter(OutputStream ostream) throws IOException {
+        _ostream = new DataOutputStream(new BufferedOutputStream(ostream, 1 << 16));
+        _ostream.write(MAGIC);
+        _ostream.writeShort(VERSION);
+    }
+    
+    @Override
+    public void header(String name, int startAddr, int length) throws IOException {
+        _ostream.writeByte('H');
+        writeName(name != null ? name : "");
+        _ostream.writeInt(startAddr);
+        _ostream.writeInt(length);
+    }
+    
+    @Override
+    public void text(int startAddr, byte[] code, int offset, int length) throws IOException {
+        _ostream.writeByte('T');
+        _ostream.writeInt(startAddr);
+        _ostream.writeInt(length);
+        _ostream.write(code, offset, length);
+    }
+    
+    @Override
+    public void modification(int modifiedLoc, int modifiedLen) throws IOException {
+        _ostream.writeByte('M');
+        _ostream.writeInt(modifiedLoc);
+        _ostream.writeByte(modifiedLen);
+    }
+    
+    @Override
+    public void modification(int modifiedLoc, int modifiedLen, char sign, String symbol) throws IOException {
+        _ostream.writeByte('S');
+        _ostream.writeInt(modifiedLoc);
+        _ostream.writeByte(modifiedLen);
+        _ostream.writeByte(sign);
+        writeName(symbol);
+    }
+    
+    @Override
+    public void define(String[] names, int[] addresses) throws IOException {
+        _ostream.writeByte('D');
+        _ostream.writeShort(names.length);
+        
+        for (int i = 0; i < names.length; i++) {
+            writeName(names[i]);
+            _ostream.writeInt(addresses[i]);
+        }
+    }
+    
+    @Override
+    public void refer(String[] names) throws IOException {
+        _ostream.writeByte('R');
+        _ostream.writeShort(names.length);
+        
+        for (String name : names) {
+            writeName(name);
+        }
+    }
+    
+    @Override
+    public void end(int firstExecAddr) throws IOException {
+        _ostream.writeByte('E');
+        _ostream.writeInt(firstExecAddr);
+    }
+    
+    private void writeName(String name) throws IOException {
+        for (int i = 0; i < 6; i++) {
+            _ostream.writeByte(i < name.length() ? name.charAt(i) : ' ');
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        _ostream.close();
+    }
+}
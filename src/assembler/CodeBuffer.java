@@ -0,0 +1,63 @@
+package assembler;
+
+import java.util.Arrays;
+
+public class CodeBuffer {
+    private byte[] _data;
+    private int _length;
+    
+    public CodeBuffer() {
+        this(64);
+    }
+    
+    public CodeBuffer(int capacity) {
+        _data = new byte[capacity];
+        _length = 0;
+    }
+    
+    public void clear() {
+        _length = 0;
+    }
+    
+    public void truncate(int length) {
+        _length = Math.min(_length, length);
+    }
+    
+    public void put(int b) {
+        if (_length == _data.length) {
+            _data = Arrays.copyOf(_data, _data.length * 2);
+        }
+        
+        _data[_length++] = (byte) b;
+    }
+    
+    public void put24(int value) {
+        put(value >>> 16);
+        put(value >>> 8);
+        put(value);
+    }
+    
+    public void put32(int value) {
+        put(value >>> 24);
+        put24(value);
+    }
+    
+    public byte[] data() {
+        return _data;
+    }
+    
+    public int length() {
+        return _length;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder(_length * 2);
+        
+        for (int i = 0; i < _length; i++) {
+            s.append(String.format("%02X", _data[i] & 0xFF));
+        }
+        
+        return s.toString();
+    }
+}
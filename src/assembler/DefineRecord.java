@@ -0,0 +1,30 @@
+package assembler;
+
+import java.io.IOException;
+
+public class DefineRecord implements Record {
+    private final String[] _names;
+    private final int[] _addresses;
+    
+    public DefineRecord(String[] names, int[] addresses) {
+        _names = names;
+        _addresses = addresses;
+    }
+    
+    @Override
+    public String toObjectProgram() {
+        StringBuilder sb = new StringBuilder("D");
+        
+        for (int i = 0; i < _names.length; i++) {
+            sb.append(String.format("%1$-6s%2$06X", _names[i], _addresses[i]));
+        }
+        
+        return sb.toString();
+    }
+    
+    @Override
+    public void writeTo(RecordWriter writer) throws IOException {
+        writer.define(_names, _addresses);
+    }
+    
+}
@@ -0,0 +1,14 @@
+package assembler;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// An I/O device of the simulator, addressed by the byte operand of TD, RD and WD
+public interface Device extends Closeable {
+    public boolean test() throws IOException;
+    
+    // Returns 0 at end of input
+    public int read() throws IOException;
+    
+    public void write(int b) throws IOException;
+}
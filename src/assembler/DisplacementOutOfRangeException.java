@@ -0,0 +1,11 @@
+package assembler;
+
+class DisplacementOutOfRangeException extends Exception {
+    public DisplacementOutOfRangeException(Statement statement) {
+        super("Displacement out of range: " + statement.operand1());
+    }
+    
+    public DisplacementOutOfRangeException(Statement statement, String reason) {
+        super(reason + ": " + statement.operand1());
+    }
+}
@@ -4,4 +4,8 @@ class DuplicateSymbolException extends Exception {
     public DuplicateSymbolException(Statement statement) {
         super("Duplicate symbol found: " + statement.label());
     }
+    
+    public DuplicateSymbolException(String symbol) {
+        super("Duplicate symbol found: " + symbol);
+    }
 }
@@ -1,5 +1,7 @@
 package assembler;
 
+import java.io.IOException;
+
 public class EndRecord implements Record {
     private final int _startAddress;
     
@@ -12,4 +14,9 @@ public class EndRecord implements Record {
         return String.format("E%1$06X", _startAddress);
     }
     
+    @Override
+    public void writeTo(RecordWriter writer) throws IOException {
+        writer.end(_startAddress);
+    }
+    
 }
@@ -0,0 +1,152 @@
+package assembler;
+
+import java.util.Arrays;
+
+// The symbols defined by EQU. An EQU whose expression only uses symbols defined before it is
+// evaluated on the spot; the others wait for the end of pass 1, when they form a graph with an
+// edge from each waiting symbol to the EQUs that use it, and are evaluated in topological order,
+// so a chain of forward references takes time linear in its length
+class Equates {
+    private int[] _ids;
+    private Expression[] _expressions;
+    private Statement[] _statements;
+    private int _size;
+    
+    Equates() {
+        _ids = new int[16];
+        _expressions = new Expression[16];
+        _statements = new Statement[16];
+        _size = 0;
+    }
+    
+    int size() {
+        return _size;
+    }
+    
+    int id(int k) {
+        return _ids[k];
+    }
+    
+    Expression expression(int k) {
+        return _expressions[k];
+    }
+    
+    // Defines the symbol of the statement now when its expression can be evaluated, and keeps it
+    // for resolve and for relaxation
+    void add(int id, Expression expression, Statement statement, SymbolTable symbolTable) throws UndefinedSymbolException, InvalidExpressionException {
+        symbolTable.setEquated(id, false);
+        
+        if (expression.isDefined(symbolTable)) {
+            define(id, expression, statement, symbolTable);
+        }
+        
+        if (_size == _ids.length) {
+            _ids = Arrays.copyOf(_ids, _size * 2);
+            _expressions = Arrays.copyOf(_expressions, _size * 2);
+            _statements = Arrays.copyOf(_statements, _size * 2);
+        }
+        
+        _ids[_size] = id;
+        _expressions[_size] = expression;
+        _statements[_size] = statement;
+        _size++;
+    }
+    
+    // Defines the symbols still waiting at the end of pass 1
+    void resolve(AssemblyContext context) {
+        evaluate(context, false);
+    }
+    
+    // Evaluates the defined EQUs again, after relaxation has moved the labels
+    void reevaluate(AssemblyContext context) {
+        evaluate(context, true);
+    }
+    
+    private static void define(int id, Expression expression, Statement statement, SymbolTable symbolTable) throws UndefinedSymbolException, InvalidExpressionException {
+        expression.invalidate();
+        
+        int value = expression.evaluate(symbolTable, statement.location());
+        
+        if (expression.isExternal()) {
+            throw new InvalidExpressionException(expression.text(), "EQU of an external symbol");
+        }
+        
+        symbolTable.setAddress(id, value);
+        symbolTable.setEquated(id, expression.isRelative() == false);
+    }
+    
+    // Kahn's algorithm over the EQUs still undefined, or over the defined ones
+    private void evaluate(AssemblyContext context, boolean defined) {
+        SymbolTable symbolTable = context.symbolTable();
+        int[] node = new int[symbolTable.size()];   // symbol id -> EQU in the graph, -1 if none
+        int[] indegree = new int[_size];
+        int[] start = new int[_size + 1];
+        boolean[] member = new boolean[_size];
+        
+        Arrays.fill(node, -1);
+        
+        for (int k = 0; k < _size; k++) {
+            if (symbolTable.isDefined(_ids[k]) == defined) {
+                node[_ids[k]] = k;
+                member[k] = true;
+            }
+        }
+        
+        for (int k = 0; k < _size; k++) {
+            if (member[k]) {
+                for (int id : _expressions[k].symbols()) {
+                    if (node[id] >= 0) {
+                        start[node[id] + 1]++;
+                        indegree[k]++;
+                    }
+                }
+            }
+        }
+        
+        for (int k = 0; k < _size; k++) {
+            start[k + 1] += start[k];
+        }
+        
+        int[] edges = new int[start[_size]];
+        int[] fill = Arrays.copyOf(start, _size);
+        int[] queue = new int[_size];
+        int head = 0;
+        int tail = 0;
+        
+        for (int k = 0; k < _size; k++) {
+            if (member[k]) {
+                for (int id : _expressions[k].symbols()) {
+                    if (node[id] >= 0) {
+                        edges[fill[node[id]]++] = k;
+                    }
+                }
+                
+                if (indegree[k] == 0) {
+                    queue[tail++] = k;
+                }
+            }
+        }
+        
+        while (head < tail) {
+            int k = queue[head++];
+            
+            try {
+                define(_ids[k], _expressions[k], _statements[k], symbolTable);
+            } catch (UndefinedSymbolException | InvalidExpressionException e) {
+                context.addError(e.getMessage());
+            }
+            
+            for (int e = start[k]; e < start[k + 1]; e++) {
+                if (--indegree[edges[e]] == 0) {
+                    queue[tail++] = edges[e];
+                }
+            }
+        }
+        
+        for (int k = 0; k < _size; k++) {
+            if (member[k] && indegree[k] > 0) {
+                context.addError("Circular EQU definition: " + symbolTable.name(_ids[k]));
+            }
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package assembler;
+
+import java.util.Arrays;
+
+// An operand expression of numbers, symbols and * for the location of its statement, joined by
+// + - * / and parentheses. It is compiled once into postfix code over symbol ids and evaluated on
+// demand, and the value is kept until the symbols move. Labels are relative terms and numbers and
+// absolute symbols absolute ones: a value is relative when one more relative term is added than
+// subtracted, absolute when they pair off, and relative terms are never multiplied or divided.
+// External symbols count as 0, each one added or subtracted once for the linker to fill in
+class Expression {
+    // Operations of the postfix code; CONSTANT and SYMBOL are followed by their value and id
+    private static final int CONSTANT = 0;
+    private static final int SYMBOL = 1;
+    private static final int LOCATION = 2;
+    private static final int ADD = 3;
+    private static final int SUBTRACT = 4;
+    private static final int MULTIPLY = 5;
+    private static final int DIVIDE = 6;
+    private static final int NEGATE = 7;
+    
+    private final String _text;
+    private final int[] _code;
+    private final int[] _symbols;      // distinct symbol ids, in order of appearance
+    private final int _depth;          // stack depth the code needs
+    private boolean _evaluated;
+    private int _value;
+    private boolean _relative;
+    private int[] _externals;
+    private char[] _signs;
+    
+    private Expression(String text, int[] code, int[] symbols, int depth) {
+        _text = text;
+        _code = code;
+        _symbols = symbols;
+        _depth = depth;
+        _evaluated = false;
+    }
+    
+    // Symbols are entered in the table when intern is set, as for forward references in pass 1;
+    // otherwise an unknown symbol is an error
+    static Expression compile(String text, SymbolTable symbolTable, boolean intern) throws InvalidExpressionException, UndefinedSymbolException {
+        Compiler compiler = new Compiler(text, symbolTable, intern);
+        
+        compiler.expression();
+        
+        if (compiler._pos != text.length()) {
+            throw new InvalidExpressionException(text);
+        }
+        
+        return new Expression(text, Arrays.copyOf(compiler._code, compiler._size), Arrays.copyOf(compiler._symbols, compiler._symbolCount), compiler._maxDepth);
+    }
+    
+    String text() {
+        return _text;
+    }
+    
+    int[] symbols() {
+        return _symbols;
+    }
+    
+    // True when every symbol of the expression has a value
+    boolean isDefined(SymbolTable symbolTable) {
+        for (int id : _symbols) {
+            if (symbolTable.isDefined(id) == false) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    // The first label among the terms, whose statement a relative value moves with; -1 if none
+    int anchor(SymbolTable symbolTable) {
+        for (int id : _symbols) {
+            if (symbolTable.isExternal(id) == false && symbolTable.isAbsolute(id) == false && symbolTable.isEquated(id) == false) {
+                return id;
+            }
+        }
+        
+        return -1;
+    }
+    
+    // The value for a statement at the location; computed once, until invalidated
+    int evaluate(SymbolTable symbolTable, int location) throws UndefinedSymbolException, InvalidExpressionException {
+        if (_evaluated) {
+            return _value;
+        }
+        
+        _value = run(symbolTable, location, -1);
+        
+        int count = 0;
+        
+        for (int id : _symbols) {
+            if (symbolTable.isExternal(id)) {
+                count++;
+            }
+        }
+        
+        _externals = new int[count];
+        _signs = new char[count];
+        count = 0;
+        
+        // Terms are linear in each external symbol, so setting one to 1 yields its coefficient
+        for (int id : _symbols) {
+            if (symbolTable.isExternal(id)) {
+                int coefficient = run(symbolTable, location, id) - _value;
+                
+                if (coefficient != 1 && coefficient != -1) {
+                    throw new InvalidExpressionException(_text, "External symbol must be added or subtracted once");
+                }
+                
+                _externals[count] = id;
+                _signs[count] = coefficient > 0 ? '+' : '-';
+                count++;
+            }
+        }
+        
+        _evaluated = true;
+        
+        return _value;
+    }
+    
+    // Forgets the value, after the symbols have moved
+    void invalidate() {
+        _evaluated = false;
+    }
+    
+    int value() {
+        return _value;
+    }
+    
+    boolean isRelative() {
+        return _relative;
+    }
+    
+    boolean isExternal() {
+        return _externals.length > 0;
+    }
+    
+    int[] externals() {
+        return _externals;
+    }
+    
+    char sign(int k) {
+        return _signs[k];
+    }
+    
+    // Runs the code with the symbol unit, if any, taken as 1
+    private int run(SymbolTable symbolTable, int location, int unit) throws UndefinedSymbolException, InvalidExpressionException {
+        int[] values = new int[_depth];
+        int[] relative = new int[_depth];       // relative terms added minus subtracted
+        boolean[] external = new boolean[_depth];
+        int top = 0;
+        
+        for (int pc = 0; pc < _code.length; pc++) {
+            switch (_code[pc]) {
+                case CONSTANT:
+                    values[top] = _code[++pc];
+                    relative[top] = 0;
+                    external[top] = false;
+                    top++;
+                
+                    break;
+                case SYMBOL:
+                    int id = _code[++pc];
+                
+                    if (symbolTable.isDefined(id) == false) {
+                        throw new UndefinedSymbolException(symbolTable.name(id));
+                    }
+                
+                    values[top] = id == unit ? 1 : symbolTable.address(id);
+                    external[top] = symbolTable.isExternal(id);
+                    relative[top] = external[top] || symbolTable.isAbsolute(id) ? 0 : 1;
+                    top++;
+                
+                    break;
+                case LOCATION:
+                    values[top] = location;
+                    relative[top] = 1;
+                    external[top] = false;
+                    top++;
+                
+                    break;
+                case ADD:
+                case SUBTRACT:
+                    top--;
+                
+                    if (_code[pc] == ADD) {
+                        values[top - 1] += values[top];
+                        relative[top - 1] += relative[top];
+                    } else {
+                        values[top - 1] -= values[top];
+                        relative[top - 1] -= relative[top];
+                    }
+                
+                    external[top - 1] |= external[top];
+                
+                    break;
+                case MULTIPLY:
+                case DIVIDE:
+                    top--;
+                
+                    if (relative[top - 1] != 0 || relative[top] != 0 || external[top - 1] || external[top]) {
+                        throw new InvalidExpressionException(_text, "Relative term in multiplication or division");
+                    }
+                
+                    if (_code[pc] == MULTIPLY) {
+                        values[top - 1] *= values[top];
+                    } else if (values[top] == 0) {
+                        throw new InvalidExpressionException(_text, "Division by zero");
+                    } else {
+                        values[top - 1] /= values[top];
+                    }
+                
+                    break;
+                case NEGATE:
+                    values[top - 1] = -values[top - 1];
+                    relative[top - 1] = -relative[top - 1];
+                
+                    break;
+            }
+        }
+        
+        if (unit < 0) {
+            if (relative[0] != 0 && relative[0] != 1) {
+                throw new InvalidExpressionException(_text, "Relative terms do not pair off");
+            }
+            
+            _relative = relative[0] == 1;
+        }
+        
+        return values[0];
+    }
+    
+    // Recursive descent over the text, emitting postfix code
+    private static class Compiler {
+        private final String _text;
+        private final SymbolTable _symbolTable;
+        private final boolean _intern;
+        private int _pos;
+        private int[] _code;
+        private int _size;
+        private int[] _symbols;
+        private int _symbolCount;
+        private int _depth;
+        private int _maxDepth;
+        
+        private Compiler(String text, SymbolTable symbolTable, boolean intern) {
+            _text = text;
+            _symbolTable = symbolTable;
+            _intern = intern;
+            _pos = 0;
+            _code = new int[16];
+            _size = 0;
+            _symbols = new int[4];
+            _symbolCount = 0;
+            _depth = 0;
+            _maxDepth = 0;
+        }
+        
+        private void expression() throws InvalidExpressionException, UndefinedSymbolException {
+            term();
+            
+            while (_pos < _text.length() && (_text.charAt(_pos) == '+' || _text.charAt(_pos) == '-')) {
+                int op = _text.charAt(_pos++) == '+' ? ADD : SUBTRACT;
+                
+                term();
+                emit(op, -1);
+            }
+        }
+        
+        private void term() throws InvalidExpressionException, UndefinedSymbolException {
+            factor();
+            
+            while (_pos < _text.length() && (_text.charAt(_pos) == '*' || _text.charAt(_pos) == '/')) {
+                int op = _text.charAt(_pos++) == '*' ? MULTIPLY : DIVIDE;
+                
+                factor();
+                emit(op, -1);
+            }
+        }
+        
+        private void factor() throws InvalidExpressionException, UndefinedSymbolException {
+            if (_pos == _text.length()) {
+                throw new InvalidExpressionException(_text);
+            }
+            
+            char ch = _text.charAt(_pos);
+            
+            if (ch == '-') {
+                _pos++;
+                factor();
+                emit(NEGATE, 0);
+            } else if (ch == '+') {
+                _pos++;
+                factor();
+            } else if (ch == '(') {
+                _pos++;
+                expression();
+                
+                if (_pos == _text.length() || _text.charAt(_pos) != ')') {
+                    throw new InvalidExpressionException(_text);
+                }
+                
+                _pos++;
+            } else if (ch == '*') {
+                _pos++;
+                emit(LOCATION, 1);
+            } else if (ch >= '0' && ch <= '9') {
+                long value = 0;
+                
+                while (_pos < _text.length() && _text.charAt(_pos) >= '0' && _text.charAt(_pos) <= '9') {
+                    value = value * 10 + _text.charAt(_pos++) - '0';
+                    
+                    if (value > Integer.MAX_VALUE) {
+                        throw new InvalidExpressionException(_text);
+                    }
+                }
+                
+                emit(CONSTANT, 1);
+                put((int) value);
+            } else if (Character.isLetter(ch) || ch == '_') {
+                int start = _pos;
+                
+                while (_pos < _text.length() && (Character.isLetterOrDigit(_text.charAt(_pos)) || _text.charAt(_pos) == '_')) {
+                    _pos++;
+                }
+                
+                String name = _text.substring(start, _pos);
+                int id = _intern ? _symbolTable.id(name) : _symbolTable.find(name);
+                
+                if (id < 0) {
+                    throw new UndefinedSymbolException(name);
+                }
+                
+                emit(SYMBOL, 1);
+                put(id);
+                addSymbol(id);
+            } else {
+                throw new InvalidExpressionException(_text);
+            }
+        }
+        
+        // Appends an operation that changes the stack depth by delta
+        private void emit(int op, int delta) {
+            put(op);
+            
+            _depth += delta;
+            _maxDepth = Math.max(_maxDepth, _depth);
+        }
+        
+        private void put(int value) {
+            if (_size == _code.length) {
+                _code = Arrays.copyOf(_code, _size * 2);
+            }
+            
+            _code[_size++] = value;
+        }
+        
+        private void addSymbol(int id) {
+            for (int k = 0; k < _symbolCount; k++) {
+                if (_symbols[k] == id) {
+                    return;
+                }
+            }
+            
+            if (_symbolCount == _symbols.length) {
+                _symbols = Arrays.copyOf(_symbols, _symbolCount * 2);
+            }
+            
+            _symbols[_symbolCount++] = id;
+        }
+    }
+}
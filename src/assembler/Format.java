@@ -0,0 +1,17 @@
+package assembler;
+
+public enum Format {
+    ONE(1),
+    TWO(2),
+    THREE_FOUR(3);
+    
+    private final int _length;
+    
+    private Format(int length) {
+        _length = length;
+    }
+    
+    public int length(boolean extended) {
+        return extended && this == THREE_FOUR ? 4 : _length;
+    }
+}
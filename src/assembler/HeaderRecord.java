@@ -1,5 +1,7 @@
 package assembler;
 
+import java.io.IOException;
+
 public class HeaderRecord implements Record {
     private final String _programName;
     private final int _startAddress;
@@ -16,4 +18,9 @@ public class HeaderRecord implements Record {
         return String.format("H%1$-6s%2$06X%3$06X", _programName, _startAddress, _programLength);
     }
     
+    @Override
+    public void writeTo(RecordWriter writer) throws IOException {
+        writer.header(_programName, _startAddress, _programLength);
+    }
+    
 }
@@ -0,0 +1,11 @@
+package assembler;
+
+class InvalidExpressionException extends Exception {
+    public InvalidExpressionException(String expression) {
+        super("Invalid expression found: " + expression);
+    }
+    
+    public InvalidExpressionException(String expression, String reason) {
+        super(reason + ": " + expression);
+    }
+}
@@ -0,0 +1,7 @@
+package assembler;
+
+class InvalidLiteralException extends Exception {
+    public InvalidLiteralException(Statement statement) {
+        super("Invalid literal found: " + statement.operand1());
+    }
+}
@@ -0,0 +1,7 @@
+package assembler;
+
+class InvalidMacroException extends Exception {
+    public InvalidMacroException(String name, String reason) {
+        super(reason + ": " + name);
+    }
+}
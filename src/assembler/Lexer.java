@@ -0,0 +1,261 @@
+package assembler;
+
+import java.nio.charset.StandardCharsets;
+
+public class Lexer {
+    private final SymbolPool _pool;
+    private final SymbolTable _symbolTable;
+    private final OperationTable _opTable;
+    private int _labelStart, _labelEnd;
+    private int _operationStart, _operationEnd;
+    private int _operand1Start, _operand1End;
+    private int _operand2Start, _operand2End;
+    
+    public Lexer(SymbolPool pool, SymbolTable symbolTable) {
+        _pool = pool;
+        _symbolTable = symbolTable;
+        _opTable = Utility.getOperationTable();
+    }
+    
+    public SymbolPool pool() {
+        return _pool;
+    }
+    
+    public SymbolTable symbolTable() {
+        return _symbolTable;
+    }
+    
+    public Statement parse(byte[] buf, int start, int end) {
+        _labelStart = _labelEnd = _operationStart = _operationEnd = -1;
+        _operand1Start = _operand1End = _operand2Start = _operand2End = -1;
+        
+        int pos = skipWhitespace(buf, start, end);
+        
+        if (pos == end) {
+            return null; // blank line
+        } else if (buf[pos] == '.') {
+            return new Statement(new String(buf, pos + 1, end - pos - 1, StandardCharsets.ISO_8859_1));
+        }
+        
+        boolean labelColumn = pos == start;
+        int firstStart = pos;
+        int firstEnd = pos = skipToken(buf, pos, end);
+        
+        pos = skipWhitespace(buf, pos, end);
+        
+        if (labelColumn && pos < end) {
+            String first = _pool.intern(buf, buf[firstStart] == '+' ? firstStart + 1 : firstStart, firstEnd);
+            int secondStart = pos;
+            int secondEnd = skipToken(buf, pos, end);
+            int rest = skipWhitespace(buf, secondEnd, end);
+            
+            // LABEL OP [OPERAND], or OP OPERAND written without leading whitespace
+            if (rest < end || isOperation(first) == false) {
+                _labelStart = firstStart;
+                _labelEnd = firstEnd;
+                _operationStart = secondStart;
+                _operationEnd = secondEnd;
+                pos = rest;
+            } else {
+                _operationStart = firstStart;
+                _operationEnd = firstEnd;
+            }
+        } else {
+            _operationStart = firstStart;
+            _operationEnd = firstEnd;
+        }
+        
+        boolean extended = false;
+        
+        if (buf[_operationStart] == '+') {
+            extended = true;
+            _operationStart++;
+        }
+        
+        Operation instruction = _opTable.get(buf, _operationStart, _operationEnd);
+        String operation = instruction != null ? instruction.mnemonic() : _pool.intern(buf, _operationStart, _operationEnd);
+        boolean whole = instruction == null && (isSymbolList(buf, _operationStart, _operationEnd) || isArgumentList(operation));
+        
+        if (pos < end && whole) {
+            _operand1Start = pos;
+            _operand1End = skipArguments(buf, pos, end);
+        } else if (pos < end) {
+            scanOperands(buf, pos, end);
+        }
+        
+        String label = _labelStart >= 0 ? _pool.intern(buf, _labelStart, _labelEnd) : null;
+        String[] symbols = new String[2];
+        int labelId = label != null ? _symbolTable.id(label) : -1;
+        int symbolId = -1;
+        
+        if (_operand1Start >= 0) {
+            symbols[0] = _pool.intern(buf, _operand1Start, _operand1End);
+            
+            int symbolStart = _operand1Start;
+            
+            if (buf[symbolStart] == '#' || buf[symbolStart] == '@') {
+                symbolStart++;
+            }
+            
+            // Only a plain symbol has an id here; an expression such as BUFEND-BUFFER is compiled on its own
+            if (isSymbol(buf, symbolStart, _operand1End) && whole == false) {
+                symbolId = _symbolTable.id(_pool.intern(buf, symbolStart, _operand1End));
+            }
+        }
+        
+        if (_operand2Start >= 0) {
+            symbols[1] = _pool.intern(buf, _operand2Start, _operand2End);
+        }
+        
+        if (instruction != null) {
+            return new Statement(label, instruction, extended, symbols, labelId, symbolId);
+        } else {
+            return new Statement(label, operation, extended, symbols, labelId, symbolId);
+        }
+    }
+    
+    private void scanOperands(byte[] buf, int pos, int end) {
+        _operand1Start = pos;
+        pos = skipOperand(buf, pos, end);
+        _operand1End = pos;
+        
+        pos = skipWhitespace(buf, pos, end);
+        
+        if (pos < end && buf[pos] == ',') {
+            _operand1End = trimEnd(buf, _operand1Start, _operand1End);
+            
+            pos = skipWhitespace(buf, pos + 1, end);
+            _operand2Start = pos;
+            _operand2End = skipOperand(buf, pos, end);
+        }
+    }
+    
+    // EXTDEF and EXTREF take a list of names, kept whole as the first operand
+    private static boolean isSymbolList(byte[] buf, int start, int end) {
+        return end - start == 6 && buf[start] == 'E' && buf[start + 1] == 'X' && buf[start + 2] == 'T'
+                && (buf[start + 3] == 'D' && buf[start + 4] == 'E' && buf[start + 5] == 'F'
+                        || buf[start + 3] == 'R' && buf[start + 4] == 'E' && buf[start + 5] == 'F');
+    }
+    
+    // The parameters of MACRO and the arguments of a macro invocation, which is any operation the
+    // assembler does not know, are split when the macro is defined or expanded
+    private static boolean isArgumentList(String operation) {
+        return operation.equals("MACRO") || Utility.isDirective(operation) == false;
+    }
+    
+    // Arguments end at whitespace outside quotes
+    private static int skipArguments(byte[] buf, int pos, int end) {
+        boolean quoted = false;
+        
+        while (pos < end && (quoted || isWhitespace(buf[pos]) == false)) {
+            if (buf[pos] == '\'') {
+                quoted = !quoted;
+            }
+            
+            pos++;
+        }
+        
+        return pos;
+    }
+    
+    // Operands end at whitespace or a comma, except inside C'...' / X'...' quotes
+    private static int skipOperand(byte[] buf, int pos, int end) {
+        boolean quoted = false;
+        
+        while (pos < end) {
+            byte ch = buf[pos];
+            
+            if (ch == '\'') {
+                quoted = !quoted;
+            } else if (quoted == false && (ch == ',' || isWhitespace(ch))) {
+                break;
+            }
+            
+            pos++;
+        }
+        
+        return pos;
+    }
+    
+    private static int skipToken(byte[] buf, int pos, int end) {
+        while (pos < end && isWhitespace(buf[pos]) == false) {
+            pos++;
+        }
+        
+        return pos;
+    }
+    
+    private static int skipWhitespace(byte[] buf, int pos, int end) {
+        while (pos < end && isWhitespace(buf[pos])) {
+            pos++;
+        }
+        
+        return pos;
+    }
+    
+    private static int trimEnd(byte[] buf, int start, int end) {
+        while (end > start && isWhitespace(buf[end - 1])) {
+            end--;
+        }
+        
+        return end;
+    }
+    
+    private static boolean isSymbol(byte[] buf, int start, int end) {
+        if (start == end || isSymbolStart(buf[start]) == false) {
+            return false;
+        }
+        
+        for (int i = start + 1; i < end; i++) {
+            if (isSymbolStart(buf[i]) == false && (buf[i] < '0' || buf[i] > '9')) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    private static boolean isSymbolStart(byte ch) {
+        return (ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z') || ch == '_';
+    }
+    
+    private static boolean isWhitespace(byte ch) {
+        return ch == ' ' || ch == '\t' || ch == '\r' || ch == '\f';
+    }
+    
+    private boolean isOperation(String name) {
+        return _opTable.contains(name) || Utility.isDirective(name);
+    }
+    
+    public int labelStart() {
+        return _labelStart;
+    }
+    
+    public int labelEnd() {
+        return _labelEnd;
+    }
+    
+    public int operationStart() {
+        return _operationStart;
+    }
+    
+    public int operationEnd() {
+        return _operationEnd;
+    }
+    
+    public int operand1Start() {
+        return _operand1Start;
+    }
+    
+    public int operand1End() {
+        return _operand1End;
+    }
+    
+    public int operand2Start() {
+        return _operand2Start;
+    }
+    
+    public int operand2End() {
+        return _operand2End;
+    }
+}
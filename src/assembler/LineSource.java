@@ -0,0 +1,18 @@
+package assembler;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Source lines as ASCII bytes: after next(), the current line is buffer()[lineStart(), lineEnd())
+// without its line terminator
+public interface LineSource extends Closeable {
+    public boolean next() throws IOException;
+    
+    public byte[] buffer();
+    
+    public int lineStart();
+    
+    public int lineEnd();
+    
+    public int lineNumber();
+}
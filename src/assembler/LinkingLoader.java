@@ -0,0 +1,391 @@
+package assembler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+// Links the control sections of any number of object programs into one memory. The object files are
+// read in parallel; the sections are then placed one after another, with their names and external
+// definitions entered in a global symbol table, and finally copied into memory and patched by their
+// modification records, again in parallel since every section only patches itself
+public class LinkingLoader {
+    private final byte[] _memory;
+    private final int _parallelism;
+    private final SymbolTable _symbols;   // ESTAB: section names and external definitions
+    private final List<Section> _sections;
+    private final List<String> _errors;
+    private int _entry;
+    
+    public LinkingLoader(byte[] memory) {
+        this(memory, Runtime.getRuntime().availableProcessors());
+    }
+    
+    public LinkingLoader(byte[] memory, int parallelism) {
+        _memory = memory;
+        _parallelism = Math.max(1, parallelism);
+        _symbols = new SymbolTable();
+        _sections = new ArrayList<>();
+        _errors = new ArrayList<>();
+        _entry = -1;
+    }
+    
+    // Places the sections from the given address, or from the start address of the first section when
+    // it is negative, and returns the entry point: the first end record with an address
+    public int link(List<File> objects, int address) throws IOException {
+        List<Future<List<Section>>> pending = new ArrayList<>(objects.size());
+        
+        for (File object : objects) {
+            pending.add(submit(new ObjectFile(object)));
+        }
+        
+        for (Future<List<Section>> future : pending) {
+            _sections.addAll(Assembler.await(future));
+        }
+        
+        int next = address >= 0 ? address : _sections.isEmpty() ? 0 : _sections.get(0)._start;
+        
+        for (Section section : _sections) {
+            if (next + section._length > _memory.length) {
+                throw new IOException(String.format("Section %s of %06X bytes does not fit at %06X", section._name, section._length, next));
+            }
+            
+            section._address = next;
+            next += section._length;
+            
+            define(section._name, section._address, section);
+            
+            for (int i = 0; i < section._definitions.length; i++) {
+                define(section._definitions[i], section._addresses[i] - section._start + section._address, section);
+            }
+            
+            if (_entry < 0 && section._entry >= 0) {
+                _entry = section._entry - section._start + section._address;
+            }
+        }
+        
+        List<Future<List<String>>> loads = new ArrayList<>(_sections.size());
+        
+        for (final Section section : _sections) {
+            loads.add(submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() {
+                    return section.load(_memory, _symbols);
+                }
+            }));
+        }
+        
+        for (Future<List<String>> future : loads) {
+            _errors.addAll(Assembler.await(future));
+        }
+        
+        return _entry;
+    }
+    
+    // Runs the task on the common pool, or right away when linking on a single thread
+    private <T> Future<T> submit(Callable<T> task) {
+        if (_parallelism > 1) {
+            return ForkJoinPool.commonPool().submit(task);
+        }
+        
+        FutureTask<T> future = new FutureTask<>(task);
+        
+        future.run();
+        
+        return future;
+    }
+    
+    private void define(String name, int address, Section section) {
+        int id = _symbols.id(name);
+        
+        if (_symbols.define(id, address) == false) {
+            _errors.add("Duplicate external symbol: " + name + " in " + section._name);
+        }
+    }
+    
+    public byte[] memory() {
+        return _memory;
+    }
+    
+    public int entry() {
+        return _entry;
+    }
+    
+    // The linked address of a section or external symbol, or SymbolTable.UNDEFINED
+    public int address(String symbol) {
+        int id = _symbols.find(symbol);
+        
+        return id >= 0 && _symbols.isDefined(id) ? _symbols.address(id) : SymbolTable.UNDEFINED;
+    }
+    
+    public List<Section> sections() {
+        return Collections.unmodifiableList(_sections);
+    }
+    
+    public List<String> errors() {
+        return Collections.unmodifiableList(_errors);
+    }
+    
+    public static class Section {
+        private final String _name;
+        private final int _start;
+        private final int _length;
+        private final byte[] _code;
+        private String[] _definitions;
+        private int[] _addresses;
+        private int[] _locations;          // modification records, in the order read
+        private int[] _halfBytes;
+        private String[] _symbols;         // null where the section itself is added
+        private char[] _signs;
+        private int _modifications;
+        private int _entry;
+        private int _address;
+        
+        private Section(String name, int start, int length) {
+            _name = name;
+            _start = start;
+            _length = length;
+            _code = new byte[length];
+            _definitions = new String[0];
+            _addresses = new int[0];
+            _locations = new int[16];
+            _halfBytes = new int[16];
+            _symbols = new String[16];
+            _signs = new char[16];
+            _modifications = 0;
+            _entry = -1;
+            _address = -1;
+        }
+        
+        public String name() {
+            return _name;
+        }
+        
+        public int address() {
+            return _address;
+        }
+        
+        public int length() {
+            return _length;
+        }
+        
+        private void modify(int location, int halfBytes, char sign, String symbol) {
+            if (_modifications == _locations.length) {
+                _locations = Arrays.copyOf(_locations, _modifications * 2);
+                _halfBytes = Arrays.copyOf(_halfBytes, _modifications * 2);
+                _symbols = Arrays.copyOf(_symbols, _modifications * 2);
+                _signs = Arrays.copyOf(_signs, _modifications * 2);
+            }
+            
+            _locations[_modifications] = location;
+            _halfBytes[_modifications] = halfBytes;
+            _symbols[_modifications] = symbol;
+            _signs[_modifications] = sign;
+            _modifications++;
+        }
+        
+        // Copies the section into memory and applies its modification records in order of location
+        private List<String> load(byte[] memory, SymbolTable symbols) {
+            List<String> errors = new ArrayList<>();
+            long[] order = new long[_modifications];
+            
+            System.arraycopy(_code, 0, memory, _address, _length);
+            
+            for (int i = 0; i < _modifications; i++) {
+                order[i] = (long) _locations[i] << 32 | i;
+            }
+            
+            Arrays.sort(order);
+            
+            for (long key : order) {
+                int i = (int) key;
+                int offset = _locations[i] - _start;
+                int addend = _address - _start;
+                
+                if (_symbols[i] != null) {
+                    int id = symbols.find(_symbols[i]);
+                    
+                    if (id < 0 || symbols.isDefined(id) == false) {
+                        errors.add("Undefined external symbol: " + _symbols[i] + " in " + _name);
+                        
+                        continue;
+                    }
+                    
+                    addend = _signs[i] == '-' ? -symbols.address(id) : symbols.address(id);
+                }
+                
+                if (offset < 0 || offset + (_halfBytes[i] + 1) / 2 > _length || _halfBytes[i] > 6) {
+                    errors.add(String.format("Modification record at %06X lies outside section %s", _locations[i], _name));
+                } else {
+                    RelocatingLoader.add(memory, _address + offset, _halfBytes[i], addend);
+                }
+            }
+            
+            return errors;
+        }
+    }
+    
+    // Reads the sections of one object file
+    private static class ObjectFile implements Callable<List<Section>>, RecordWriter {
+        private final File _object;
+        private final List<Section> _sections;
+        private Section _section;
+        
+        private ObjectFile(File object) {
+            _object = object;
+            _sections = new ArrayList<>();
+            _section = null;
+        }
+        
+        @Override
+        public List<Section> call() throws IOException {
+            if (BinaryObjectReader.isBinary(_object)) {
+                try (BinaryObjectReader reader = new BinaryObjectReader(_object)) {
+                    reader.read(this);
+                }
+            } else {
+                try (FileChannel channel = FileChannel.open(_object.toPath(), StandardOpenOption.READ)) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    
+                    ObjectProgramReader.read(buffer, this);
+                }
+            }
+            
+            return _sections;
+        }
+        
+        private Section section() throws IOException {
+            if (_section == null) {
+                throw new IOException(_object + ": record outside a control section");
+            }
+            
+            return _section;
+        }
+        
+        @Override
+        public void header(String name, int startAddr, int length) {
+            _section = new Section(name, startAddr, length);
+            _sections.add(_section);
+        }
+        
+        @Override
+        public void text(int startAddr, byte[] code, int offset, int length) throws IOException {
+            Section section = section();
+            
+            if (startAddr < section._start || startAddr - section._start + length > section._length) {
+                throw new IOException(String.format("%s: text record at %06X lies outside section %s", _object, startAddr, section._name));
+            }
+            
+            System.arraycopy(code, offset, section._code, startAddr - section._start, length);
+        }
+        
+        @Override
+        public void modification(int modifiedLoc, int modifiedLen) throws IOException {
+            section().modify(modifiedLoc, modifiedLen, '+', null);
+        }
+        
+        @Override
+        public void modification(int modifiedLoc, int modifiedLen, char sign, String symbol) throws IOException {
+            section().modify(modifiedLoc, modifiedLen, sign, symbol);
+        }
+        
+        @Override
+        public void define(String[] names, int[] addresses) throws IOException {
+            Section section = section();
+            int n = section._definitions.length;
+            
+            section._definitions = Arrays.copyOf(section._definitions, n + names.length);
+            section._addresses = Arrays.copyOf(section._addresses, n + names.length);
+            
+            System.arraycopy(names, 0, section._definitions, n, names.length);
+            System.arraycopy(addresses, 0, section._addresses, n, names.length);
+        }
+        
+        @Override
+        public void refer(String[] names) {
+            // References are resolved by name from the modification records
+        }
+        
+        @Override
+        public void end(int firstExecAddr) throws IOException {
+            section()._entry = firstExecAddr;
+            _section = null;
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+    
+    public static void main(String[] args) {
+        int address = -1;
+        File image = null;
+        List<File> objects = new ArrayList<>();
+        
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-a":
+                    address = Integer.parseInt(args[++i], 16);
+                    break;
+                case "-o":
+                    image = new File(args[++i]);
+                    break;
+                default:
+                    objects.add(new File(args[i]));
+            }
+        }
+        
+        if (objects.isEmpty()) {
+            System.out.println("Usage: java assembler.LinkingLoader [-a hex-address] [-o image] <object>...");
+            System.exit(2);
+        }
+        
+        LinkingLoader loader = new LinkingLoader(new byte[Simulator.MEMORY_SIZE]);
+        
+        try {
+            int entry = loader.link(objects, address);
+            int start = Integer.MAX_VALUE;
+            int end = 0;
+            
+            for (Section section : loader.sections()) {
+                System.out.printf("%-6s  %06X  %06X%n", section.name(), section.address(), section.length());
+                
+                for (int i = 0; i < section._definitions.length; i++) {
+                    System.out.printf("        %-6s  %06X%n", section._definitions[i], loader.address(section._definitions[i]));
+                }
+                
+                start = Math.min(start, section.address());
+                end = Math.max(end, section.address() + section.length());
+            }
+            
+            System.out.printf("Entry   %06X%n", entry);
+            
+            for (String error : loader.errors()) {
+                System.out.println(error);
+            }
+            
+            if (image != null && start < end) {
+                try (OutputStream ostream = new FileOutputStream(image)) {
+                    MemoryImageWriter.writeHeader(ostream, start, entry >= 0 ? entry : start);
+                    ostream.write(loader.memory(), start, end - start);
+                }
+            }
+            
+            System.exit(loader.errors().isEmpty() ? 0 : 1);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
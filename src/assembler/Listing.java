@@ -0,0 +1,520 @@
+package assembler;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+// The assembly listing, written while pass 2 packs the records: one line per statement or comment
+// with its source line number, location, source and object code, then a cross reference of the
+// symbols, the literals and the modification records. Lines are formatted into one reused buffer,
+// and the definitions, references and modifications the summaries need are kept in flat arrays as
+// the lines go by, so the statements are never visited again
+class Listing implements Closeable {
+    private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+    private static final int CODE_BYTES = 8;           // object code bytes per line
+    private static final int LABEL_COLUMN = 16;
+    private static final int OPERATION_COLUMN = 25;
+    private static final int OPERAND_COLUMN = 34;
+    private static final int CODE_COLUMN = 60;
+    private static final int REFERENCES_PER_LINE = 10;
+    
+    private final OutputStream _out;
+    private final SymbolTable _symbolTable;
+    private byte[] _buffer;           // lines not yet written out
+    private int _length;
+    private int _lineStart;           // where the line being formatted begins in the buffer
+    private int _lines;               // statements listed
+    private int _line;                // source line of the statement listed last
+    private int[] _defined;           // symbol id -> line of its definition, 0 if none
+    private int[] _referenceIds;
+    private int[] _referenceLines;
+    private int _references;
+    private int[] _modificationLocations;
+    private int[] _modificationIds;   // external symbol, -1 for relocation
+    private byte[] _modificationLengths;
+    private char[] _modificationSigns;
+    private int[] _modificationLines;
+    private int _modifications;
+    
+    Listing(File file, SymbolTable symbolTable) throws IOException {
+        this(new FileOutputStream(file), symbolTable);
+    }
+    
+    Listing(OutputStream out, SymbolTable symbolTable) {
+        _out = out;
+        _symbolTable = symbolTable;
+        _buffer = new byte[1 << 16];
+        _length = 0;
+        _lineStart = 0;
+        _lines = _line = 0;
+        _defined = new int[Math.max(symbolTable.size(), 256)];
+        _referenceIds = new int[1024];
+        _referenceLines = new int[1024];
+        _references = 0;
+        _modificationLocations = new int[64];
+        _modificationIds = new int[64];
+        _modificationLengths = new byte[64];
+        _modificationSigns = new char[64];
+        _modificationLines = new int[64];
+        _modifications = 0;
+    }
+    
+    // The listing of a source, next to it
+    static File file(File source) {
+        String name = source.getName();
+        int pos = name.lastIndexOf('.');
+        
+        return new File(source.getParentFile(), (pos > 0 ? name.substring(0, pos) : name) + ".lst");
+    }
+    
+    // Lists a statement with the object code in code[offset, offset + length)
+    void add(Statement statement, byte[] code, int offset, int length) throws IOException {
+        if (_lines++ == 0) {
+            text("  LINE  LOC     SOURCE");
+            pad(CODE_COLUMN);
+            text("OBJECT CODE");
+            endLine();
+        }
+        
+        _line = statement.line();
+        
+        number(_line, 6);
+        
+        if (statement.isComment()) {
+            pad(LABEL_COLUMN);
+            put('.');
+            text(statement.comment());
+            endLine();
+            
+            return;
+        }
+        
+        int labelId = statement.labelId();
+        
+        pad(8);
+        
+        // EQU shows the value of its symbol instead of a location
+        if (statement.instruction() == null && statement.compareTo("EQU") == 0 && _symbolTable.isDefined(labelId)) {
+            hex(_symbolTable.address(labelId), 6);
+        } else {
+            hex(statement.location(), 6);
+        }
+        
+        pad(LABEL_COLUMN);
+        
+        if (statement.label() != null) {
+            text(statement.label());
+        }
+        
+        pad(OPERATION_COLUMN);
+        
+        if (statement.isExtended()) {
+            put('+');
+        }
+        
+        text(statement.operation());
+        
+        if (statement.operand1() != null) {
+            pad(OPERAND_COLUMN);
+            text(statement.operand1());
+        }
+        
+        if (statement.operand2() != null) {
+            put(',');
+            text(statement.operand2());
+        }
+        
+        if (length > 0) {
+            pad(CODE_COLUMN);
+            bytes(code, offset, Math.min(length, CODE_BYTES));
+        }
+        
+        endLine();
+        
+        // Long constants go on in lines of their own
+        for (int done = CODE_BYTES; done < length; done += CODE_BYTES) {
+            pad(8);
+            hex(statement.location() + done, 6);
+            pad(CODE_COLUMN);
+            bytes(code, offset + done, Math.min(length - done, CODE_BYTES));
+            endLine();
+        }
+        
+        crossReference(statement);
+    }
+    
+    // A modification record of the statement listed last
+    void addModification(int location, int halfBytes, char sign, int id) {
+        if (_modifications == _modificationLocations.length) {
+            int capacity = 2 * _modifications;
+            
+            _modificationLocations = Arrays.copyOf(_modificationLocations, capacity);
+            _modificationIds = Arrays.copyOf(_modificationIds, capacity);
+            _modificationLengths = Arrays.copyOf(_modificationLengths, capacity);
+            _modificationSigns = Arrays.copyOf(_modificationSigns, capacity);
+            _modificationLines = Arrays.copyOf(_modificationLines, capacity);
+        }
+        
+        _modificationLocations[_modifications] = location;
+        _modificationIds[_modifications] = id;
+        _modificationLengths[_modifications] = (byte) halfBytes;
+        _modificationSigns[_modifications] = sign;
+        _modificationLines[_modifications] = _line;
+        _modifications++;
+    }
+    
+    // Copies a listing written elsewhere, such as that of a control section
+    void append(byte[] listing) throws IOException {
+        flush();
+        
+        _out.write(listing);
+    }
+    
+    // Writes the summaries of what was listed since the last ones, such as a control section that
+    // shares the listing with the sections after it
+    void summarize() throws IOException {
+        int[] start = groupReferences();
+        
+        writeSymbols(start);
+        writeLiterals(start);
+        writeModifications();
+        
+        Arrays.fill(_defined, 0);
+        _referenceIds = new int[1024];
+        _referenceLines = new int[1024];
+        _references = 0;
+        _modifications = 0;
+    }
+    
+    // Writes the summaries and closes the file
+    @Override
+    public void close() throws IOException {
+        try {
+            summarize();
+            flush();
+        } finally {
+            _out.close();
+        }
+    }
+    
+    // The labels a statement defines and the symbols its operands use
+    private void crossReference(Statement statement) {
+        if (statement.labelId() >= 0) {
+            define(statement.labelId());
+        }
+        
+        // An expression holds every symbol of the operand, the plain one too; the operands of format 2
+        // are registers
+        if (statement.expression() != null) {
+            for (int id : statement.expression().symbols()) {
+                reference(id);
+            }
+        } else if (statement.symbolId() >= 0 && (statement.instruction() == null || statement.instruction().format() != Format.TWO)) {
+            reference(statement.symbolId());
+        } else if (statement.instruction() == null && statement.operand1() != null) {
+            crossReferenceDirective(statement);
+        }
+    }
+    
+    // EQU and ORG evaluate their expressions in pass 1 without keeping them, and EXTDEF and EXTREF
+    // list names
+    private void crossReferenceDirective(Statement statement) {
+        if (statement.symbolId() < 0 && (statement.compareTo("EQU") == 0 || statement.compareTo("ORG") == 0)) {
+            try {
+                for (int id : Expression.compile(statement.operand1(), _symbolTable, false).symbols()) {
+                    reference(id);
+                }
+            } catch (InvalidExpressionException | UndefinedSymbolException e) {
+                // reported in pass 1
+            }
+        } else if (statement.compareTo("EXTREF") == 0 || statement.compareTo("EXTDEF") == 0) {
+            for (String name : Assembler.names(statement)) {
+                int id = _symbolTable.find(name);
+                
+                if (id < 0) {
+                    continue;
+                } else if (statement.compareTo("EXTREF") == 0) {
+                    define(id);
+                } else {
+                    reference(id);
+                }
+            }
+        }
+    }
+    
+    private void define(int id) {
+        if (id >= _defined.length) {
+            _defined = Arrays.copyOf(_defined, Math.max(2 * _defined.length, _symbolTable.size()));
+        }
+        
+        if (_defined[id] == 0) {
+            _defined[id] = _line;
+        }
+    }
+    
+    private void reference(int id) {
+        if (_references == _referenceIds.length) {
+            _referenceIds = Arrays.copyOf(_referenceIds, 2 * _references);
+            _referenceLines = Arrays.copyOf(_referenceLines, 2 * _references);
+        }
+        
+        _referenceIds[_references] = id;
+        _referenceLines[_references] = _line;
+        _references++;
+    }
+    
+    // The symbols in order of name, with their values, kinds and the lines that define and use them
+    private void writeSymbols(int[] start) throws IOException {
+        int size = _symbolTable.size();
+        Integer[] ids = new Integer[size];
+        int count = 0;
+        
+        for (int id = 0; id < size; id++) {
+            if (isListed(id, start) && _symbolTable.isAnonymous(id) == false) {
+                ids[count++] = id;
+            }
+        }
+        
+        if (count == 0) {
+            return;
+        }
+        
+        // Sorting the ids rather than the names saves looking each name up again
+        Arrays.sort(ids, 0, count, (a, b) -> _symbolTable.name(a).compareTo(_symbolTable.name(b)));
+        
+        endLine();
+        text("SYMBOL    VALUE   TYPE  DEFINED  REFERENCES");
+        endLine();
+        
+        for (int k = 0; k < count; k++) {
+            int id = ids[k];
+            
+            text(_symbolTable.name(id));
+            pad(10);
+            
+            if (_symbolTable.isDefined(id)) {
+                hex(_symbolTable.address(id), 6);
+            } else {
+                text("------");
+            }
+            
+            pad(18);
+            put(_symbolTable.isDefined(id) == false ? 'U' : _symbolTable.isExternal(id) ? 'E' : _symbolTable.isAbsolute(id) ? 'A' : 'R');
+            writeReferences(id, start, 24);
+        }
+    }
+    
+    // The literals in order of their pools
+    private void writeLiterals(int[] start) throws IOException {
+        boolean any = false;
+        
+        for (int id = 0; id < _symbolTable.size(); id++) {
+            String name = _symbolTable.name(id);
+            
+            if (_symbolTable.isAnonymous(id) == false || LiteralTable.isLiteral(name) == false || isListed(id, start) == false) {
+                continue;
+            }
+            
+            if (any == false) {
+                endLine();
+                text("LITERAL             LOC     LENGTH  DEFINED  REFERENCES");
+                endLine();
+                
+                any = true;
+            }
+            
+            String content = LiteralTable.content(name);
+            
+            text(name);
+            pad(20);
+            
+            if (_symbolTable.isDefined(id)) {
+                hex(_symbolTable.address(id), 6);
+            } else {
+                text("------");
+            }
+            
+            pad(column() + 2);
+            number(content != null ? content.length() : 0, 6);
+            writeReferences(id, start, column() + 2);
+        }
+    }
+    
+    private void writeModifications() throws IOException {
+        if (_modifications == 0) {
+            return;
+        }
+        
+        endLine();
+        text("MODIFICATION  LOC     HALF BYTES  SYMBOL    LINE");
+        endLine();
+        
+        for (int k = 0; k < _modifications; k++) {
+            pad(14);
+            hex(_modificationLocations[k], 6);
+            pad(22);
+            number(_modificationLengths[k], 10);
+            pad(34);
+            
+            if (_modificationIds[k] >= 0) {
+                put(_modificationSigns[k]);
+                text(_symbolTable.name(_modificationIds[k]));
+            }
+            
+            pad(42);
+            number(_modificationLines[k], 6);
+            endLine();
+        }
+    }
+    
+    // The lines defining a symbol and those using it, from the given column on, wrapping after
+    // a number of references
+    private void writeReferences(int id, int[] start, int column) throws IOException {
+        pad(column);
+        number(id < _defined.length ? _defined[id] : 0, 7);
+        
+        for (int r = start[id]; r < start[id + 1]; r++) {
+            if (r > start[id] && (r - start[id]) % REFERENCES_PER_LINE == 0) {
+                endLine();
+                
+                pad(column + 7);
+            }
+            
+            put(' ');
+            number(_referenceLines[r], 6);
+        }
+        
+        endLine();
+    }
+    
+    private boolean isListed(int id, int[] start) {
+        return (id < _defined.length && _defined[id] > 0) || start[id + 1] > start[id];
+    }
+    
+    // Groups the references by symbol with a counting sort, which keeps the lines of each in
+    // order; the references of a symbol end up in _referenceLines[start[id], start[id + 1])
+    private int[] groupReferences() {
+        int size = _symbolTable.size();
+        int[] start = new int[size + 1];
+        int[] lines = new int[_references];
+        
+        for (int r = 0; r < _references; r++) {
+            start[_referenceIds[r] + 1]++;
+        }
+        
+        for (int id = 0; id < size; id++) {
+            start[id + 1] += start[id];
+        }
+        
+        int[] fill = Arrays.copyOf(start, size);
+        
+        for (int r = 0; r < _references; r++) {
+            lines[fill[_referenceIds[r]]++] = _referenceLines[r];
+        }
+        
+        _referenceLines = lines;
+        _referenceIds = null;
+        
+        return start;
+    }
+    
+    private int column() {
+        return _length - _lineStart;
+    }
+    
+    // Ends the line, writing the buffer out once it is nearly full
+    private void endLine() throws IOException {
+        put('\n');
+        
+        _lineStart = _length;
+        
+        if (_length > _buffer.length - 512) {
+            flush();
+        }
+    }
+    
+    private void flush() throws IOException {
+        _out.write(_buffer, 0, _lineStart);
+        
+        System.arraycopy(_buffer, _lineStart, _buffer, 0, _length - _lineStart);
+        
+        _length -= _lineStart;
+        _lineStart = 0;
+    }
+    
+    // Room for n more bytes of the current line, which may be longer than the buffer
+    private void ensure(int n) throws IOException {
+        if (_length + n > _buffer.length) {
+            flush();
+            
+            if (_length + n > _buffer.length) {
+                _buffer = Arrays.copyOf(_buffer, Math.max(2 * _buffer.length, _length + n));
+            }
+        }
+    }
+    
+    private void put(char ch) throws IOException {
+        ensure(1);
+        
+        _buffer[_length++] = (byte) ch;
+    }
+    
+    private void text(String s) throws IOException {
+        ensure(s.length());
+        
+        for (int i = 0; i < s.length(); i++) {
+            _buffer[_length++] = (byte) s.charAt(i);
+        }
+    }
+    
+    // Spaces up to the column, or one space when the line is past it
+    private void pad(int column) throws IOException {
+        int n = Math.max(1, column - column());
+        
+        ensure(n);
+        Arrays.fill(_buffer, _length, _length + n, (byte) ' ');
+        
+        _length += n;
+    }
+    
+    private void hex(int value, int digits) throws IOException {
+        ensure(digits);
+        
+        for (int shift = 4 * (digits - 1); shift >= 0; shift -= 4) {
+            _buffer[_length++] = HEX[(value >>> shift) & 0xF];
+        }
+    }
+    
+    private void bytes(byte[] code, int offset, int length) throws IOException {
+        ensure(2 * length);
+        
+        for (int i = offset; i < offset + length; i++) {
+            _buffer[_length++] = HEX[(code[i] >> 4) & 0xF];
+            _buffer[_length++] = HEX[code[i] & 0xF];
+        }
+    }
+    
+    // A decimal number right-aligned in the width
+    private void number(int value, int width) throws IOException {
+        int digits = 1;
+        
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        
+        ensure(Math.max(digits, width));
+        
+        for (int k = digits; k < width; k++) {
+            _buffer[_length++] = ' ';
+        }
+        
+        _length += digits;
+        
+        for (int k = 1, v = value; k <= digits; k++, v /= 10) {
+            _buffer[_length - k] = (byte) ('0' + v % 10);
+        }
+    }
+}
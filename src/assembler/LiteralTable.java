@@ -0,0 +1,116 @@
+package assembler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The literals of the pool that LTORG or END places next. Literals are keyed on their bytes, so =C'EOF'
+// and =X'454F46' share one slot; each slot is an anonymous symbol that placing the pool defines
+class LiteralTable {
+    private final Map<String, Integer> _slots;    // content -> slot
+    private final List<String> _operands;         // BYTE operand of the first spelling, by slot
+    private final List<String> _contents;
+    private int[] _ids;
+    
+    LiteralTable() {
+        _slots = new HashMap<>();
+        _operands = new ArrayList<>();
+        _contents = new ArrayList<>();
+        _ids = new int[16];
+    }
+    
+    // The symbol of the literal operand of the statement, added to the pool on first use
+    int intern(Statement statement, SymbolTable symbolTable) throws InvalidLiteralException {
+        String literal = statement.operand1();
+        String content = content(literal);
+        
+        if (content == null) {
+            throw new InvalidLiteralException(statement);
+        }
+        
+        Integer slot = _slots.get(content);
+        
+        if (slot == null) {
+            slot = _operands.size();
+            
+            if (slot == _ids.length) {
+                _ids = Arrays.copyOf(_ids, slot * 2);
+            }
+            
+            _slots.put(content, slot);
+            _operands.add(literal.substring(1));
+            _contents.add(content);
+            _ids[slot] = symbolTable.create(literal);
+        }
+        
+        return _ids[slot];
+    }
+    
+    static boolean isLiteral(String operand) {
+        return operand != null && operand.length() > 1 && operand.charAt(0) == '=';
+    }
+    
+    // The bytes of =C'...' or =X'...' as ISO-8859-1 characters, or null when malformed
+    static String content(String literal) {
+        int end = literal.length() - 1;
+        
+        if (literal.length() < 5 || literal.charAt(2) != '\'' || literal.charAt(end) != '\'') {
+            return null;
+        }
+        
+        switch (literal.charAt(1)) {
+            case 'C':
+                return literal.substring(3, end);
+            case 'X':
+                if ((end - 3) % 2 != 0) {
+                    return null;
+                }
+            
+                StringBuilder content = new StringBuilder((end - 3) / 2);
+            
+                for (int k = 3; k < end; k += 2) {
+                    int high = Character.digit(literal.charAt(k), 16);
+                    int low = Character.digit(literal.charAt(k + 1), 16);
+                
+                    if (high < 0 || low < 0) {
+                        return null;
+                    }
+                
+                    content.append((char) (high << 4 | low));
+                }
+            
+                return content.toString();
+            default:
+                return null;
+        }
+    }
+    
+    int size() {
+        return _operands.size();
+    }
+    
+    boolean isEmpty() {
+        return _operands.isEmpty();
+    }
+    
+    int id(int slot) {
+        return _ids[slot];
+    }
+    
+    String operand(int slot) {
+        return _operands.get(slot);
+    }
+    
+    String content(int slot) {
+        return _contents.get(slot);
+    }
+    
+    // Starts the next pool once this one is placed
+    void clear() {
+        _slots.clear();
+        _operands.clear();
+        _contents.clear();
+    }
+}
@@ -0,0 +1,170 @@
+package assembler;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+// A macro definition compiled to a template. Each line of the body is kept as its bytes with the
+// parameters and the $ of unique labels cut out, and a list of slots saying where an argument or a
+// unique label number goes, so an expansion copies bytes instead of searching and replacing text
+class Macro {
+    static final int UNIQUE = -1;
+    
+    private final String _name;
+    private final int _index;
+    private final String[] _parameters;   // without the &
+    private final byte[][] _text;
+    private final int[][] _slots;         // pairs of a position in the text and a parameter or UNIQUE
+    
+    private Macro(String name, int index, String[] parameters, byte[][] text, int[][] slots) {
+        _name = name;
+        _index = index;
+        _parameters = parameters;
+        _text = text;
+        _slots = slots;
+    }
+    
+    // NAME MACRO &P1,&P2,... and the lines up to MEND; a parameter is written &P in the body, or
+    // &P. when letters follow it, and $L is a label that is unique to each expansion
+    static Macro compile(Statement header, List<byte[]> body, int index) throws InvalidMacroException {
+        String name = header.label();
+        
+        if (name == null) {
+            throw new InvalidMacroException(header.operation(), "MACRO needs a name");
+        } else if (Utility.getOperationTable().contains(name) || Utility.isDirective(name)) {
+            throw new InvalidMacroException(name, "Macro has the name of an operation");
+        }
+        
+        String[] parameters = header.operand1() != null ? header.operand1().split(",", -1) : new String[0];
+        
+        for (int k = 0; k < parameters.length; k++) {
+            String parameter = parameters[k];
+            
+            if (parameter.length() < 2 || parameter.charAt(0) != '&' || isSymbol(parameter.getBytes(StandardCharsets.ISO_8859_1), 1, parameter.length()) == false) {
+                throw new InvalidMacroException(parameter, "Invalid macro parameter");
+            }
+            
+            parameters[k] = parameter.substring(1);
+            
+            if (Arrays.asList(parameters).subList(0, k).contains(parameters[k])) {
+                throw new InvalidMacroException(parameter, "Duplicate macro parameter");
+            }
+        }
+        
+        byte[][] text = new byte[body.size()][];
+        int[][] slots = new int[body.size()][];
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        
+        for (int line = 0; line < body.size(); line++) {
+            byte[] source = body.get(line);
+            int[] lineSlots = new int[0];
+            boolean quoted = false;
+            
+            buf.reset();
+            
+            for (int i = 0; i < source.length; ) {
+                byte ch = source[i];
+                
+                if (ch == '&' && i + 1 < source.length && isSymbolStart(source[i + 1])) {
+                    int end = symbolEnd(source, i + 1);
+                    int parameter = indexOf(parameters, source, i + 1, end);
+                    
+                    if (parameter >= 0) {
+                        lineSlots = addSlot(lineSlots, buf.size(), parameter);
+                        i = end < source.length && source[end] == '.' ? end + 1 : end;
+                        
+                        continue;
+                    } else if (quoted == false) {
+                        throw new InvalidMacroException(new String(source, i, end - i, StandardCharsets.ISO_8859_1), "Not a parameter of " + name);
+                    }
+                } else if (ch == '$' && quoted == false && i + 1 < source.length && isSymbolStart(source[i + 1])) {
+                    lineSlots = addSlot(lineSlots, buf.size(), UNIQUE);
+                    i++;
+                    
+                    continue;
+                } else if (ch == '\'') {
+                    quoted = !quoted;
+                }
+                
+                buf.write(ch);
+                i++;
+            }
+            
+            text[line] = buf.toByteArray();
+            slots[line] = lineSlots;
+        }
+        
+        return new Macro(name, index, parameters, text, slots);
+    }
+    
+    String name() {
+        return _name;
+    }
+    
+    // Numbers the macros of a table from 0
+    int index() {
+        return _index;
+    }
+    
+    int parameters() {
+        return _parameters.length;
+    }
+    
+    int lines() {
+        return _text.length;
+    }
+    
+    byte[] text(int line) {
+        return _text[line];
+    }
+    
+    int[] slots(int line) {
+        return _slots[line];
+    }
+    
+    private static int[] addSlot(int[] slots, int position, int slot) {
+        int[] result = Arrays.copyOf(slots, slots.length + 2);
+        
+        result[slots.length] = position;
+        result[slots.length + 1] = slot;
+        
+        return result;
+    }
+    
+    private static int indexOf(String[] parameters, byte[] buf, int start, int end) {
+        for (int k = 0; k < parameters.length; k++) {
+            String parameter = parameters[k];
+            
+            if (parameter.length() == end - start) {
+                int i = 0;
+                
+                while (i < parameter.length() && parameter.charAt(i) == buf[start + i]) {
+                    i++;
+                }
+                
+                if (i == parameter.length()) {
+                    return k;
+                }
+            }
+        }
+        
+        return -1;
+    }
+    
+    private static int symbolEnd(byte[] buf, int pos) {
+        while (pos < buf.length && (isSymbolStart(buf[pos]) || (buf[pos] >= '0' && buf[pos] <= '9'))) {
+            pos++;
+        }
+        
+        return pos;
+    }
+    
+    private static boolean isSymbol(byte[] buf, int start, int end) {
+        return start < end && isSymbolStart(buf[start]) && symbolEnd(buf, start) >= end;
+    }
+    
+    private static boolean isSymbolStart(byte ch) {
+        return (ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z') || ch == '_';
+    }
+}
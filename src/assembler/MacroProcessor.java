@@ -0,0 +1,243 @@
+package assembler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// Expands macro invocations into the statements pass 1 places, in source order, and hands the lines
+// of definitions to the table instead. The lines of an expansion are bound to its arguments
+// once per macro and argument text: a line without unique labels is parsed then and copied for
+// every later invocation with the same arguments, and the others only get their label number
+// filled in and are parsed again
+class MacroProcessor {
+    private static final int MAX_DEPTH = 64;
+    private static final int MEMO_LIMIT = 4096;   // argument texts remembered per macro
+    
+    private final MacroTable _table;
+    private final Lexer _lexer;
+    private final boolean _hashes;
+    private final List<Statement> _expansion;
+    private List<HashMap<String, Expansion>> _memo;
+    private byte[] _buffer;
+    private int _expansions;              // numbers the unique labels
+    
+    MacroProcessor(MacroTable table, SymbolTable symbolTable, boolean hashes) {
+        _table = table;
+        _lexer = new Lexer(new SymbolPool(), symbolTable);
+        _hashes = hashes;
+        _expansion = new ArrayList<>();
+        _memo = new ArrayList<>();
+        _buffer = new byte[256];
+        _expansions = 0;
+    }
+    
+    MacroTable table() {
+        return _table;
+    }
+    
+    // Whether the statements are the lines of a definition, where CSECT does not begin a section
+    boolean isDefining() {
+        return _table.isDefining();
+    }
+    
+    void finish() throws InvalidMacroException {
+        _table.finish();
+    }
+    
+    // The statements to place instead of this one, none for the lines of a definition; null for a
+    // statement that is not a macro's. The list is reused by the next call
+    List<Statement> process(Statement statement) throws InvalidMacroException {
+        if (_table.collect(statement)) {
+            _expansion.clear();
+            
+            return _expansion;
+        } else if (statement.instruction() != null) {
+            return null;
+        }
+        
+        Macro macro = _table.get(statement.operation());
+        
+        if (macro == null) {
+            return null;
+        }
+        
+        _expansion.clear();
+        expand(macro, statement, 0);
+        
+        return _expansion;
+    }
+    
+    // A label on the invocation names the location where the expansion begins
+    private void expand(Macro macro, Statement invocation, int depth) throws InvalidMacroException {
+        if (depth == MAX_DEPTH) {
+            throw new InvalidMacroException(macro.name(), "Macro expansion nested too deeply");
+        }
+        
+        if (invocation.label() != null) {
+            Statement label = new Statement(invocation.label(), "EQU", false, new String[] { "*", null }, invocation.labelId(), -1);
+            
+            label.setSourceHash(invocation.sourceHash());
+            _expansion.add(label);
+        }
+        
+        Expansion expansion = expansion(macro, invocation.operand1() != null ? invocation.operand1() : "");
+        int number = ++_expansions;
+        
+        for (int line = 0; line < expansion._prototypes.length; line++) {
+            Statement prototype = expansion._prototypes[line];
+            Statement statement = prototype != null ? prototype.copy() : instantiate(expansion._text[line], expansion._unique[line], number);
+            
+            if (statement == null) {
+                continue;
+            }
+            
+            Macro nested = statement.instruction() == null ? _table.get(statement.operation()) : null;
+            
+            if (nested != null) {
+                expand(nested, statement, depth + 1);
+            } else {
+                _expansion.add(statement);
+            }
+        }
+    }
+    
+    private Expansion expansion(Macro macro, String arguments) throws InvalidMacroException {
+        while (_memo.size() <= macro.index()) {
+            _memo.add(new HashMap<String, Expansion>());
+        }
+        
+        HashMap<String, Expansion> memo = _memo.get(macro.index());
+        Expansion expansion = memo.get(arguments);
+        
+        if (expansion == null) {
+            expansion = bind(macro, arguments);
+            
+            if (memo.size() < MEMO_LIMIT) {
+                memo.put(arguments, expansion);
+            }
+        }
+        
+        return expansion;
+    }
+    
+    // Puts the arguments into the slots of every line
+    private Expansion bind(Macro macro, String arguments) throws InvalidMacroException {
+        byte[][] values = split(arguments);
+        Expansion expansion = new Expansion(macro.lines());
+        
+        if (values.length > macro.parameters()) {
+            throw new InvalidMacroException(macro.name(), "Too many macro arguments");
+        }
+        
+        for (int line = 0; line < macro.lines(); line++) {
+            byte[] text = macro.text(line);
+            int[] slots = macro.slots(line);
+            int[] unique = new int[0];
+            int length = 0;
+            int from = 0;
+            
+            for (int k = 0; k < slots.length; k += 2) {
+                length = append(text, from, slots[k], length);
+                from = slots[k];
+                
+                if (slots[k + 1] == Macro.UNIQUE) {
+                    unique = Arrays.copyOf(unique, unique.length + 1);
+                    unique[unique.length - 1] = length;
+                } else if (slots[k + 1] < values.length) {
+                    length = append(values[slots[k + 1]], 0, values[slots[k + 1]].length, length);
+                }
+            }
+            
+            length = append(text, from, text.length, length);
+            
+            if (unique.length == 0) {
+                expansion._prototypes[line] = parse(_buffer, length);
+            } else {
+                expansion._text[line] = Arrays.copyOf(_buffer, length);
+                expansion._unique[line] = unique;
+            }
+        }
+        
+        return expansion;
+    }
+    
+    // A line with unique labels, numbered by the expansion, such as $LOOP as _12LOOP
+    private Statement instantiate(byte[] text, int[] unique, int number) {
+        byte[] digits = ("_" + number).getBytes(StandardCharsets.ISO_8859_1);
+        int length = 0;
+        int from = 0;
+        
+        for (int position : unique) {
+            length = append(text, from, position, length);
+            length = append(digits, 0, digits.length, length);
+            from = position;
+        }
+        
+        length = append(text, from, text.length, length);
+        
+        return parse(_buffer, length);
+    }
+    
+    private Statement parse(byte[] buf, int length) {
+        Statement statement = _lexer.parse(buf, 0, length);
+        
+        if (statement == null || statement.isComment()) {
+            return null;
+        }
+        
+        if (_hashes) {
+            statement.setSourceHash(AssemblyCache.hash(buf, 0, length));
+        }
+        
+        return statement;
+    }
+    
+    private int append(byte[] bytes, int from, int to, int length) {
+        if (length + to - from > _buffer.length) {
+            _buffer = Arrays.copyOf(_buffer, Math.max(2 * _buffer.length, length + to - from));
+        }
+        
+        System.arraycopy(bytes, from, _buffer, length, to - from);
+        
+        return length + to - from;
+    }
+    
+    // The arguments are separated by commas outside quotes
+    private static byte[][] split(String arguments) {
+        if (arguments.isEmpty()) {
+            return new byte[0][];
+        }
+        
+        byte[] bytes = arguments.getBytes(StandardCharsets.ISO_8859_1);
+        List<byte[]> values = new ArrayList<>();
+        boolean quoted = false;
+        int start = 0;
+        
+        for (int i = 0; i <= bytes.length; i++) {
+            if (i == bytes.length || (bytes[i] == ',' && quoted == false)) {
+                values.add(Arrays.copyOfRange(bytes, start, i));
+                start = i + 1;
+            } else if (bytes[i] == '\'') {
+                quoted = !quoted;
+            }
+        }
+        
+        return values.toArray(new byte[0][]);
+    }
+    
+    // The lines of a macro bound to one argument text: parsed statements to copy, or, for lines
+    // with unique labels, their bytes and where the label numbers go
+    private static class Expansion {
+        private final Statement[] _prototypes;
+        private final byte[][] _text;
+        private final int[][] _unique;
+        
+        private Expansion(int lines) {
+            _prototypes = new Statement[lines];
+            _text = new byte[lines][];
+            _unique = new int[lines][];
+        }
+    }
+}
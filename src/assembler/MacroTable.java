@@ -0,0 +1,107 @@
+package assembler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The macros of a source, defined as pass 1 places their lines, so each comes before its first use.
+// The lines of a definition arrive as statements, and the body is kept as their text without the
+// comments
+class MacroTable {
+    private final Map<String, Macro> _macros;
+    private Statement _header;            // the definition being collected
+    private final List<byte[]> _body;
+    
+    MacroTable() {
+        _macros = new HashMap<>();
+        _body = new ArrayList<>();
+    }
+    
+    Macro get(String name) {
+        return _macros.get(name);
+    }
+    
+    int size() {
+        return _macros.size();
+    }
+    
+    boolean isDefining() {
+        return _header != null;
+    }
+    
+    // Takes a statement that belongs to a definition, from its MACRO line to its MEND line; false for
+    // the other statements
+    boolean collect(Statement statement) throws InvalidMacroException {
+        if (_header == null) {
+            if (statement.instruction() != null || statement.compareTo("MACRO") != 0) {
+                return false;
+            }
+            
+            _header = statement;
+            _body.clear();
+        } else if (statement.compareTo("MEND") == 0) {
+            define();
+        } else if (statement.compareTo("MACRO") == 0) {
+            throw new InvalidMacroException(_header.label(), "Macro definitions cannot be nested");
+        } else {
+            _body.add(text(statement));
+        }
+        
+        return true;
+    }
+    
+    // Reports a definition that the source ends in
+    void finish() throws InvalidMacroException {
+        if (_header != null) {
+            String name = String.valueOf(_header.label());
+            
+            _header = null;
+            
+            throw new InvalidMacroException(name, "MACRO without MEND");
+        }
+    }
+    
+    private void define() throws InvalidMacroException {
+        Statement header = _header;
+        
+        _header = null;
+        
+        Macro macro = Macro.compile(header, _body, _macros.size());
+        
+        if (_macros.containsKey(macro.name())) {
+            throw new InvalidMacroException(macro.name(), "Duplicate macro");
+        }
+        
+        _macros.put(macro.name(), macro);
+    }
+    
+    // The line of a statement as LABEL, +OPERATION and OPERAND1,OPERAND2 separated by tabs, which the
+    // lexer reads back as the same statement
+    private static byte[] text(Statement statement) {
+        StringBuilder line = new StringBuilder();
+        
+        if (statement.label() != null) {
+            line.append(statement.label());
+        }
+        
+        line.append('\t');
+        
+        if (statement.isExtended()) {
+            line.append('+');
+        }
+        
+        line.append(statement.operation());
+        
+        if (statement.operand1() != null) {
+            line.append('\t').append(statement.operand1());
+        }
+        
+        if (statement.operand2() != null) {
+            line.append(',').append(statement.operand2());
+        }
+        
+        return line.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,165 @@
+package assembler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Reads the lines of a file through memory-mapped segments, so files larger than 2 GB are mapped
+// piecewise. Bytes are bulk-copied from the mapping into a window that lines are split in, with
+// no read calls and no decoding.
+public class MappedSourceReader implements LineSource {
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 18;
+    
+    private final FileChannel _channel;
+    private final boolean _ownsChannel;
+    private final long _end;
+    private final long _fileSize;
+    private final int _segmentSize;
+    private MappedByteBuffer _segment;
+    private long _segmentStart;
+    private long _copied;             // file position of the first byte not yet in the window
+    private byte[] _window;
+    private long _windowStart;        // file position of _window[0]
+    private int _limit;
+    private int _next;
+    private int _lineStart;
+    private int _lineEnd;
+    private int _lineNumber;
+    
+    public MappedSourceReader(File input) throws IOException {
+        this(FileChannel.open(input.toPath(), StandardOpenOption.READ), true, 0, Long.MAX_VALUE, DEFAULT_SEGMENT_SIZE);
+    }
+    
+    // Reads the lines that begin in [start, end) of a channel that stays open
+    public MappedSourceReader(FileChannel channel, long start, long end) throws IOException {
+        this(channel, false, start, end, (int) Math.min(DEFAULT_SEGMENT_SIZE, end - start + (1 << 16)));
+    }
+    
+    MappedSourceReader(FileChannel channel, boolean ownsChannel, long start, long end, int segmentSize) throws IOException {
+        _channel = channel;
+        _ownsChannel = ownsChannel;
+        _fileSize = channel.size();
+        _end = Math.min(end, _fileSize);
+        _segmentSize = segmentSize;
+        _segment = null;
+        _segmentStart = 0;
+        _window = new byte[(int) Math.min(DEFAULT_WINDOW_SIZE, Math.max(_end - start + 256, 256))];
+        _windowStart = _copied = start > 0 ? Math.min(start - 1, _fileSize) : 0;
+        _limit = _next = _lineStart = _lineEnd = _lineNumber = 0;
+        
+        // A line that begins before start belongs to the previous range
+        if (start > 0) {
+            int pos = find(0);
+            
+            _next = pos < 0 ? _limit : pos + 1;
+        }
+    }
+    
+    // Index of the next '\n' at or after pos, filling the window as needed; -1 at the end of the file
+    private int find(int pos) throws IOException {
+        while (true) {
+            while (pos < _limit && _window[pos] != '\n') {
+                pos++;
+            }
+            
+            if (pos < _limit) {
+                return pos;
+            }
+            
+            if (_copied >= _fileSize) {
+                return -1;
+            }
+            
+            pos -= _next;
+            fill();
+            pos += _next;
+        }
+    }
+    
+    private void fill() throws IOException {
+        int remaining = _limit - _next;
+        
+        if (_next == 0 && _limit == _window.length) {
+            _window = Arrays.copyOf(_window, _window.length * 2);
+        } else {
+            System.arraycopy(_window, _next, _window, 0, remaining);
+        }
+        
+        _windowStart += _next;
+        _limit = remaining;
+        _next = 0;
+        
+        if (_segment == null || _copied >= _segmentStart + _segment.limit()) {
+            _segmentStart = _copied;
+            _segment = _channel.map(FileChannel.MapMode.READ_ONLY, _segmentStart, Math.min(_segmentSize, _fileSize - _segmentStart));
+        }
+        
+        int n = (int) Math.min(_window.length - _limit, _segmentStart + _segment.limit() - _copied);
+        
+        _segment.get((int) (_copied - _segmentStart), _window, _limit, n);
+        _limit += n;
+        _copied += n;
+    }
+    
+    @Override
+    public boolean next() throws IOException {
+        if (_windowStart + _next >= _end) {
+            return false;
+        }
+        
+        int pos = find(_next);
+        
+        if (pos < 0) {
+            pos = _limit; // last line without a terminator
+        }
+        
+        _lineStart = _next;
+        _lineEnd = pos;
+        _next = pos + 1;
+        _lineNumber++;
+        
+        if (_lineEnd > _lineStart && _window[_lineEnd - 1] == '\r') {
+            _lineEnd--;
+        }
+        
+        return true;
+    }
+    
+    @Override
+    public byte[] buffer() {
+        return _window;
+    }
+    
+    @Override
+    public int lineStart() {
+        return _lineStart;
+    }
+    
+    @Override
+    public int lineEnd() {
+        return _lineEnd;
+    }
+    
+    // File position of the current line
+    public long linePosition() {
+        return _windowStart + _lineStart;
+    }
+    
+    @Override
+    public int lineNumber() {
+        return _lineNumber;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        _segment = null;
+        
+        if (_ownsChannel) {
+            _channel.close();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package assembler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// An image is the memory of a program from its start address, after a header of the start address and
+// the entry point, three bytes each, so that it can be loaded and run where it was assembled
+public class MemoryImageWriter implements RecordWriter {
+    public static final int HEADER_LENGTH = 6;
+    
+    private final OutputStream _ostream;
+    private byte[] _image;
+    private int _startAddress;
+    private int _firstExecAddress;
+    private int _sections;
+    
+    public MemoryImageWriter() {
+        this((OutputStream) null);
+    }
+    
+    public MemoryImageWriter(File output) throws IOException {
+        this(new FileOutputStream(output));
+    }
+    
+    public MemoryImageWriter(OutputStream ostream) {
+        _ostream = ostream;
+        _image = new byte[0];
+        _startAddress = 0;
+        _firstExecAddress = -1;
+        _sections = 0;
+    }
+    
+    @Override
+    public void header(String name, int startAddr, int length) throws IOException {
+        if (_sections++ > 0) {
+            throw new IOException("An image holds a single control section; link the sections instead");
+        }
+        
+        _image = new byte[length];
+        _startAddress = startAddr;
+    }
+    
+    @Override
+    public void text(int startAddr, byte[] code, int offset, int length) throws IOException {
+        int pos = startAddr - _startAddress;
+        
+        if (pos < 0 || pos + length > _image.length) {
+            throw new IOException(String.format("Text record at %06X lies outside the program", startAddr));
+        }
+        
+        System.arraycopy(code, offset, _image, pos, length);
+    }
+    
+    @Override
+    public void modification(int modifiedLoc, int modifiedLen) {
+        // The image is absolute, loaded at its start address
+    }
+    
+    @Override
+    public void modification(int modifiedLoc, int modifiedLen, char sign, String symbol) throws IOException {
+        throw new IOException("External symbol " + symbol + " cannot be resolved in an image");
+    }
+    
+    @Override
+    public void define(String[] names, int[] addresses) {
+    }
+    
+    @Override
+    public void refer(String[] names) {
+    }
+    
+    @Override
+    public void end(int firstExecAddr) {
+        _firstExecAddress = firstExecAddr;
+    }
+    
+    public byte[] image() {
+        return _image;
+    }
+    
+    public int startAddress() {
+        return _startAddress;
+    }
+    
+    public int firstExecAddress() {
+        return _firstExecAddress;
+    }
+    
+    static void writeHeader(OutputStream ostream, int startAddr, int entry) throws IOException {
+        ostream.write(new byte[] { (byte) (startAddr >> 16), (byte) (startAddr >> 8), (byte) startAddr, (byte) (entry >> 16), (byte) (entry >> 8), (byte) entry });
+    }
+    
+    // The start address, at 0, or the entry point, at 3, of an image
+    static int address(byte[] image, int pos) {
+        return (image[pos] & 0xFF) << 16 | (image[pos + 1] & 0xFF) << 8 | (image[pos + 2] & 0xFF);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (_ostream != null) {
+            try {
+                writeHeader(_ostream, _startAddress, _firstExecAddress >= 0 ? _firstExecAddress : _startAddress);
+                _ostream.write(_image);
+            } finally {
+                _ostream.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package assembler;
+
+import java.io.IOException;
+
+// Times the record writing of a pass and counts the records written
+class MeteredRecordWriter implements RecordWriter {
+    private final RecordWriter _writer;
+    private final AssemblyMetrics _metrics;
+    
+    MeteredRecordWriter(RecordWriter writer, AssemblyMetrics metrics) {
+        _writer = writer;
+        _metrics = metrics;
+    }
+    
+    @Override
+    public void header(String name, int startAddr, int length) throws IOException {
+        _metrics.begin(AssemblyMetrics.Phase.WRITE);
+        _writer.header(name, startAddr, length);
+        _metrics.end(AssemblyMetrics.Phase.WRITE);
+    }
+    
+    @Override
+    public void text(int startAddr, byte[] code, int offset, int length) throws IOException {
+        _metrics.begin(AssemblyMetrics.Phase.WRITE);
+        _writer.text(startAddr, code, offset, length);
+        _metrics.end(AssemblyMetrics.Phase.WRITE);
+        _metrics.increment(AssemblyMetrics.Counter.TEXT_RECORDS);
+    }
+    
+    @Override
+    public void modification(int modifiedLoc, int modifiedLen) throws IOException {
+        _metrics.begin(AssemblyMetrics.Phase.WRITE);
+        _writer.modification(modifiedLoc, modifiedLen);
+        _metrics.end(AssemblyMetrics.Phase.WRITE);
+        _metrics.increment(AssemblyMetrics.Counter.MODIFICATION_RECORDS);
+    }
+    
+    @Override
+    public void modification(int modifiedLoc, int modifiedLen, char sign, String symbol) throws IOException {
+        _metrics.begin(AssemblyMetrics.Phase.WRITE);
+        _writer.modification(modifiedLoc, modifiedLen, sign, symbol);
+        _metrics.end(AssemblyMetrics.Phase.WRITE);
+        _metrics.increment(AssemblyMetrics.Counter.MODIFICATION_RECORDS);
+    }
+    
+    @Override
+    public void define(String[] names, int[] addresses) throws IOException {
+        _metrics.begin(AssemblyMetrics.Phase.WRITE);
+        _writer.define(names, addresses);
+        _metrics.end(AssemblyMetrics.Phase.WRITE);
+    }
+    
+    @Override
+    public void refer(String[] names) throws IOException {
+        _metrics.begin(AssemblyMetrics.Phase.WRITE);
+        _writer.refer(names);
+        _metrics.end(AssemblyMetrics.Phase.WRITE);
+    }
+    
+    @Override
+    public void end(int firstExecAddr) throws IOException {
+        _metrics.begin(AssemblyMetrics.Phase.WRITE);
+        _writer.end(firstExecAddr);
+        _metrics.end(AssemblyMetrics.Phase.WRITE);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        _metrics.begin(AssemblyMetrics.Phase.WRITE);
+        _writer.close();
+        _metrics.end(AssemblyMetrics.Phase.WRITE);
+    }
+}
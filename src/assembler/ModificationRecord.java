@@ -1,17 +1,37 @@
 package assembler;
 
+import java.io.IOException;
+
 public class ModificationRecord implements Record {
     private final int _location;
     private final int _length;
+    private final char _sign;
+    private final String _symbol;
     
     public ModificationRecord(int modifiedLoc, int modifiedLen) {
+        this(modifiedLoc, modifiedLen, '+', null);
+    }
+    
+    // Without a symbol, the field is relative to its own control section
+    public ModificationRecord(int modifiedLoc, int modifiedLen, char sign, String symbol) {
         _location = modifiedLoc;
         _length = modifiedLen;
+        _sign = sign;
+        _symbol = symbol;
     }
     
     @Override
     public String toObjectProgram() {
-        return String.format("M%06X%02X", _location, _length);
+        return _symbol != null ? String.format("M%06X%02X%c%s", _location, _length, _sign, _symbol) : String.format("M%06X%02X", _location, _length);
+    }
+    
+    @Override
+    public void writeTo(RecordWriter writer) throws IOException {
+        if (_symbol != null) {
+            writer.modification(_location, _length, _sign, _symbol);
+        } else {
+            writer.modification(_location, _length);
+        }
     }
     
 }
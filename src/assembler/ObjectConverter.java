@@ -0,0 +1,38 @@
+package assembler;
+
+import java.io.File;
+import java.io.IOException;
+
+public class ObjectConverter {
+    public static void convert(File input, RecordWriter output) throws IOException {
+        if (BinaryObjectReader.isBinary(input)) {
+            try (BinaryObjectReader reader = new BinaryObjectReader(input)) {
+                reader.read(output);
+            }
+        } else {
+            try (ObjectProgramReader reader = new ObjectProgramReader(input)) {
+                reader.read(output);
+            }
+        }
+    }
+    
+    public static void convert(File input, File output, OutputFormat format) throws IOException {
+        try (RecordWriter writer = format.open(output)) {
+            convert(input, writer);
+        }
+    }
+    
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.out.println("Usage: java assembler.ObjectConverter text|binary|image <input> <output>");
+            System.exit(2);
+        }
+        
+        try {
+            convert(new File(args[1]), new File(args[2]), OutputFormat.valueOf(args[0].toUpperCase()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package assembler;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class ObjectProgramReader implements Closeable {
+    private final BufferedReader _reader;
+    
+    public ObjectProgramReader(File input) throws IOException {
+        this(new FileReader(input));
+    }
+    
+    public ObjectProgramReader(Reader reader) {
+        _reader = new BufferedReader(reader, 1 << 16);
+    }
+    
+    public void read(RecordWriter writer) throws IOException {
+        byte[] code = new byte[0xFF];
+        String line;
+        
+        while ((line = _reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            
+            switch (line.charAt(0)) {
+                case 'H':
+                    writer.header(line.substring(1, 7).trim(), hex(line, 7, 6), hex(line, 13, 6));
+                    break;
+                case 'T':
+                    int length = hex(line, 7, 2);
+                
+                    for (int i = 0; i < length; i++) {
+                        code[i] = (byte) hex(line, 9 + i * 2, 2);
+                    }
+                
+                    writer.text(hex(line, 1, 6), code, 0, length);
+                    break;
+                case 'M':
+                    if (line.length() > 9) {
+                        writer.modification(hex(line, 1, 6), hex(line, 7, 2), line.charAt(9), line.substring(10).trim());
+                    } else {
+                        writer.modification(hex(line, 1, 6), hex(line, 7, 2));
+                    }
+                
+                    break;
+                case 'D':
+                    int count = (line.length() - 1) / 12;
+                    String[] definitions = new String[count];
+                    int[] addresses = new int[count];
+                
+                    for (int i = 0; i < count; i++) {
+                        definitions[i] = line.substring(1 + i * 12, 7 + i * 12).trim();
+                        addresses[i] = hex(line, 7 + i * 12, 6);
+                    }
+                
+                    writer.define(definitions, addresses);
+                    break;
+                case 'R':
+                    String[] references = new String[(line.length() + 4) / 6];
+                
+                    for (int i = 0; i < references.length; i++) {
+                        references[i] = line.substring(1 + i * 6, Math.min(line.length(), 7 + i * 6)).trim();
+                    }
+                
+                    writer.refer(references);
+                    break;
+                case 'E':
+                    writer.end(line.length() > 1 ? hex(line, 1, 6) : -1);
+                    break;
+                default:
+                    throw new IOException("Unknown record: " + line);
+            }
+        }
+    }
+    
+    // Parses the object program in a buffer, such as a mapped file, without decoding lines into strings
+    public static void read(ByteBuffer buffer, RecordWriter writer) throws IOException {
+        byte[] code = new byte[0xFF];
+        byte[] name = new byte[6];
+        int end = buffer.limit();
+        int start = buffer.position();
+        
+        while (start < end) {
+            int eol = start;
+            
+            while (eol < end && buffer.get(eol) != '\n') {
+                eol++;
+            }
+            
+            int last = eol > start && buffer.get(eol - 1) == '\r' ? eol - 1 : eol;
+            
+            if (last > start) {
+                switch (buffer.get(start)) {
+                    case 'H':
+                        for (int i = 0; i < name.length; i++) {
+                            name[i] = start + 1 + i < last ? buffer.get(start + 1 + i) : (byte) ' ';
+                        }
+                    
+                        writer.header(new String(name, StandardCharsets.ISO_8859_1).trim(), hex(buffer, start + 7, 6, last), hex(buffer, start + 13, 6, last));
+                        break;
+                    case 'T':
+                        int length = hex(buffer, start + 7, 2, last);
+                    
+                        for (int i = 0; i < length; i++) {
+                            code[i] = (byte) hex(buffer, start + 9 + i * 2, 2, last);
+                        }
+                    
+                        writer.text(hex(buffer, start + 1, 6, last), code, 0, length);
+                        break;
+                    case 'M':
+                        if (last - start > 9) {
+                            writer.modification(hex(buffer, start + 1, 6, last), hex(buffer, start + 7, 2, last), (char) buffer.get(start + 9), name(buffer, start + 10, last));
+                        } else {
+                            writer.modification(hex(buffer, start + 1, 6, last), hex(buffer, start + 7, 2, last));
+                        }
+                    
+                        break;
+                    case 'D':
+                        String[] definitions = new String[(last - start - 1) / 12];
+                        int[] addresses = new int[definitions.length];
+                    
+                        for (int i = 0; i < definitions.length; i++) {
+                            definitions[i] = name(buffer, start + 1 + i * 12, start + 7 + i * 12);
+                            addresses[i] = hex(buffer, start + 7 + i * 12, 6, last);
+                        }
+                    
+                        writer.define(definitions, addresses);
+                        break;
+                    case 'R':
+                        String[] references = new String[(last - start + 4) / 6];
+                    
+                        for (int i = 0; i < references.length; i++) {
+                            references[i] = name(buffer, start + 1 + i * 6, Math.min(last, start + 7 + i * 6));
+                        }
+                    
+                        writer.refer(references);
+                        break;
+                    case 'E':
+                        writer.end(last - start > 1 ? hex(buffer, start + 1, 6, last) : -1);
+                        break;
+                    default:
+                        throw new IOException("Unknown record at byte " + start);
+                }
+            }
+            
+            start = eol + 1;
+        }
+    }
+    
+    // The bytes in [start, end) without trailing blanks
+    private static String name(ByteBuffer buffer, int start, int end) {
+        while (end > start && buffer.get(end - 1) == ' ') {
+            end--;
+        }
+        
+        byte[] bytes = new byte[end - start];
+        
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+    
+    private static int hex(ByteBuffer buffer, int offset, int digits, int end) throws IOException {
+        int value = 0;
+        
+        for (int i = offset; i < offset + digits; i++) {
+            int d = i < end ? Character.digit(buffer.get(i), 16) : -1;
+            
+            if (d < 0) {
+                throw new IOException("Malformed record at byte " + offset);
+            }
+            
+            value = (value << 4) | d;
+        }
+        
+        return value;
+    }
+    
+    static int hex(String s, int offset, int digits) throws IOException {
+        int value = 0;
+        
+        for (int i = offset; i < offset + digits; i++) {
+            int d = i < s.length() ? Character.digit(s.charAt(i), 16) : -1;
+            
+            if (d < 0) {
+                throw new IOException("Malformed record: " + s);
+            }
+            
+            value = (value << 4) | d;
+        }
+        
+        return value;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        _reader.close();
+    }
+}
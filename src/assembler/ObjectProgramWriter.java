@@ -0,0 +1,204 @@
+package assembler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+public class ObjectProgramWriter implements RecordWriter {
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+    private static final byte[] HEX_PAIRS = new byte[512];
+    
+    static {
+        for (int i = 0; i < 256; i++) {
+            HEX_PAIRS[i * 2] = HEX[i >>> 4];
+            HEX_PAIRS[i * 2 + 1] = HEX[i & 0xF];
+        }
+    }
+    
+    private final WritableByteChannel _channel;
+    private final byte[] _buffer;
+    private final ByteBuffer _wrapper;
+    private int _position;
+    
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    public static final int DEFINITIONS_PER_RECORD = 6;
+    public static final int REFERENCES_PER_RECORD = 12;
+    
+    public ObjectProgramWriter(File output) throws IOException {
+        this(FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+    
+    public ObjectProgramWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+    
+    public ObjectProgramWriter(WritableByteChannel channel, int bufferSize) {
+        _channel = channel;
+        _buffer = new byte[bufferSize];
+        _wrapper = ByteBuffer.wrap(_buffer);
+        _position = 0;
+    }
+    
+    @Override
+    public void header(String name, int startAddr, int length) throws IOException {
+        String s = name != null ? name : "";
+        
+        reserve(14 + s.length());
+        
+        _buffer[_position++] = 'H';
+        
+        for (int i = 0; i < s.length(); i++) {
+            _buffer[_position++] = (byte) s.charAt(i);
+        }
+        
+        for (int i = s.length(); i < 6; i++) {
+            _buffer[_position++] = ' ';
+        }
+        
+        putHex(startAddr, 6);
+        putHex(length, 6);
+        
+        _buffer[_position++] = '\n';
+    }
+    
+    @Override
+    public void text(int startAddr, byte[] code, int offset, int length) throws IOException {
+        reserve(10 + length * 2);
+        
+        _buffer[_position++] = 'T';
+        putHex(startAddr, 6);
+        putHex(length, 2);
+        
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int b = (code[i] & 0xFF) << 1;
+            
+            _buffer[_position++] = HEX_PAIRS[b];
+            _buffer[_position++] = HEX_PAIRS[b + 1];
+        }
+        
+        _buffer[_position++] = '\n';
+    }
+    
+    @Override
+    public void modification(int modifiedLoc, int modifiedLen) throws IOException {
+        reserve(10);
+        
+        _buffer[_position++] = 'M';
+        putHex(modifiedLoc, 6);
+        putHex(modifiedLen, 2);
+        
+        _buffer[_position++] = '\n';
+    }
+    
+    @Override
+    public void modification(int modifiedLoc, int modifiedLen, char sign, String symbol) throws IOException {
+        reserve(11 + symbol.length());
+        
+        _buffer[_position++] = 'M';
+        putHex(modifiedLoc, 6);
+        putHex(modifiedLen, 2);
+        
+        _buffer[_position++] = (byte) sign;
+        putName(symbol, symbol.length());
+        
+        _buffer[_position++] = '\n';
+    }
+    
+    // Six names and addresses to a record, as in a 73 column card
+    @Override
+    public void define(String[] names, int[] addresses) throws IOException {
+        for (int i = 0; i < names.length; i += DEFINITIONS_PER_RECORD) {
+            int end = Math.min(names.length, i + DEFINITIONS_PER_RECORD);
+            
+            reserve(2 + (end - i) * 12);
+            
+            _buffer[_position++] = 'D';
+            
+            for (int k = i; k < end; k++) {
+                putName(names[k], 6);
+                putHex(addresses[k], 6);
+            }
+            
+            _buffer[_position++] = '\n';
+        }
+    }
+    
+    @Override
+    public void refer(String[] names) throws IOException {
+        for (int i = 0; i < names.length; i += REFERENCES_PER_RECORD) {
+            int end = Math.min(names.length, i + REFERENCES_PER_RECORD);
+            
+            reserve(2 + (end - i) * 6);
+            
+            _buffer[_position++] = 'R';
+            
+            for (int k = i; k < end; k++) {
+                putName(names[k], 6);
+            }
+            
+            _buffer[_position++] = '\n';
+        }
+    }
+    
+    // Without an entry point, as in every control section but the first
+    @Override
+    public void end(int firstExecAddr) throws IOException {
+        reserve(8);
+        
+        _buffer[_position++] = 'E';
+        
+        if (firstExecAddr >= 0) {
+            putHex(firstExecAddr, 6);
+        }
+        
+        _buffer[_position++] = '\n';
+    }
+    
+    // The name padded with blanks to the given width
+    private void putName(String name, int width) {
+        for (int i = 0; i < width; i++) {
+            _buffer[_position++] = i < name.length() ? (byte) name.charAt(i) : (byte) ' ';
+        }
+    }
+    
+    private void putHex(int value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            _buffer[_position + i] = HEX[value & 0xF];
+            value >>>= 4;
+        }
+        
+        _position += digits;
+    }
+    
+    private void reserve(int length) throws IOException {
+        if (_position + length > _buffer.length) {
+            flush();
+            
+            if (length > _buffer.length) {
+                throw new IOException("Record too long: " + length + " bytes");
+            }
+        }
+    }
+    
+    public void flush() throws IOException {
+        _wrapper.clear().limit(_position);
+        
+        while (_wrapper.hasRemaining()) {
+            _channel.write(_wrapper);
+        }
+        
+        _position = 0;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            _channel.close();
+        }
+    }
+}
@@ -0,0 +1,633 @@
+package assembler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+// Load-and-go assembler: object code is produced while the source is read, and
+// forward references are patched through per-symbol fixup chains once the label
+// is defined. Nothing but the object bytes is kept between statements.
+public class OnePassAssembler {
+    public static final int BACKPATCH_RECORDS = 64;
+    
+    private final Assembler _assembler;
+    private final OutputFormat _outputFormat;
+    
+    // State of one run
+    private AssemblyContext _context;
+    private boolean _started;
+    private String _name;
+    private int[] _chains;            // symbol id -> first fixup, -1 for none
+    private int[] _fixupLocation;
+    private int[] _fixupCode;         // opcode and nixbpe bits
+    private int[] _fixupSymbol;
+    private int[] _fixupTarget;       // known once only the base is missing
+    private int[] _fixupBase;
+    private int[] _fixupBaseSymbol;   // pending BASE symbol at the reference, -1 if the base is known
+    private int[] _fixupNext;
+    private int _fixupCount;
+    private int _freeFixup;
+    private int _baseSymbol;
+    private LiteralTable _literals;
+    private int[] _modifications;
+    private int[] _modificationLengths;   // half bytes
+    private int _modificationCount;
+    private TextRecord _textRecord;
+    private ArrayDeque<TextRecord> _backpatch;
+    private ByteArrayOutputStream _spool;
+    private DataOutputStream _spoolOut;
+    private byte[] _patch;
+    
+    public OnePassAssembler() {
+        this(new AssemblerOptions());
+    }
+    
+    public OnePassAssembler(AssemblerOptions options) {
+        this(new Assembler(options));
+    }
+    
+    OnePassAssembler(Assembler assembler) {
+        _assembler = assembler;
+        _outputFormat = assembler.outputFormat();
+    }
+    
+    public OutputFormat outputFormat() {
+        return _outputFormat;
+    }
+    
+    public void assemble(File input, File output, AssemblyContext context) throws IOException {
+        try (InputStream istream = new FileInputStream(input); RecordWriter writer = _outputFormat.open(output)) {
+            assemble(istream, writer, context);
+        }
+    }
+    
+    public void assemble(InputStream input, RecordWriter output, AssemblyContext context) throws IOException {
+        reset(context);
+        
+        SymbolTable symbolTable = context.symbolTable();
+        CodeBuffer objectCode = new CodeBuffer();
+        
+        // Macros are defined as their lines are read, so each must come before its first use
+        MacroProcessor expander = new MacroProcessor(new MacroTable(), symbolTable, false);
+        boolean ended = false;
+        
+        try (SourceReader reader = new SourceReader(input)) {
+            Lexer lexer = new Lexer(new SymbolPool(), symbolTable);
+            
+            while (ended == false && reader.next()) {
+                Statement statement = lexer.parse(reader.buffer(), reader.lineStart(), reader.lineEnd());
+                
+                if (statement == null || statement.isComment()) {
+                    continue;
+                }
+                
+                List<Statement> expansion = null;
+                
+                try {
+                    expansion = expander.process(statement);
+                } catch (InvalidMacroException e) {
+                    context.addError(e.getMessage());
+                    
+                    continue;
+                }
+                
+                if (expansion == null) {
+                    ended = step(statement, objectCode);
+                } else {
+                    for (int k = 0; k < expansion.size() && ended == false; k++) {
+                        ended = step(expansion.get(k), objectCode);
+                    }
+                }
+            }
+        }
+        
+        try {
+            expander.finish();
+        } catch (InvalidMacroException e) {
+            context.addError(e.getMessage());
+        }
+        
+        placeLiterals(objectCode);
+        
+        context.setProgramLength(Math.max(context.locctr(), context.highWater()) - context.startAddress());
+        
+        for (int id = 0; id < symbolTable.size() && id < _chains.length; id++) {
+            if (_chains[id] >= 0) {
+                context.addError(new UndefinedSymbolException(symbolTable.name(id)).getMessage());
+            }
+        }
+        
+        write(output);
+    }
+    
+    // Assembles a statement; true at END
+    private boolean step(Statement statement, CodeBuffer objectCode) throws IOException {
+        if (statement.compareTo("END") == 0) {
+            return true;
+        }
+        
+        try {
+            process(statement, objectCode);
+        } catch (DuplicateSymbolException | InvalidOperationCodeException | InvalidLiteralException | UndefinedSymbolException | DisplacementOutOfRangeException | InvalidExpressionException e) {
+            _context.addError(e.getMessage());
+        }
+        
+        return false;
+    }
+    
+    private void reset(AssemblyContext context) {
+        _context = context;
+        _started = false;
+        _name = null;
+        _chains = new int[256];
+        _fixupLocation = new int[256];
+        _fixupCode = new int[256];
+        _fixupSymbol = new int[256];
+        _fixupTarget = new int[256];
+        _fixupBase = new int[256];
+        _fixupBaseSymbol = new int[256];
+        _fixupNext = new int[256];
+        _fixupCount = 0;
+        _freeFixup = -1;
+        _baseSymbol = -1;
+        _literals = new LiteralTable();
+        _modifications = new int[64];
+        _modificationLengths = new int[64];
+        _modificationCount = 0;
+        _textRecord = new TextRecord(0, _assembler.recordLength());
+        _backpatch = new ArrayDeque<>();
+        _spool = new ByteArrayOutputStream();
+        _spoolOut = new DataOutputStream(_spool);
+        _patch = new byte[4];
+        
+        Arrays.fill(_chains, -1);
+    }
+    
+    private void process(Statement statement, CodeBuffer objectCode) throws IOException, DuplicateSymbolException, InvalidOperationCodeException, InvalidLiteralException, UndefinedSymbolException, DisplacementOutOfRangeException, InvalidExpressionException {
+        AssemblyContext context = _context;
+        SymbolTable symbolTable = context.symbolTable();
+        
+        statement.setLocation(context.locctr());
+        
+        if (statement.labelId() >= 0 && statement.compareTo("EQU") != 0) {
+            if (symbolTable.define(statement.labelId(), context.locctr()) == false) {
+                throw new DuplicateSymbolException(statement);
+            }
+            
+            resolve(statement.labelId(), context.locctr());
+        }
+        
+        switch (statement.operation()) {
+            case "START":
+                _started = true;
+                _name = statement.label();
+                context.setStartAddress(Integer.parseInt(statement.operand1()));
+                context.setLocctr(context.startAddress());
+            
+                _textRecord.reset(context.startAddress());
+            
+                return;
+            case "RESW":
+                context.advance(3 * Integer.parseInt(statement.operand1()));
+            
+                return;
+            case "RESB":
+                context.advance(Integer.parseInt(statement.operand1()));
+            
+                return;
+            case "BASE":
+                if (symbolTable.isDefined(statement.symbolId())) {
+                    context.setBaseAddress(symbolTable.address(statement.symbolId()));
+                    _baseSymbol = -1;
+                } else if (statement.symbolId() >= 0) {
+                    _baseSymbol = statement.symbolId(); // a forward BASE is bound when its label is defined
+                } else {
+                    throw new UndefinedSymbolException(statement);
+                }
+            
+                return;
+            case "NOBASE":
+                context.setBaseAddress(AssemblyContext.NO_BASE);
+                _baseSymbol = -1;
+            
+                return;
+            case "LTORG":
+                placeLiterals(objectCode);
+            
+                return;
+            case "EQU":
+                equate(statement);
+            
+                return;
+            case "ORG":
+                Assembler.origin(statement, context);
+            
+                // The code after ORG goes into a new record
+                if (_textRecord.length() > 0) {
+                    nextRecord(context.locctr());
+                }
+            
+                return;
+            case "CSECT":
+            case "EXTDEF":
+            case "EXTREF":
+                context.addError("Control sections need the two-pass assembler: " + statement.operation());
+            
+                return;
+            case "MEND":
+                throw new InvalidOperationCodeException(statement);
+        }
+        
+        Operation op = statement.instruction();
+        
+        if (op == null && Utility.isDirective(statement.operation()) == false) {
+            throw new InvalidOperationCodeException(statement);
+        }
+        
+        if (op != null && context.firstExecAddress() < 0) {
+            context.setFirstExecAddress(context.locctr());
+        }
+        
+        // A literal is a forward reference to its slot in the next pool
+        if (op != null && LiteralTable.isLiteral(statement.operand1())) {
+            statement.setSymbolIds(statement.labelId(), _literals.intern(statement, symbolTable));
+        }
+        
+        if (op != null && statement.isExtended() && statement.symbolId() >= 0 && symbolTable.isAbsolute(statement.symbolId()) == false) {
+            addModification(context.locctr() + 1, 5);
+        }
+        
+        objectCode.clear();
+        
+        int symbolId = statement.symbolId();
+        
+        if (op != null && op.format() == Format.THREE_FOUR && symbolId >= 0 && (symbolTable.isDefined(symbolId) == false || _baseSymbol >= 0)) {
+            int code = op.opcode() << 4 | Assembler.addressingFlags(statement);
+            
+            if (statement.isExtended()) {
+                code |= Assembler.E;
+                objectCode.put32(code << 20);
+            } else {
+                objectCode.put24(code << 12);
+            }
+            
+            emit(context.locctr(), objectCode.data(), objectCode.length());
+            
+            int fixup = addFixup(context.locctr(), code, symbolId, context.baseAddress(), _baseSymbol);
+            
+            if (symbolTable.isDefined(symbolId)) {
+                complete(fixup, symbolTable.address(symbolId));
+            } else {
+                chain(symbolId, fixup);
+            }
+        } else {
+            _assembler.assembleInstruction(statement, context, objectCode);
+            emit(context.locctr(), objectCode.data(), objectCode.length());
+            
+            // An expression of labels defined before it is relocated like a symbol
+            Expression expression = statement.expression();
+            
+            if (expression != null && expression.isRelative() && (op == null || statement.isExtended())) {
+                addModification(op == null ? context.locctr() : context.locctr() + 1, op == null ? 6 : 5);
+            }
+        }
+        
+        context.advance(objectCode.length());
+    }
+    
+    // Defines the label of EQU by an expression of symbols defined before it. Instructions that
+    // used the label earlier were encoded as addresses, so it cannot turn out to be a number
+    private void equate(Statement statement) throws IOException, DuplicateSymbolException, InvalidExpressionException, UndefinedSymbolException {
+        SymbolTable symbolTable = _context.symbolTable();
+        String operand = statement.operand1() != null ? statement.operand1() : "";
+        int id = statement.labelId();
+        
+        if (id < 0) {
+            throw new InvalidExpressionException(operand, "EQU needs a label");
+        }
+        
+        Expression expression = Expression.compile(operand, symbolTable, false);
+        int value = expression.evaluate(symbolTable, _context.locctr());
+        
+        if (symbolTable.define(id, value) == false) {
+            throw new DuplicateSymbolException(statement);
+        }
+        
+        symbolTable.setEquated(id, expression.isRelative() == false);
+        
+        if (expression.isRelative() == false && id < _chains.length && _chains[id] >= 0) {
+            throw new InvalidExpressionException(operand, "Absolute symbol used before its EQU");
+        }
+        
+        resolve(id, value);
+    }
+    
+    // Emits the pending literal pool at the location counter, completing the instructions that wait for it
+    private void placeLiterals(CodeBuffer objectCode) throws IOException {
+        AssemblyContext context = _context;
+        
+        for (int k = 0; k < _literals.size(); k++) {
+            String content = _literals.content(k);
+            
+            context.symbolTable().define(_literals.id(k), context.locctr());
+            resolve(_literals.id(k), context.locctr());
+            
+            objectCode.clear();
+            
+            for (int i = 0; i < content.length(); i++) {
+                objectCode.put(content.charAt(i));
+            }
+            
+            emit(context.locctr(), objectCode.data(), objectCode.length());
+            context.advance(objectCode.length());
+        }
+        
+        _literals.clear();
+    }
+    
+    private int addFixup(int location, int code, int symbolId, int base, int baseSymbol) {
+        int fixup = _freeFixup;
+        
+        if (fixup >= 0) {
+            _freeFixup = _fixupNext[fixup];
+        } else {
+            if (_fixupCount == _fixupLocation.length) {
+                int n = _fixupCount * 2;
+                
+                _fixupLocation = Arrays.copyOf(_fixupLocation, n);
+                _fixupCode = Arrays.copyOf(_fixupCode, n);
+                _fixupSymbol = Arrays.copyOf(_fixupSymbol, n);
+                _fixupTarget = Arrays.copyOf(_fixupTarget, n);
+                _fixupBase = Arrays.copyOf(_fixupBase, n);
+                _fixupBaseSymbol = Arrays.copyOf(_fixupBaseSymbol, n);
+                _fixupNext = Arrays.copyOf(_fixupNext, n);
+            }
+            
+            fixup = _fixupCount++;
+        }
+        
+        _fixupLocation[fixup] = location;
+        _fixupCode[fixup] = code;
+        _fixupSymbol[fixup] = symbolId;
+        _fixupTarget[fixup] = SymbolTable.UNDEFINED;
+        _fixupBase[fixup] = base;
+        _fixupBaseSymbol[fixup] = baseSymbol;
+        
+        return fixup;
+    }
+    
+    private void chain(int symbolId, int fixup) {
+        if (symbolId >= _chains.length) {
+            int n = _chains.length;
+            
+            _chains = Arrays.copyOf(_chains, Math.max(n * 2, symbolId + 1));
+            Arrays.fill(_chains, n, _chains.length, -1);
+        }
+        
+        _fixupNext[fixup] = _chains[symbolId];
+        _chains[symbolId] = fixup;
+    }
+    
+    // Continues every fixup waiting for the symbol, either as its target or as its base
+    private void resolve(int symbolId, int address) throws IOException {
+        if (symbolId == _baseSymbol) {
+            _context.setBaseAddress(address);
+            _baseSymbol = -1;
+        }
+        
+        if (symbolId >= _chains.length) {
+            return;
+        }
+        
+        int fixup = _chains[symbolId];
+        
+        _chains[symbolId] = -1;
+        
+        while (fixup >= 0) {
+            int next = _fixupNext[fixup];
+            
+            complete(fixup, _fixupTarget[fixup] != SymbolTable.UNDEFINED ? _fixupTarget[fixup] : address);
+            fixup = next;
+        }
+    }
+    
+    // Patches the instruction once its target is known, unless it needs a base that is still undefined
+    private void complete(int fixup, int target) throws IOException {
+        int location = _fixupLocation[fixup];
+        int code = _fixupCode[fixup];
+        
+        _fixupTarget[fixup] = target;
+        
+        if ((code & Assembler.E) != 0) {
+            if (target < 0 || target > 0xFFFFF) {
+                _context.addError("Displacement out of range: " + _context.symbolTable().name(_fixupSymbol[fixup]));
+                _fixupNext[fixup] = _freeFixup;
+                _freeFixup = fixup;
+                
+                return;
+            }
+            
+            put(_patch, (code << 20) | (target & 0xFFFFF), 4);
+            patch(location, 4);
+        } else {
+            int disp = target - (location + 3);
+            
+            if (disp >= -2048 && disp <= 2047) {
+                code |= Assembler.P;
+            } else {
+                int baseSymbol = _fixupBaseSymbol[fixup];
+                SymbolTable symbolTable = _context.symbolTable();
+                
+                if (baseSymbol >= 0 && symbolTable.isDefined(baseSymbol) == false) {
+                    chain(baseSymbol, fixup);
+                    
+                    return;
+                }
+                
+                int base = baseSymbol >= 0 ? symbolTable.address(baseSymbol) : _fixupBase[fixup];
+                
+                code |= Assembler.B;
+                disp = target - base;
+                
+                if (base == AssemblyContext.NO_BASE || disp < 0 || disp > 4095) {
+                    _context.addError("Displacement out of range: " + symbolTable.name(_fixupSymbol[fixup]));
+                    _fixupNext[fixup] = _freeFixup;
+                    _freeFixup = fixup;
+                    
+                    return;
+                }
+            }
+            
+            put(_patch, (code << 12) | (disp & 0xFFF), 3);
+            patch(location, 3);
+        }
+        
+        _fixupNext[fixup] = _freeFixup;
+        _freeFixup = fixup;
+    }
+    
+    private static void put(byte[] buf, int value, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            buf[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+    
+    // Patches the bytes in place while their records are still buffered, or appends a text record
+    // that overwrites them once one of those records has been spooled. Code may continue from one
+    // record into the next, so a patch can span two of them
+    private void patch(int location, int length) throws IOException {
+        int patched = _textRecord.patch(location, _patch, 0, length);
+        
+        for (Iterator<TextRecord> it = _backpatch.descendingIterator(); it.hasNext() && patched < length; ) {
+            patched += it.next().patch(location, _patch, 0, length);
+        }
+        
+        if (patched < length) {
+            spool(location, _patch, 0, length);
+        }
+    }
+    
+    private void addModification(int location, int halfBytes) {
+        if (_modificationCount == _modifications.length) {
+            _modifications = Arrays.copyOf(_modifications, _modificationCount * 2);
+            _modificationLengths = Arrays.copyOf(_modificationLengths, _modificationCount * 2);
+        }
+        
+        _modifications[_modificationCount] = location;
+        _modificationLengths[_modificationCount++] = halfBytes;
+    }
+    
+    // Same record layout as pass 2 of the two-pass assembler
+    private void emit(int location, byte[] code, int length) throws IOException {
+        if (length == 0) {
+            return;
+        } else if (_textRecord.length() > 0 && location != _textRecord.endAddress()) {
+            nextRecord(location);
+        } else if (_textRecord.length() == 0) {
+            _textRecord.reset(location);
+        }
+        
+        // Code that does not fit goes on in the next record
+        for (int offset = 0; ; ) {
+            int n = Math.min(length - offset, _textRecord.room());
+            
+            _textRecord.add(code, offset, n);
+            offset += n;
+            
+            if (offset == length) {
+                break;
+            }
+            
+            nextRecord(location + offset);
+        }
+    }
+    
+    private void nextRecord(int location) throws IOException {
+        TextRecord next;
+        
+        _backpatch.addLast(_textRecord);
+        
+        if (_backpatch.size() > BACKPATCH_RECORDS) {
+            next = _backpatch.removeFirst();
+            
+            next.writeTo(new SpoolWriter());
+        } else {
+            next = new TextRecord(location, _assembler.recordLength());
+        }
+        
+        next.reset(location);
+        _textRecord = next;
+    }
+    
+    private void spool(int location, byte[] code, int offset, int length) throws IOException {
+        _spoolOut.writeInt(location);
+        _spoolOut.writeByte(length);
+        _spoolOut.write(code, offset, length);
+    }
+    
+    // The header needs the program length, so records are only written once END is reached
+    private void write(RecordWriter output) throws IOException {
+        AssemblyContext context = _context;
+        
+        if (_started) {
+            output.header(_name, context.startAddress(), context.programLength());
+        }
+        
+        DataInputStream spooled = new DataInputStream(new ByteArrayInputStream(_spool.toByteArray()));
+        byte[] code = new byte[0xFF];
+        
+        while (spooled.available() > 0) {
+            int location = spooled.readInt();
+            int length = spooled.readUnsignedByte();
+            
+            spooled.readFully(code, 0, length);
+            output.text(location, code, 0, length);
+        }
+        
+        for (TextRecord record : _backpatch) {
+            writeText(record, output);
+        }
+        
+        writeText(_textRecord, output);
+        
+        for (int i = 0; i < _modificationCount; i++) {
+            output.modification(_modifications[i], _modificationLengths[i]);
+        }
+        
+        output.end(context.firstExecAddress());
+    }
+    
+    private static void writeText(TextRecord record, RecordWriter output) throws IOException {
+        if (record.length() > 0) {
+            record.writeTo(output);
+        }
+    }
+    
+    // Receives the records pushed out of the backpatch window
+    private class SpoolWriter implements RecordWriter {
+        @Override
+        public void header(String name, int startAddr, int length) {
+        }
+        
+        @Override
+        public void text(int startAddr, byte[] code, int offset, int length) throws IOException {
+            if (length > 0) {
+                spool(startAddr, code, offset, length);
+            }
+        }
+        
+        @Override
+        public void modification(int modifiedLoc, int modifiedLen) {
+        }
+        
+        @Override
+        public void modification(int modifiedLoc, int modifiedLen, char sign, String symbol) {
+        }
+        
+        @Override
+        public void define(String[] names, int[] addresses) {
+        }
+        
+        @Override
+        public void refer(String[] names) {
+        }
+        
+        @Override
+        public void end(int firstExecAddr) {
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -1,25 +1,47 @@
 package assembler;
 
 public class Operation {
-    private String _mnemonic;
-    private String _opcode;
-    private String _format;
+    private final String _mnemonic;
+    private final int _opcode;
+    private final Format _format;
+    private final int _flags;
     
-    public Operation(String mnemonic, String format, String opcode) {
+    public static final int FLOATING_POINT = 1;
+    public static final int PRIVILEGED = 1 << 1;
+    public static final int SHIFT = 1 << 2; // format 2 with a count as second operand
+    
+    public Operation(String mnemonic, Format format, int opcode) {
+        this(mnemonic, format, opcode, 0);
+    }
+    
+    public Operation(String mnemonic, Format format, int opcode, int flags) {
         _mnemonic = mnemonic;
         _opcode = opcode;
         _format = format;
+        _flags = flags;
     }
     
     public String mnemonic() {
         return _mnemonic;
     }
     
-    public String opcode() {
+    public int opcode() {
         return _opcode;
     }
     
-    public String format() {
+    public Format format() {
         return _format;
     }
+    
+    public boolean isFloatingPoint() {
+        return (_flags & FLOATING_POINT) != 0;
+    }
+    
+    public boolean isPrivileged() {
+        return (_flags & PRIVILEGED) != 0;
+    }
+    
+    public boolean isShift() {
+        return (_flags & SHIFT) != 0;
+    }
 }
@@ -0,0 +1,92 @@
+package assembler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class OperationTable {
+    private final Operation[] _table;
+    private final List<Operation> _operations;
+    private final int _seed;
+    private final int _mask;
+    
+    public OperationTable(Operation... operations) {
+        _operations = Collections.unmodifiableList(Arrays.asList(operations.clone()));
+        
+        int size = Integer.highestOneBit(Math.max(operations.length, 1) * 8 - 1) * 2;
+        
+        while (true) {
+            for (int seed = 1; seed < 1 << 16; seed++) {
+                Operation[] table = place(operations, seed, size - 1);
+                
+                if (table != null) {
+                    _table = table;
+                    _seed = seed;
+                    _mask = size - 1;
+                    
+                    return;
+                }
+            }
+            
+            size *= 2;
+        }
+    }
+    
+    // Returns null when two mnemonics collide under the given seed
+    private static Operation[] place(Operation[] operations, int seed, int mask) {
+        Operation[] table = new Operation[mask + 1];
+        
+        for (Operation op : operations) {
+            String s = op.mnemonic();
+            int slot = hash(s, seed) & mask;
+            
+            if (table[slot] != null) {
+                return null;
+            }
+            
+            table[slot] = op;
+        }
+        
+        return table;
+    }
+    
+    private static int hash(String s, int seed) {
+        int h = seed;
+        
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x01000193;
+        }
+        
+        return h ^ (h >>> 15);
+    }
+    
+    private static int hash(byte[] buf, int start, int end, int seed) {
+        int h = seed;
+        
+        for (int i = start; i < end; i++) {
+            h = (h ^ (buf[i] & 0xFF)) * 0x01000193;
+        }
+        
+        return h ^ (h >>> 15);
+    }
+    
+    public Operation get(String mnemonic) {
+        Operation op = _table[hash(mnemonic, _seed) & _mask];
+        
+        return op != null && op.mnemonic().equals(mnemonic) ? op : null;
+    }
+    
+    public Operation get(byte[] buf, int start, int end) {
+        Operation op = _table[hash(buf, start, end, _seed) & _mask];
+        
+        return op != null && SymbolPool.equals(op.mnemonic(), buf, start, end) ? op : null;
+    }
+    
+    public boolean contains(String mnemonic) {
+        return get(mnemonic) != null;
+    }
+    
+    public List<Operation> operations() {
+        return _operations;
+    }
+}
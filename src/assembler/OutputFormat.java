@@ -0,0 +1,44 @@
+package assembler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+
+public enum OutputFormat {
+    TEXT(".o"),
+    BINARY(".obj"),
+    IMAGE(".img");
+    
+    private final String _extension;
+    
+    private OutputFormat(String extension) {
+        _extension = extension;
+    }
+    
+    public String extension() {
+        return _extension;
+    }
+    
+    public RecordWriter open(File output) throws IOException {
+        switch (this) {
+            case BINARY:
+                return new BinaryObjectWriter(output);
+            case IMAGE:
+                return new MemoryImageWriter(output);
+            default:
+                return new ObjectProgramWriter(output);
+        }
+    }
+    
+    public RecordWriter open(OutputStream output) throws IOException {
+        switch (this) {
+            case BINARY:
+                return new BinaryObjectWriter(output);
+            case IMAGE:
+                return new MemoryImageWriter(output);
+            default:
+                return new ObjectProgramWriter(Channels.newChannel(output));
+        }
+    }
+}
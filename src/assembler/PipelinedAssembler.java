@@ -0,0 +1,637 @@
+package assembler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+// Assembles a program as a pipeline of stages on their own threads, passing batches through
+// bounded ring buffers: pass 1 reads lines, parses them and places the statements, and pass 2
+// encodes them and writes the records. A stage that runs ahead fills its ring and waits for the
+// next one, so only a few batches are in flight. Lines are parsed against a symbol table of the
+// parser's own, whose ids are mapped to the program's when the statements are placed, and line
+// and code batches go back to the stage that fills them to be reused. Pass 1 stops at a CSECT that
+// begins a second control section, and the sections from there on are assembled one by one
+class PipelinedAssembler {
+    static final int BATCH_LINES = 1024;
+    static final int BATCH_STATEMENTS = 1024;
+    static final int RING_BATCHES = 16;
+    
+    private final Assembler _assembler;
+    private final int _memoryLimit;
+    private final int _parallelism;
+    
+    PipelinedAssembler(Assembler assembler, int memoryLimit, int parallelism) {
+        _assembler = assembler;
+        _memoryLimit = memoryLimit;
+        _parallelism = parallelism;
+    }
+    
+    void assemble(File input, File output, AssemblyContext context) throws IOException {
+        AssemblyMetrics metrics = context.metrics();
+        
+        try (StatementStore intermediate = new StatementStore(_memoryLimit)) {
+            if (metrics != null) {
+                metrics.begin(AssemblyMetrics.Phase.PASS1);
+            }
+            
+            long next = processPass1(input, intermediate, context);
+            
+            _assembler.endPass1(intermediate, context);
+            
+            if (next >= 0) {
+                try (RecordWriter objectProgram = _assembler.open(output, context)) {
+                    new SectionAssembler(_assembler, _memoryLimit, _parallelism).assemble(input, intermediate, next, objectProgram, context, null, null);
+                }
+                
+                return;
+            }
+            
+            _assembler.relax(intermediate, context);
+            
+            if (metrics != null) {
+                metrics.begin(AssemblyMetrics.Phase.PASS2);
+            }
+            
+            try (RecordWriter objectProgram = _assembler.open(output, context)) {
+                processPass2(intermediate, objectProgram, context);
+            }
+            
+            if (metrics != null) {
+                metrics.end(AssemblyMetrics.Phase.PASS2);
+            }
+        }
+    }
+    
+    // Reader and parser threads feed the placement of statements on the calling thread; returns the
+    // file position of the CSECT line that begins the next section, or -1 when there is none
+    private long processPass1(File input, StatementStore output, AssemblyContext context) throws IOException {
+        RingBuffer<Lines> lines = new RingBuffer<>(RING_BATCHES);
+        RingBuffer<Lines> freeLines = new RingBuffer<>(2 * RING_BATCHES);
+        RingBuffer<Statements> statements = new RingBuffer<>(RING_BATCHES);
+        Pipeline pipeline = new Pipeline(lines, statements);
+        
+        pipeline.start(new Reader(input, lines, freeLines, context));
+        pipeline.start(new Parser(lines, freeLines, statements, context));
+        Placer placer = new Placer(statements, output, context);
+        
+        pipeline.run(placer);
+        pipeline.finish(context);
+        
+        return placer._next;
+    }
+    
+    // An encoder thread feeds the packing and writing of records on the calling thread
+    private void processPass2(StatementStore input, RecordWriter objectProgram, AssemblyContext context) throws IOException {
+        RingBuffer<Code> code = new RingBuffer<>(RING_BATCHES);
+        RingBuffer<Code> freeCode = new RingBuffer<>(2 * RING_BATCHES);
+        Pipeline pipeline = new Pipeline(code);
+        Encoder encoder = new Encoder(input, code, freeCode, context);
+        
+        pipeline.start(encoder);
+        pipeline.run(new Writer(code, freeCode, objectProgram, context, _assembler.recordLength()));
+        pipeline.finish(context);
+        
+        for (String error : encoder._context.errors()) {
+            context.addError(error);
+        }
+        
+        context.setBaseAddress(encoder._context.baseAddress());
+    }
+    
+    // Copies of up to BATCH_LINES source lines, with their file positions
+    private static class Lines {
+        private byte[] _bytes;
+        private final int[] _starts;
+        private final int[] _ends;
+        private final long[] _positions;
+        private int _size;
+        
+        private Lines() {
+            _bytes = new byte[BATCH_LINES * 32];
+            _starts = new int[BATCH_LINES];
+            _ends = new int[BATCH_LINES];
+            _positions = new long[BATCH_LINES];
+            _size = 0;
+        }
+        
+        private void add(byte[] buf, int start, int end, long position) {
+            int used = _size > 0 ? _ends[_size - 1] : 0;
+            
+            if (used + end - start > _bytes.length) {
+                _bytes = Arrays.copyOf(_bytes, Math.max(2 * _bytes.length, used + end - start));
+            }
+            
+            System.arraycopy(buf, start, _bytes, used, end - start);
+            
+            _starts[_size] = used;
+            _ends[_size] = used + end - start;
+            _positions[_size] = position;
+            _size++;
+        }
+    }
+    
+    // Parsed statements with their lengths and file positions, and the names the parser's symbol
+    // table gained since the previous batch, in order of their ids
+    private static class Statements {
+        private final Statement[] _statements;
+        private final int[] _lengths;
+        private final long[] _positions;
+        private int _size;
+        private String[] _names;
+        
+        private Statements(int capacity) {
+            _statements = new Statement[capacity];
+            _lengths = new int[capacity];
+            _positions = new long[capacity];
+            _size = 0;
+        }
+    }
+    
+    // The object code of up to BATCH_STATEMENTS statements
+    private static class Code {
+        private final Statement[] _statements;
+        private final CodeBuffer _code;
+        private final int[] _offsets;
+        private int _size;
+        
+        private Code() {
+            _statements = new Statement[BATCH_STATEMENTS];
+            _code = new CodeBuffer(BATCH_STATEMENTS * 3);
+            _offsets = new int[BATCH_STATEMENTS + 1];
+            _size = 0;
+        }
+    }
+    
+    // The stages of one pass and the rings between them. A stage that fails aborts the rings, so
+    // the others stop waiting on them, and finish reports the first failure that was not such an
+    // abort
+    private static class Pipeline {
+        private final RingBuffer<?>[] _rings;
+        private final List<Stage> _stages;
+        private final List<Thread> _threads;
+        
+        private Pipeline(RingBuffer<?>... rings) {
+            _rings = rings;
+            _stages = new ArrayList<>();
+            _threads = new ArrayList<>();
+        }
+        
+        private void start(Stage stage) {
+            Thread thread = new Thread(stage, "assembler-" + stage._name);
+            
+            stage._pipeline = this;
+            thread.setDaemon(true);
+            
+            _stages.add(stage);
+            _threads.add(thread);
+            
+            thread.start();
+        }
+        
+        // Runs a stage on the calling thread
+        private void run(Stage stage) {
+            stage._pipeline = this;
+            
+            _stages.add(stage);
+            
+            stage.run();
+        }
+        
+        private void abort() {
+            for (RingBuffer<?> ring : _rings) {
+                ring.abort();
+            }
+        }
+        
+        // Waits for the stages and adds their measurements to the context
+        private void finish(AssemblyContext context) throws IOException {
+            AssemblyMetrics metrics = context.metrics();
+            
+            try {
+                for (Thread thread : _threads) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                abort();
+                Thread.currentThread().interrupt();
+                
+                throw new InterruptedIOException();
+            }
+            
+            for (Stage stage : _stages) {
+                Throwable failure = stage._failure;
+                
+                if (failure == null || failure instanceof CancellationException) {
+                    continue;
+                } else if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                } else if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                } else if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                
+                throw new IllegalStateException(failure);
+            }
+            
+            if (metrics != null) {
+                for (Stage stage : _stages) {
+                    if (stage._metrics != null) {
+                        metrics.merge(stage._metrics);
+                    }
+                    
+                    metrics.addStage(stage._name, stage._batches, stage._items, stage._nanos, stage.stalledNanos());
+                }
+            }
+        }
+    }
+    
+    // A step of the pipeline between the ring it takes batches from and the ring it puts them in,
+    // either of which may be missing; it closes its output when done
+    private abstract static class Stage implements Runnable {
+        private final String _name;
+        private final RingBuffer<?> _input;
+        private final RingBuffer<?> _output;
+        final AssemblyMetrics _metrics;    // the stage's own, when it runs on its own thread
+        private Pipeline _pipeline;
+        long _batches;
+        long _items;
+        private long _nanos;
+        private Throwable _failure;
+        
+        private Stage(String name, RingBuffer<?> input, RingBuffer<?> output, AssemblyMetrics metrics) {
+            _name = name;
+            _input = input;
+            _output = output;
+            _metrics = metrics;
+        }
+        
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            
+            try {
+                process();
+                
+                if (_output != null) {
+                    _output.close();
+                }
+            } catch (Throwable e) {
+                _failure = e;
+                _pipeline.abort();
+            }
+            
+            _nanos = System.nanoTime() - start;
+        }
+        
+        abstract void process() throws IOException;
+        
+        // Stops the other stages, as when the rest of the input is not needed
+        void stop() {
+            _pipeline.abort();
+        }
+        
+        private long stalledNanos() {
+            return (_input != null ? _input.emptyNanos() : 0) + (_output != null ? _output.fullNanos() : 0);
+        }
+        
+        static AssemblyMetrics metrics(AssemblyContext context) {
+            return context.metrics() != null ? new AssemblyMetrics(context.metrics().name()) : null;
+        }
+    }
+    
+    // Copies the lines of the source into batches
+    private static class Reader extends Stage {
+        private final File _file;
+        private final RingBuffer<Lines> _lines;
+        private final RingBuffer<Lines> _free;
+        
+        private Reader(File file, RingBuffer<Lines> lines, RingBuffer<Lines> free, AssemblyContext context) {
+            super("read", null, lines, Stage.metrics(context));
+            
+            _file = file;
+            _lines = lines;
+            _free = free;
+        }
+        
+        @Override
+        void process() throws IOException {
+            try (MappedSourceReader reader = new MappedSourceReader(_file)) {
+                Lines batch = next();
+                
+                while (_metrics != null ? Assembler.read(reader, _metrics) : reader.next()) {
+                    batch.add(reader.buffer(), reader.lineStart(), reader.lineEnd(), reader.linePosition());
+                    
+                    if (batch._size == BATCH_LINES) {
+                        put(batch);
+                        
+                        batch = next();
+                    }
+                }
+                
+                if (batch._size > 0) {
+                    put(batch);
+                }
+            }
+        }
+        
+        // A batch the parser is done with, or a new one
+        private Lines next() {
+            Lines batch = _free.poll();
+            
+            if (batch == null) {
+                return new Lines();
+            }
+            
+            batch._size = 0;
+            
+            return batch;
+        }
+        
+        private void put(Lines batch) {
+            _batches++;
+            _items += batch._size;
+            
+            _lines.put(batch);
+        }
+    }
+    
+    // Parses, numbers and sizes lines against a symbol table of its own, keeping the comments when
+    // they are listed
+    private static class Parser extends Stage {
+        private final RingBuffer<Lines> _lines;
+        private final RingBuffer<Lines> _free;
+        private final RingBuffer<Statements> _statements;
+        private final boolean _comments;
+        
+        private Parser(RingBuffer<Lines> lines, RingBuffer<Lines> free, RingBuffer<Statements> statements, AssemblyContext context) {
+            super("parse", lines, statements, Stage.metrics(context));
+            
+            _lines = lines;
+            _free = free;
+            _statements = statements;
+            _comments = context.listing() != null;
+        }
+        
+        @Override
+        void process() {
+            SymbolTable symbolTable = new SymbolTable();
+            Lexer lexer = new Lexer(new SymbolPool(), symbolTable);
+            int named = 0;
+            int number = 0;
+            Lines lines;
+            
+            while ((lines = _lines.take()) != null) {
+                Statements batch = new Statements(lines._size);
+                
+                for (int k = 0; k < lines._size; k++) {
+                    if (_metrics != null) {
+                        _metrics.begin(AssemblyMetrics.Phase.PARSE);
+                    }
+                    
+                    Statement statement = lexer.parse(lines._bytes, lines._starts[k], lines._ends[k]);
+                    
+                    if (_metrics != null) {
+                        _metrics.end(AssemblyMetrics.Phase.PARSE);
+                    }
+                    
+                    number++;
+                    
+                    if (statement != null && (statement.isComment() == false || _comments)) {
+                        statement.setLine(number);
+                        
+                        batch._statements[batch._size] = statement;
+                        batch._lengths[batch._size] = Assembler.length(statement);
+                        batch._positions[batch._size] = lines._positions[k];
+                        batch._size++;
+                    }
+                }
+                
+                _free.offer(lines);
+                
+                batch._names = new String[symbolTable.size() - named];
+                
+                for (int id = named; id < symbolTable.size(); id++) {
+                    batch._names[id - named] = symbolTable.name(id);
+                }
+                
+                named = symbolTable.size();
+                
+                _batches++;
+                _items += batch._size;
+                
+                _statements.put(batch);
+            }
+        }
+    }
+    
+    // Places the statements in source order, entering their symbols in the program's table as the
+    // statements that use them come up, as a serial pass 1 does, up to the CSECT line that begins
+    // the next section
+    private class Placer extends Stage {
+        private final RingBuffer<Statements> _statements;
+        private final StatementStore _store;
+        private final AssemblyContext _context;
+        private long _next;               // where the next section begins, -1 for none
+        
+        private Placer(RingBuffer<Statements> statements, StatementStore store, AssemblyContext context) {
+            super("place", statements, null, null);
+            
+            _statements = statements;
+            _store = store;
+            _context = context;
+            _next = -1;
+        }
+        
+        @Override
+        void process() throws IOException {
+            SymbolTable symbolTable = _context.symbolTable();
+            String[] names = new String[1024];
+            int[] ids = new int[1024];    // parser id -> program id, -1 until used
+            int named = 0;
+            Statements batch;
+            
+            while ((batch = _statements.take()) != null) {
+                if (named + batch._names.length > names.length) {
+                    int capacity = Math.max(2 * names.length, named + batch._names.length);
+                    
+                    names = Arrays.copyOf(names, capacity);
+                    ids = Arrays.copyOf(ids, capacity);
+                }
+                
+                System.arraycopy(batch._names, 0, names, named, batch._names.length);
+                Arrays.fill(ids, named, named + batch._names.length, -1);
+                
+                named += batch._names.length;
+                
+                for (int k = 0; k < batch._size; k++) {
+                    Statement statement = batch._statements[k];
+                    int labelId = statement.labelId();
+                    int symbolId = statement.symbolId();
+                    
+                    if (statement.isComment()) {
+                        Assembler.placeComment(statement, _store, _context);
+                        
+                        continue;
+                    } else if (Assembler.isSectionStart(statement, _store, _context)) {
+                        _next = batch._positions[k];
+                        _context.setLine(statement.line() - 1);
+                        
+                        stop();
+                        
+                        return;
+                    }
+                    
+                    if (labelId >= 0 && ids[labelId] < 0) {
+                        ids[labelId] = symbolTable.id(names[labelId]);
+                    }
+                    
+                    if (symbolId >= 0 && ids[symbolId] < 0) {
+                        ids[symbolId] = symbolTable.id(names[symbolId]);
+                    }
+                    
+                    statement.setSymbolIds(labelId >= 0 ? ids[labelId] : -1, symbolId >= 0 ? ids[symbolId] : -1);
+                    _assembler.place(statement, batch._lengths[k], _store, _context);
+                }
+                
+                _batches++;
+                _items += batch._size;
+            }
+        }
+    }
+    
+    // Encodes the placed statements up to END against its own copy of the context; END and the
+    // comments go along for the listing
+    private class Encoder extends Stage {
+        private final StatementStore _store;
+        private final RingBuffer<Code> _code;
+        private final RingBuffer<Code> _free;
+        private final AssemblyContext _context;
+        
+        private Encoder(StatementStore store, RingBuffer<Code> code, RingBuffer<Code> free, AssemblyContext parent) {
+            super("encode", null, code, Stage.metrics(parent));
+            
+            _store = store;
+            _code = code;
+            _free = free;
+            _context = new AssemblyContext(parent);
+            
+            _context.setMetrics(_metrics);
+        }
+        
+        @Override
+        void process() {
+            Code batch = next();
+            
+            for (Statement statement : _store) {
+                int offset = batch._code.length();
+                
+                batch._statements[batch._size] = statement;
+                batch._offsets[batch._size] = offset;
+                
+                if (_metrics != null) {
+                    _metrics.begin(AssemblyMetrics.Phase.ENCODE);
+                }
+                
+                try {
+                    _assembler.assembleInstruction(statement, _context, batch._code);
+                } catch (UndefinedSymbolException | DisplacementOutOfRangeException | InvalidExpressionException e) {
+                    _context.addError(e.getMessage());
+                    
+                    batch._code.truncate(offset);
+                }
+                
+                if (_metrics != null) {
+                    _metrics.end(AssemblyMetrics.Phase.ENCODE);
+                }
+                
+                if (++batch._size == BATCH_STATEMENTS) {
+                    put(batch);
+                    
+                    batch = next();
+                }
+                
+                if (statement.compareTo("END") == 0) {
+                    break;
+                }
+            }
+            
+            if (batch._size > 0) {
+                put(batch);
+            }
+        }
+        
+        // A batch the writer is done with, or a new one
+        private Code next() {
+            Code batch = _free.poll();
+            
+            if (batch == null) {
+                return new Code();
+            }
+            
+            batch._code.clear();
+            batch._size = 0;
+            
+            return batch;
+        }
+        
+        private void put(Code batch) {
+            batch._offsets[batch._size] = batch._code.length();
+            
+            _batches++;
+            _items += batch._size;
+            
+            _code.put(batch);
+        }
+    }
+    
+    // Writes the section records and packs the code into text and modification records
+    private static class Writer extends Stage {
+        private final RingBuffer<Code> _code;
+        private final RingBuffer<Code> _free;
+        private final RecordWriter _objectProgram;
+        private final AssemblyContext _context;
+        private final int _recordLength;
+        
+        private Writer(RingBuffer<Code> code, RingBuffer<Code> free, RecordWriter objectProgram, AssemblyContext context, int recordLength) {
+            super("write", code, null, null);
+            
+            _code = code;
+            _free = free;
+            _objectProgram = objectProgram;
+            _context = context;
+            _recordLength = recordLength;
+        }
+        
+        @Override
+        void process() throws IOException {
+            RecordPacker packer = new RecordPacker(_objectProgram, _context.symbolTable(), _context.startAddress(), _recordLength, _context.listing());
+            Code batch;
+            
+            while ((batch = _code.take()) != null) {
+                byte[] code = batch._code.data();
+                
+                for (int k = 0; k < batch._size; k++) {
+                    Statement statement = batch._statements[k];
+                    
+                    if (statement.isComment() || statement.compareTo("END") == 0) {
+                        Assembler.list(statement, _context);
+                    } else if (Assembler.writeSectionRecords(statement, _objectProgram, _context) == false) {
+                        packer.add(statement, code, batch._offsets[k], batch._offsets[k + 1] - batch._offsets[k]);
+                    }
+                }
+                
+                _batches++;
+                _items += batch._size;
+                
+                _free.offer(batch);
+            }
+            
+            packer.finish(_context.firstExecAddress());
+        }
+    }
+}
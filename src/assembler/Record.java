@@ -1,5 +1,9 @@
 package assembler;
 
+import java.io.IOException;
+
 public interface Record {
     public String toObjectProgram();
+    
+    public void writeTo(RecordWriter writer) throws IOException;
 }
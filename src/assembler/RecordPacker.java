@@ -0,0 +1,102 @@
+package assembler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Packs the encoded statements of pass 2 into text records, in statement order. Addresses are final
+// by then, so a record holds one run of consecutive bytes and is broken exactly where the next code
+// does not follow on, after RESB, RESW or ORG. Within a run every record is filled, code that does
+// not fit going on in the next one, which takes the fewest records the run can be loaded from
+class RecordPacker {
+    private final RecordWriter _writer;
+    private final SymbolTable _symbolTable;
+    private final List<Record> _mRecords;
+    private final TextRecord _textRecord;
+    private final Listing _listing;
+    
+    RecordPacker(RecordWriter writer, SymbolTable symbolTable, int startAddr, int recordLength, Listing listing) {
+        _writer = writer;
+        _symbolTable = symbolTable;
+        _listing = listing;
+        _mRecords = new ArrayList<>();
+        _textRecord = new TextRecord(startAddr, recordLength);
+    }
+    
+    public void add(Statement statement, byte[] code, int offset, int length) throws IOException {
+        Expression expression = statement.expression();
+        
+        if (_listing != null) {
+            _listing.add(statement, code, offset, length);
+        }
+        
+        // If it is format 4 and refers to an address, of this section or of another one
+        if (expression != null && (statement.isExtended() || statement.instruction() == null)) {
+            addModifications(statement, expression);
+        } else if (statement.isExtended() && _symbolTable.isExternal(statement.symbolId())) {
+            addModification(statement.location() + 1, 5, '+', statement.symbolId());
+        } else if (statement.isExtended() && _symbolTable.isDefined(statement.symbolId()) && _symbolTable.isAbsolute(statement.symbolId()) == false) {
+            addModification(statement.location() + 1, 5, '+', -1);
+        }
+        
+        if (length == 0) {
+            return;
+        } else if (_textRecord.length() > 0 && statement.location() != _textRecord.endAddress()) {
+            _textRecord.writeTo(_writer);
+            _textRecord.reset(statement.location());
+        } else if (_textRecord.length() == 0) {
+            _textRecord.reset(statement.location());
+        }
+        
+        // Code that does not fit goes on in the next record
+        for (int written = 0; ; ) {
+            int n = Math.min(length - written, _textRecord.room());
+            
+            _textRecord.add(code, offset + written, n);
+            written += n;
+            
+            if (written == length) {
+                break;
+            }
+            
+            _textRecord.writeTo(_writer);
+            _textRecord.reset(statement.location() + written);
+        }
+    }
+    
+    // The address field of a format 4 instruction or a WORD holding an expression: relocated when
+    // the value is relative, and patched by each external symbol with its sign
+    private void addModifications(Statement statement, Expression expression) {
+        int location = statement.isExtended() ? statement.location() + 1 : statement.location();
+        int halfBytes = statement.isExtended() ? 5 : 6;
+        
+        if (expression.isRelative()) {
+            addModification(location, halfBytes, '+', -1);
+        }
+        
+        for (int k = 0; k < expression.externals().length; k++) {
+            addModification(location, halfBytes, expression.sign(k), expression.externals()[k]);
+        }
+    }
+    
+    // Relocates the field at the location by the program's address, or by the external symbol id
+    private void addModification(int location, int halfBytes, char sign, int id) {
+        _mRecords.add(id < 0 ? new ModificationRecord(location, halfBytes) : new ModificationRecord(location, halfBytes, sign, _symbolTable.name(id)));
+        
+        if (_listing != null) {
+            _listing.addModification(location, halfBytes, sign, id);
+        }
+    }
+    
+    public void finish(int firstExecAddr) throws IOException {
+        if (_textRecord.length() > 0) {
+            _textRecord.writeTo(_writer);
+        }
+        
+        for (Record r : _mRecords) {
+            r.writeTo(_writer);
+        }
+        
+        new EndRecord(firstExecAddr).writeTo(_writer);
+    }
+}
@@ -0,0 +1,21 @@
+package assembler;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface RecordWriter extends Closeable {
+    public void header(String name, int startAddr, int length) throws IOException;
+    
+    public void text(int startAddr, byte[] code, int offset, int length) throws IOException;
+    
+    public void modification(int modifiedLoc, int modifiedLen) throws IOException;
+    
+    // A field that the linker adds the address of an external symbol to, or subtracts it from
+    public void modification(int modifiedLoc, int modifiedLen, char sign, String symbol) throws IOException;
+    
+    public void define(String[] names, int[] addresses) throws IOException;
+    
+    public void refer(String[] names) throws IOException;
+    
+    public void end(int firstExecAddr) throws IOException;
+}
@@ -0,0 +1,28 @@
+package assembler;
+
+import java.io.IOException;
+
+public class ReferRecord implements Record {
+    private final String[] _names;
+    
+    public ReferRecord(String[] names) {
+        _names = names;
+    }
+    
+    @Override
+    public String toObjectProgram() {
+        StringBuilder sb = new StringBuilder("R");
+        
+        for (String name : _names) {
+            sb.append(String.format("%-6s", name));
+        }
+        
+        return sb.toString();
+    }
+    
+    @Override
+    public void writeTo(RecordWriter writer) throws IOException {
+        writer.refer(_names);
+    }
+    
+}
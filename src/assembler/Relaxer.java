@@ -0,0 +1,475 @@
+package assembler;
+
+import java.util.Arrays;
+
+// Branch relaxation: promotes unmarked format 3 instructions whose operand is reachable neither
+// PC-relative nor base-relative to format 4, until no instruction needs promoting.
+//
+// Promotions only ever grow the program, so the fixpoint is reached after at most one promotion
+// per instruction. A promotion at statement u moves every later statement by one byte; statement
+// locations are derived from pass 1 locations plus a Fenwick tree of promotions, and only the
+// instructions whose operand span (instruction, target, base) straddles u are checked again.
+class Relaxer {
+    private final Statement[] _statements;
+    private final AssemblyContext _context;
+    private final SymbolTable _symbolTable;
+    private final int _size;
+    private final int[] _location;    // pass 1 locations
+    private final int[] _segment;     // last START at or before each statement
+    private final int[] _definition;  // symbol id -> defining statement, -1 if none
+    private final int[] _target;      // statement -> symbol its operand is relative to, -1 if none
+    private final int[] _offset;      // operand value minus the address of that symbol
+    private final int[] _base;        // statement -> BASE symbol in effect, -1 if none
+    private final int[] _tree;        // Fenwick tree of promotions
+    private int _promotions;
+    private boolean _origin;          // an ORG, which may overlay code that promotions would move
+    
+    Relaxer(StatementStore store, AssemblyContext context) {
+        _statements = new Statement[store.size()];
+        _context = context;
+        _symbolTable = context.symbolTable();
+        _size = _statements.length;
+        _location = new int[_size];
+        _segment = new int[_size];
+        _definition = new int[_symbolTable.size()];
+        _target = new int[_size];
+        _offset = new int[_size];
+        _base = new int[_size];
+        _tree = new int[_size + 1];
+        _promotions = 0;
+        _origin = false;
+        
+        Arrays.fill(_definition, -1);
+        
+        int segment = 0;
+        int base = -1;
+        int k = 0;
+        
+        for (Statement statement : store) {
+            _statements[k] = statement;
+            
+            if (statement.compareTo("START") == 0 || statement.compareTo("CSECT") == 0) {
+                segment = k;
+            } else if (statement.compareTo("BASE") == 0 && _symbolTable.isDefined(statement.symbolId())) {
+                base = statement.symbolId();
+            } else if (statement.compareTo("NOBASE") == 0) {
+                base = -1;
+            } else if (statement.compareTo("ORG") == 0) {
+                _origin = true;
+            }
+            
+            if (statement.labelId() >= 0 && _definition[statement.labelId()] < 0) {
+                _definition[statement.labelId()] = k;
+            }
+            
+            _location[k] = statement.location();
+            _segment[k] = segment;
+            _base[k] = base;
+            k++;
+        }
+        
+        // An absolute EQU never moves; a relative one moves with the first label it uses, or else
+        // with its own statement as for EQU *
+        Equates equates = context.equates();
+        
+        for (int e = 0; e < equates.size(); e++) {
+            int id = equates.id(e);
+            int anchor = equates.expression(e).anchor(_symbolTable);
+            
+            if (_symbolTable.isAbsolute(id)) {
+                _definition[id] = -1;
+            } else if (anchor >= 0 && _definition[anchor] >= 0) {
+                _definition[id] = _definition[anchor];
+            }
+        }
+    }
+    
+    // Returns the number of promoted instructions
+    int relax() {
+        if (_origin) {
+            _context.addError("Relaxation cannot move code that ORG may overlay");
+            
+            return 0;
+        }
+        
+        int[] candidates = new int[_size];
+        int count = 0;
+        
+        for (int k = 0; k < _size; k++) {
+            target(k);
+        }
+        
+        for (int k = 0; k < _size; k++) {
+            if (isCandidate(k)) {
+                candidates[count++] = k;
+            } else if (isLargeConstant(_statements[k]) || isExternalReference(_statements[k])) {
+                promote(k);
+            }
+        }
+        
+        Intervals spans = new Intervals(_size);
+        
+        for (int c = 0; c < count; c++) {
+            int u = candidates[c];
+            
+            spans.add(u, Math.min(u, lowest(u)), Math.max(u, highest(u)));
+        }
+        
+        spans.build();
+        
+        int[] worklist = Arrays.copyOf(candidates, count);
+        boolean[] queued = new boolean[_size];
+        int top = count;
+        
+        for (int c = 0; c < count; c++) {
+            queued[candidates[c]] = true;
+        }
+        
+        while (top > 0) {
+            int u = worklist[--top];
+            
+            queued[u] = false;
+            
+            if (_statements[u].isExtended() || fits(u)) {
+                continue;
+            }
+            
+            promote(u);
+            
+            for (int v = spans.first(u); v >= 0; v = spans.next()) {
+                if (queued[v] == false && _statements[v].isExtended() == false) {
+                    if (top == worklist.length) {
+                        worklist = Arrays.copyOf(worklist, worklist.length * 2);
+                    }
+                    
+                    worklist[top++] = v;
+                    queued[v] = true;
+                }
+            }
+        }
+        
+        apply();
+        
+        if (_context.metrics() != null) {
+            _context.metrics().add(AssemblyMetrics.Counter.FORMAT4, _promotions);
+        }
+        
+        return _promotions;
+    }
+    
+    // The label a format 3 operand is relative to, and how far from it: the symbol itself, or the
+    // first label of an expression such as BUFFER+3
+    private void target(int k) {
+        Statement statement = _statements[k];
+        Operation op = statement.instruction();
+        
+        _target[k] = -1;
+        
+        if (op == null || op.format() != Format.THREE_FOUR || statement.isExtended() || statement.operand1() == null) {
+            return;
+        }
+        
+        int symbolId = statement.symbolId();
+        
+        if (_symbolTable.isDefined(symbolId) && _symbolTable.isExternal(symbolId) == false && _symbolTable.isAbsolute(symbolId) == false) {
+            _target[k] = symbolId;
+            _offset[k] = 0;
+        } else if (symbolId < 0) {
+            Expression expression = expression(statement);
+            
+            if (expression != null && expression.isRelative()) {
+                int anchor = expression.anchor(_symbolTable);
+                
+                if (anchor >= 0) {
+                    _target[k] = anchor;
+                    _offset[k] = expression.value() - _symbolTable.address(anchor);
+                }
+            }
+        }
+    }
+    
+    private boolean isCandidate(int k) {
+        return _target[k] >= 0 && _definition[_target[k]] >= 0;
+    }
+    
+    // Another control section is reached only through a modification record, which needs format 4
+    private boolean isExternalReference(Statement statement) {
+        Operation op = statement.instruction();
+        
+        if (op == null || op.format() != Format.THREE_FOUR || statement.isExtended() || statement.operand1() == null) {
+            return false;
+        } else if (_symbolTable.isExternal(statement.symbolId())) {
+            return true;
+        }
+        
+        Expression expression = statement.symbolId() < 0 ? expression(statement) : null;
+        
+        return expression != null && expression.isExternal();
+    }
+    
+    // A number or absolute operand that fits the 20 bit address of format 4 but not the 12 bit displacement
+    private boolean isLargeConstant(Statement statement) {
+        Operation op = statement.instruction();
+        
+        if (op == null || op.format() != Format.THREE_FOUR || statement.isExtended() || statement.operand1() == null) {
+            return false;
+        }
+        
+        int value;
+        
+        if (statement.symbolId() >= 0) {
+            if (_symbolTable.isAbsolute(statement.symbolId()) == false || _symbolTable.isDefined(statement.symbolId()) == false) {
+                return false;
+            }
+            
+            value = _symbolTable.address(statement.symbolId());
+        } else {
+            Expression expression = expression(statement);
+            
+            if (expression == null || expression.isRelative() || expression.isExternal()) {
+                return false;
+            }
+            
+            value = expression.value();
+        }
+        
+        return value > 0xFFF && value <= 0xFFFFF;
+    }
+    
+    // The operand of a format 3 instruction without a symbol id as an expression at its pass 1
+    // location; null for a literal, or when it is invalid, which pass 2 reports
+    private Expression expression(Statement statement) {
+        String operand = statement.operand1();
+        int start = (Assembler.addressingFlags(statement) & (Assembler.N | Assembler.I)) == (Assembler.N | Assembler.I) ? 0 : 1;
+        
+        try {
+            Expression expression = Expression.compile(operand.substring(start), _symbolTable, false);
+            
+            expression.evaluate(_symbolTable, statement.location());
+            
+            return expression;
+        } catch (UndefinedSymbolException | InvalidExpressionException e) {
+            return null;
+        }
+    }
+    
+    private int lowest(int u) {
+        int base = _base[u];
+        int low = _definition[_target[u]];
+        
+        return base >= 0 && _definition[base] >= 0 ? Math.min(low, _definition[base]) : low;
+    }
+    
+    private int highest(int u) {
+        int base = _base[u];
+        int high = _definition[_target[u]];
+        
+        return base >= 0 && _definition[base] >= 0 ? Math.max(high, _definition[base]) : high;
+    }
+    
+    private boolean fits(int u) {
+        int target = address(_target[u]) + _offset[u];
+        int disp = target - (location(u) + 3);
+        
+        if (disp >= -2048 && disp <= 2047) {
+            return true;
+        }
+        
+        int base = _base[u];
+        
+        if (base >= 0) {
+            disp = target - address(base);
+            
+            return disp >= 0 && disp <= 4095;
+        }
+        
+        return false;
+    }
+    
+    private void promote(int u) {
+        _statements[u].setExtended(true);
+        _promotions++;
+        
+        for (int i = u + 1; i <= _size; i += i & -i) {
+            _tree[i]++;
+        }
+    }
+    
+    // Promotions among the statements before k
+    private int promoted(int k) {
+        int sum = 0;
+        
+        for (int i = k; i > 0; i -= i & -i) {
+            sum += _tree[i];
+        }
+        
+        return sum;
+    }
+    
+    // Growth of statement k since pass 1; START resets the location counter, so only promotions after it count
+    private int shift(int k) {
+        return promoted(k) - promoted(_segment[k]);
+    }
+    
+    private int location(int k) {
+        return _location[k] + shift(k);
+    }
+    
+    private int address(int symbolId) {
+        int k = _definition[symbolId];
+        
+        return _symbolTable.address(symbolId) + (k >= 0 ? shift(k) : 0);
+    }
+    
+    private void apply() {
+        if (_promotions == 0) {
+            return;
+        }
+        
+        int[] addresses = new int[_definition.length];
+        
+        for (int id = 0; id < _definition.length; id++) {
+            addresses[id] = address(id);
+        }
+        
+        for (int id = 0; id < _definition.length; id++) {
+            if (_definition[id] >= 0) {
+                _symbolTable.setAddress(id, addresses[id]);
+            }
+        }
+        
+        boolean first = true;
+        
+        for (int k = 0; k < _size; k++) {
+            if (first && _statements[k].instruction() != null) {
+                _context.setFirstExecAddress(location(k));
+                first = false;
+            }
+            
+            _statements[k].setLocation(location(k));
+        }
+        
+        _context.equates().reevaluate(_context);
+        
+        int last = _size > 0 ? _segment[_size - 1] : 0;
+        
+        _context.setLocctr(_context.locctr() + promoted(_size) - promoted(last));
+        _context.setProgramLength(_context.locctr() - _context.startAddress());
+    }
+    
+    // Static intervals [low, high] over statement indices with a stabbing query: a segment tree
+    // whose nodes list the intervals covering them, walked from the root to the leaf of the point
+    private static class Intervals {
+        private final int _n;
+        private int[] _low;
+        private int[] _high;
+        private int[] _values;
+        private int _count;
+        private int[] _start;          // node -> first entry in _entries
+        private int[] _entries;
+        private int _point;
+        private int _node;
+        private int _from;
+        private int _to;
+        private int _entry;
+        
+        private Intervals(int n) {
+            _n = Math.max(n, 1);
+            _low = new int[16];
+            _high = new int[16];
+            _values = new int[16];
+            _count = 0;
+        }
+        
+        private void add(int value, int low, int high) {
+            if (_count == _low.length) {
+                _low = Arrays.copyOf(_low, _count * 2);
+                _high = Arrays.copyOf(_high, _count * 2);
+                _values = Arrays.copyOf(_values, _count * 2);
+            }
+            
+            _low[_count] = low;
+            _high[_count] = high;
+            _values[_count] = value;
+            _count++;
+        }
+        
+        private void build() {
+            int nodes = 4 * _n;
+            int[] counts = new int[nodes];
+            
+            for (int i = 0; i < _count; i++) {
+                insert(1, 0, _n - 1, i, counts, null);
+            }
+            
+            _start = new int[nodes + 1];
+            
+            for (int node = 0; node < nodes; node++) {
+                _start[node + 1] = _start[node] + counts[node];
+            }
+            
+            _entries = new int[_start[nodes]];
+            
+            int[] fill = Arrays.copyOf(_start, nodes);
+            
+            for (int i = 0; i < _count; i++) {
+                insert(1, 0, _n - 1, i, fill, _entries);
+            }
+        }
+        
+        // Counts the nodes covered by interval i, or stores it in them
+        private void insert(int node, int from, int to, int i, int[] counts, int[] entries) {
+            if (_high[i] < from || to < _low[i]) {
+                return;
+            }
+            
+            if (_low[i] <= from && to <= _high[i]) {
+                if (entries == null) {
+                    counts[node]++;
+                } else {
+                    entries[counts[node]++] = i;
+                }
+                
+                return;
+            }
+            
+            int middle = (from + to) >>> 1;
+            
+            insert(2 * node, from, middle, i, counts, entries);
+            insert(2 * node + 1, middle + 1, to, i, counts, entries);
+        }
+        
+        // Iterates the intervals containing the point: first(point), then next() until -1
+        private int first(int point) {
+            _point = point;
+            _node = 1;
+            _from = 0;
+            _to = _n - 1;
+            _entry = _start[1];
+            
+            return next();
+        }
+        
+        private int next() {
+            while (_entry == _start[_node + 1]) {
+                if (_from == _to) {
+                    return -1;
+                }
+                
+                int middle = (_from + _to) >>> 1;
+                
+                if (_point <= middle) {
+                    _node = 2 * _node;
+                    _to = middle;
+                } else {
+                    _node = 2 * _node + 1;
+                    _from = middle + 1;
+                }
+                
+                _entry = _start[_node];
+            }
+            
+            return _values[_entries[_entry++]];
+        }
+    }
+}
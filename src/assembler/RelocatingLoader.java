@@ -0,0 +1,263 @@
+package assembler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Loads object programs into one memory at any address. Text records are copied as they are read, and
+// the modification records of a program are applied together at its end record, sorted by location so
+// the image is patched in a single forward pass
+public class RelocatingLoader {
+    private final byte[] _memory;
+    private int _next;
+    private long[] _modifications;    // location << 8 | half bytes, in program addresses
+    private int _modificationCount;
+    private long _records;
+    private long _bytes;
+    
+    public RelocatingLoader(byte[] memory) {
+        this(memory, 0);
+    }
+    
+    public RelocatingLoader(byte[] memory, int address) {
+        _memory = memory;
+        _next = address;
+        _modifications = new long[64];
+        _modificationCount = 0;
+        _records = 0;
+        _bytes = 0;
+    }
+    
+    public byte[] memory() {
+        return _memory;
+    }
+    
+    // Where the next program without an explicit address goes
+    public int next() {
+        return _next;
+    }
+    
+    // Records and text bytes loaded so far
+    public long records() {
+        return _records;
+    }
+    
+    public long bytes() {
+        return _bytes;
+    }
+    
+    public Program load(File object) throws IOException {
+        return load(object, _next);
+    }
+    
+    public Program load(File object, int address) throws IOException {
+        Loading loading = new Loading(address);
+        
+        if (BinaryObjectReader.isBinary(object)) {
+            try (BinaryObjectReader reader = new BinaryObjectReader(object)) {
+                reader.read(loading);
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(object.toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                
+                ObjectProgramReader.read(buffer, loading);
+            }
+        }
+        
+        return loading.program();
+    }
+    
+    // Places the programs one after another from the next free address
+    public List<Program> loadAll(List<File> objects) throws IOException {
+        List<Program> programs = new ArrayList<>(objects.size());
+        
+        for (File object : objects) {
+            programs.add(load(object));
+        }
+        
+        return programs;
+    }
+    
+    // Adds to the field of the given number of half bytes that ends on a byte boundary, wrapping within
+    // the field
+    static void add(byte[] memory, int address, int halfBytes, int addend) {
+        int size = (halfBytes + 1) / 2;
+        int value = 0;
+        
+        for (int i = 0; i < size; i++) {
+            value = value << 8 | memory[address + i] & 0xFF;
+        }
+        
+        int mask = (1 << 4 * halfBytes) - 1;
+        
+        value = value & ~mask | (value + addend) & mask;
+        
+        for (int i = size - 1; i >= 0; i--) {
+            memory[address + i] = (byte) value;
+            value >>= 8;
+        }
+    }
+    
+    public static class Program {
+        private final String _name;
+        private final int _address;
+        private final int _length;
+        private final int _entry;
+        
+        public Program(String name, int address, int length, int entry) {
+            _name = name;
+            _address = address;
+            _length = length;
+            _entry = entry;
+        }
+        
+        public String name() {
+            return _name;
+        }
+        
+        public int address() {
+            return _address;
+        }
+        
+        public int length() {
+            return _length;
+        }
+        
+        // The relocated first executable instruction
+        public int entry() {
+            return _entry;
+        }
+    }
+    
+    private class Loading implements RecordWriter {
+        private final int _address;
+        private String _name;
+        private int _delta;
+        private int _length;              // -1 without a header record
+        private int _extent;
+        private int _entry;
+        private boolean _sorted;
+        private Program _program;
+        
+        private Loading(int address) {
+            _address = address;
+            _name = "";
+            _delta = address;
+            _length = -1;
+            _extent = address;
+            _entry = address;
+            _sorted = true;
+            _modificationCount = 0;
+        }
+        
+        @Override
+        public void header(String name, int startAddr, int length) throws IOException {
+            if (_length >= 0) {
+                throw new IOException("Program " + _name + " has more than one control section; link it instead");
+            } else if (_address < 0 || _address + length > _memory.length) {
+                throw new IOException(String.format("Program %s of %06X bytes does not fit at %06X", name, length, _address));
+            }
+            
+            _name = name;
+            _delta = _address - startAddr;
+            _length = length;
+            _entry = _address;
+            _records++;
+        }
+        
+        @Override
+        public void text(int startAddr, byte[] code, int offset, int length) throws IOException {
+            int address = startAddr + _delta;
+            
+            if (address < _address || address + length > limit()) {
+                throw new IOException(String.format("Text record at %06X lies outside program %s", startAddr, _name));
+            }
+            
+            System.arraycopy(code, offset, _memory, address, length);
+            _extent = Math.max(_extent, address + length);
+            _records++;
+            _bytes += length;
+        }
+        
+        @Override
+        public void modification(int modifiedLoc, int modifiedLen) {
+            long modification = (long) modifiedLoc << 8 | modifiedLen;
+            
+            if (_modificationCount == _modifications.length) {
+                _modifications = Arrays.copyOf(_modifications, _modificationCount * 2);
+            }
+            
+            if (_modificationCount > 0 && _modifications[_modificationCount - 1] > modification) {
+                _sorted = false;
+            }
+            
+            _modifications[_modificationCount++] = modification;
+            _records++;
+        }
+        
+        @Override
+        public void modification(int modifiedLoc, int modifiedLen, char sign, String symbol) throws IOException {
+            throw new IOException("External symbol " + symbol + " of program " + _name + " needs linking");
+        }
+        
+        @Override
+        public void define(String[] names, int[] addresses) {
+            _records++;
+        }
+        
+        @Override
+        public void refer(String[] names) {
+            _records++;
+        }
+        
+        @Override
+        public void end(int firstExecAddr) throws IOException {
+            if (_sorted == false) {
+                Arrays.sort(_modifications, 0, _modificationCount);
+            }
+            
+            for (int i = 0; i < _modificationCount; i++) {
+                relocate((int) (_modifications[i] >>> 8), (int) _modifications[i] & 0xFF);
+            }
+            
+            _modificationCount = 0;
+            _entry = firstExecAddr >= 0 ? firstExecAddr + _delta : _address;
+            _records++;
+        }
+        
+        // Adds the load offset to a field; an odd count of half bytes starts in the low half of the first byte
+        private void relocate(int location, int halfBytes) throws IOException {
+            int address = location + _delta;
+            int size = (halfBytes + 1) / 2;
+            
+            if (halfBytes > 6 || address < _address || address + size > limit()) {
+                throw new IOException(String.format("Modification record at %06X lies outside program %s", location, _name));
+            }
+            
+            add(_memory, address, halfBytes, _delta);
+        }
+        
+        private int limit() {
+            return _length >= 0 ? _address + _length : _memory.length;
+        }
+        
+        private Program program() {
+            if (_program == null) {
+                _program = new Program(_name, _address, _length >= 0 ? _length : _extent - _address, _entry);
+                _next = Math.max(_next, _address + _length);
+            }
+            
+            return _program;
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package assembler;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// A bounded queue from one producer thread to one consumer thread. The producer alone moves the
+// tail and the consumer alone the head, so neither takes a lock, and each keeps a cached copy of
+// the other's index that it only rereads when the ring looks full or empty. A producer that finds
+// the ring full waits, which holds back every stage before it
+class RingBuffer<T> {
+    // Spinning only helps while the other end runs on another processor
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 256 : 0;
+    private static final long PARK_NANOS = 20_000;
+    
+    private final Object[] _slots;
+    private final int _mask;
+    private final AtomicLong _head;       // next slot to take
+    private final AtomicLong _tail;       // next slot to put
+    private long _cachedHead;             // the producer's view of the head
+    private long _cachedTail;             // the consumer's view of the tail
+    private volatile boolean _closed;
+    private volatile boolean _aborted;
+    private long _fullNanos;              // time the producer waited for room
+    private long _emptyNanos;             // time the consumer waited for items
+    
+    RingBuffer(int capacity) {
+        capacity = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1);
+        
+        _slots = new Object[capacity];
+        _mask = capacity - 1;
+        _head = new AtomicLong();
+        _tail = new AtomicLong();
+        _cachedHead = _cachedTail = 0;
+    }
+    
+    // Adds an item, waiting while the ring is full
+    void put(T item) {
+        long tail = _tail.get();
+        
+        if (tail - _cachedHead == _slots.length && tail - (_cachedHead = _head.get()) == _slots.length) {
+            long start = System.nanoTime();
+            
+            for (int spins = 0; tail - (_cachedHead = _head.get()) == _slots.length; spins++) {
+                backoff(spins);
+            }
+            
+            _fullNanos += System.nanoTime() - start;
+        }
+        
+        _slots[(int) tail & _mask] = item;
+        _tail.lazySet(tail + 1);
+    }
+    
+    // Adds an item unless the ring is full
+    boolean offer(T item) {
+        long tail = _tail.get();
+        
+        if (tail - _cachedHead == _slots.length && tail - (_cachedHead = _head.get()) == _slots.length) {
+            return false;
+        }
+        
+        _slots[(int) tail & _mask] = item;
+        _tail.lazySet(tail + 1);
+        
+        return true;
+    }
+    
+    // The next item, waiting for one; null once the ring is closed and empty
+    T take() {
+        long head = _head.get();
+        
+        if (head == _cachedTail && head == (_cachedTail = _tail.get())) {
+            long start = System.nanoTime();
+            
+            for (int spins = 0; ; spins++) {
+                boolean closed = _closed;
+                
+                if (head != (_cachedTail = _tail.get())) {
+                    break;
+                } else if (closed) {
+                    _emptyNanos += System.nanoTime() - start;
+                    
+                    return null;
+                }
+                
+                backoff(spins);
+            }
+            
+            _emptyNanos += System.nanoTime() - start;
+        }
+        
+        return remove(head);
+    }
+    
+    // The next item, or null when the ring is empty
+    T poll() {
+        long head = _head.get();
+        
+        if (head == _cachedTail && head == (_cachedTail = _tail.get())) {
+            return null;
+        }
+        
+        return remove(head);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private T remove(long head) {
+        int slot = (int) head & _mask;
+        T item = (T) _slots[slot];
+        
+        _slots[slot] = null;
+        _head.lazySet(head + 1);
+        
+        return item;
+    }
+    
+    // No more items will be put; take returns null once the rest are taken
+    void close() {
+        _closed = true;
+    }
+    
+    // Makes both ends give up waiting, after a stage failed
+    void abort() {
+        _aborted = true;
+    }
+    
+    long fullNanos() {
+        return _fullNanos;
+    }
+    
+    long emptyNanos() {
+        return _emptyNanos;
+    }
+    
+    // Spins briefly, then yields, then parks, so a stalled stage stops burning a core
+    private void backoff(int spins) {
+        if (_aborted) {
+            throw new CancellationException("Pipeline stage failed");
+        }
+        
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        } else if (spins < 2 * SPINS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package assembler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+// Assembles a source of one or more control sections. A section runs from its START or CSECT line to
+// the next CSECT and has its own symbols and locations, so pass 1 stops at the CSECT that begins the
+// next section, and the finished section goes through pass 2 in parallel while pass 1 goes on with
+// the next one. The first section is assembled in the caller's context straight into its object
+// program; the others into buffers that are then written out in source order
+class SectionAssembler {
+    private final Assembler _assembler;
+    private final int _memoryLimit;
+    private final int _parallelism;
+    
+    SectionAssembler(Assembler assembler, int memoryLimit, int parallelism) {
+        _assembler = assembler;
+        _memoryLimit = memoryLimit;
+        _parallelism = Math.max(1, parallelism);
+    }
+    
+    void assemble(File input, RecordWriter objectProgram, AssemblyContext context, AssemblyCache previous, AssemblyCache cache) throws IOException {
+        try (StatementStore intermediate = new StatementStore(_memoryLimit)) {
+            long next = _assembler.processPass1(input, 0, Long.MAX_VALUE, intermediate, context);
+            
+            assemble(input, intermediate, next, objectProgram, context, previous, cache);
+        }
+    }
+    
+    // Goes on from the first section, whose pass 1 is done up to the CSECT line at position next,
+    // or to the end of the source when next is negative
+    void assemble(File input, StatementStore intermediate, long next, RecordWriter objectProgram, AssemblyContext context, AssemblyCache previous, AssemblyCache cache) throws IOException {
+        Section first = new Section(intermediate, context, objectProgram, previous, cache);
+        
+        if (next < 0) {
+            first.call();
+            
+            return;
+        }
+        
+        Future<Section> firstDone = submit(first);
+        ArrayDeque<Future<Section>> pending = new ArrayDeque<>();
+        int line = context.line();
+        
+        while (next >= 0) {
+            Section section = new Section(context, previous, cache);
+            
+            // The lines are numbered on from where the section before stopped
+            section._context.setLine(line);
+            
+            try {
+                next = _assembler.processPass1(input, next, Long.MAX_VALUE, section._intermediate, section._context);
+            } catch (IOException | RuntimeException e) {
+                section._intermediate.close();
+                
+                throw e;
+            }
+            
+            line = section._context.line();
+            
+            pending.add(submit(section));
+            
+            if (pending.size() >= 2 * _parallelism) {
+                Assembler.await(firstDone);
+                write(Assembler.await(pending.removeFirst()), objectProgram, context, cache);
+            }
+        }
+        
+        Assembler.await(firstDone);
+        
+        while (pending.isEmpty() == false) {
+            write(Assembler.await(pending.removeFirst()), objectProgram, context, cache);
+        }
+    }
+    
+    // Runs the section on the common pool, or right away when assembling on a single thread
+    private Future<Section> submit(Section section) {
+        if (_parallelism > 1) {
+            return ForkJoinPool.commonPool().submit(section);
+        }
+        
+        FutureTask<Section> future = new FutureTask<>(section);
+        
+        future.run();
+        
+        return future;
+    }
+    
+    private void write(Section section, RecordWriter objectProgram, AssemblyContext context, AssemblyCache cache) throws IOException {
+        AssemblyContext result = section._context;
+        
+        for (String error : result.errors()) {
+            context.addError(error);
+        }
+        
+        if (context.metrics() != null) {
+            context.metrics().merge(result.metrics());
+        }
+        
+        context.setProgramLength(context.programLength() + result.programLength());
+        
+        if (context.listing() != null) {
+            context.listing().append(section._listing.toByteArray());
+        }
+        
+        try (BinaryObjectReader reader = new BinaryObjectReader(new ByteArrayInputStream(section._object.toByteArray()))) {
+            reader.read(objectProgram);
+        }
+        
+        if (cache != null) {
+            cache.merge(section._cache);
+        }
+    }
+    
+    // Relaxation and pass 2 of one section, whose pass 1 is done
+    private class Section implements Callable<Section> {
+        private final StatementStore _intermediate;
+        private final AssemblyContext _context;
+        private final boolean _first;
+        private final RecordWriter _objectProgram;        // the caller's, for the first section
+        private final ByteArrayOutputStream _object;      // the buffers of the sections after it
+        private final ByteArrayOutputStream _listing;
+        private final AssemblyCache _previous;
+        private final AssemblyCache _cache;
+        
+        // The first section, in the caller's context
+        private Section(StatementStore intermediate, AssemblyContext context, RecordWriter objectProgram, AssemblyCache previous, AssemblyCache cache) {
+            _intermediate = intermediate;
+            _context = context;
+            _first = true;
+            _objectProgram = objectProgram;
+            _object = null;
+            _listing = null;
+            _previous = previous;
+            _cache = cache;
+        }
+        
+        // A later section, with its own context, statement store, listing and cache entries
+        private Section(AssemblyContext parent, AssemblyCache previous, AssemblyCache cache) {
+            _intermediate = new StatementStore(_memoryLimit);
+            _context = new AssemblyContext();
+            _first = false;
+            _objectProgram = null;
+            _object = new ByteArrayOutputStream();
+            _listing = parent.listing() != null ? new ByteArrayOutputStream() : null;
+            _previous = previous;
+            _cache = cache != null ? cache.section() : null;
+            
+            if (parent.metrics() != null) {
+                _context.setMetrics(new AssemblyMetrics(parent.metrics().name()));
+            }
+            
+            if (_listing != null) {
+                _context.setListing(new Listing(_listing, _context.symbolTable()));
+            }
+            
+            // Every section may invoke the macros, with labels of its own
+            if (parent.macros() != null) {
+                _context.setMacros(new MacroProcessor(parent.macros().table(), _context.symbolTable(), cache != null));
+            }
+        }
+        
+        @Override
+        public Section call() throws IOException {
+            AssemblyMetrics metrics = _context.metrics();
+            
+            try {
+                _assembler.relax(_intermediate, _context);
+                
+                // Only the first section has the entry point
+                if (_first == false) {
+                    _context.setFirstExecAddress(-1);
+                }
+                
+                if (metrics != null) {
+                    metrics.begin(AssemblyMetrics.Phase.PASS2);
+                }
+                
+                RecordWriter objectProgram = _first ? _objectProgram : new BinaryObjectWriter(_object);
+                
+                try {
+                    _assembler.processPass2(_intermediate, objectProgram, _context, _previous, _cache);
+                } finally {
+                    if (_first == false) {
+                        objectProgram.close();
+                    }
+                    
+                    // The listing of a section ends with the summaries of its own symbols
+                    if (_listing != null) {
+                        _context.listing().close();
+                    } else if (_context.listing() != null) {
+                        _context.listing().summarize();
+                    }
+                }
+                
+                if (metrics != null) {
+                    metrics.end(AssemblyMetrics.Phase.PASS2);
+                }
+            } finally {
+                // The store of the first section is the caller's
+                if (_first == false) {
+                    _intermediate.close();
+                }
+            }
+            
+            return this;
+        }
+    }
+}
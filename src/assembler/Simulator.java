@@ -0,0 +1,829 @@
+package assembler;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// A SIC/XE machine with a flat memory. Instructions are decoded once into a cache that stores to memory
+// invalidate, so loops run without repeating the fetch and decode
+public class Simulator implements Closeable {
+    public static final int MEMORY_SIZE = 1 << 20;
+    public static final int HALT = 0xFFFFFF;            // initial L: returning to it ends the program
+    public static final long DEFAULT_LIMIT = 1L << 32;
+    
+    private static final int MASK = MEMORY_SIZE - 1;
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+    
+    // A decoded instruction: the operand in the low 32 bits (the address of format 3/4, with PC-relative
+    // displacements already resolved, or the register byte of format 2), then the opcode, the length,
+    // the n and i bits and the indexed and base-relative flags
+    private static final long DECODED = 1L << 63;
+    private static final int OPCODE_SHIFT = 32;
+    private static final int LENGTH_SHIFT = 40;
+    private static final int NI_SHIFT = 43;
+    private static final long INDEXED = 1L << 45;
+    private static final long BASED = 1L << 46;
+    private static final int INVALID = 0xFF;
+    
+    private static final int IMMEDIATE = 1;
+    private static final int INDIRECT = 2;
+    
+    private static final Operation[] OPERATIONS = operations();
+    
+    private final byte[] _memory;
+    private final long[][] _decoded;    // by page, allocated when the page is first executed
+    private final Device[] _devices;
+    private final long[] _counts;
+    private File _deviceFiles;
+    private int _a;
+    private int _x;
+    private int _l;
+    private int _b;
+    private int _s;
+    private int _t;
+    private double _f;
+    private int _pc;
+    private int _sw;
+    private int _cc;                    // -1, 0 or 1 for less, equal and greater
+    
+    public Simulator() {
+        _memory = new byte[MEMORY_SIZE];
+        _decoded = new long[MEMORY_SIZE >> PAGE_BITS][];
+        _devices = new Device[256];
+        _counts = new long[256];
+        _deviceFiles = null;
+        _l = HALT;
+    }
+    
+    // Opcodes by first byte; format 3/4 opcodes take the four values of the n and i bits
+    private static Operation[] operations() {
+        Operation[] operations = new Operation[256];
+        
+        for (Operation op : Utility.getOperationTable().operations()) {
+            if (op.format() == Format.THREE_FOUR) {
+                for (int ni = 0; ni < 4; ni++) {
+                    operations[op.opcode() | ni] = op;
+                }
+            } else {
+                operations[op.opcode()] = op;
+            }
+        }
+        
+        return operations;
+    }
+    
+    // Loads text and binary object programs at their assembled addresses, linking their control sections,
+    // and starts at the first end record with an address
+    public void load(File object) throws IOException {
+        link(Collections.singletonList(object), -1);
+    }
+    
+    // Links the control sections of the programs one after another from the given address, or from the
+    // assembled address of the first when it is negative
+    public void link(List<File> objects, int address) throws IOException {
+        LinkingLoader linker = new LinkingLoader(_memory);
+        int entry = linker.link(objects, address);
+        
+        Arrays.fill(_decoded, null);
+        
+        if (linker.errors().isEmpty() == false) {
+            throw new IOException(String.join("\n", linker.errors()));
+        }
+        
+        _pc = entry >= 0 ? entry : linker.sections().isEmpty() ? 0 : linker.sections().get(0).address();
+    }
+    
+    // Relocates the program to the given address
+    public RelocatingLoader.Program load(File object, int address) throws IOException {
+        RelocatingLoader.Program program = new RelocatingLoader(_memory).load(object, address);
+        
+        Arrays.fill(_decoded, null);
+        _pc = program.entry();
+        
+        return program;
+    }
+    
+    // Loads an image where it was assembled and starts at its entry point; a given address moves both
+    public void loadImage(File image, int address) throws IOException {
+        byte[] bytes = Files.readAllBytes(image.toPath());
+        
+        if (bytes.length < MemoryImageWriter.HEADER_LENGTH) {
+            throw new IOException("Not a memory image: " + image);
+        }
+        
+        int start = MemoryImageWriter.address(bytes, 0);
+        int origin = address >= 0 ? address : start;
+        
+        store(origin, bytes, MemoryImageWriter.HEADER_LENGTH, bytes.length - MemoryImageWriter.HEADER_LENGTH);
+        
+        _pc = origin + MemoryImageWriter.address(bytes, 3) - start;
+    }
+    
+    public void load(byte[] image, int address) {
+        store(address, image, 0, image.length);
+        
+        _pc = address;
+    }
+    
+    public RecordWriter loader() {
+        return new RecordWriter() {
+            private int _startAddress;
+            
+            @Override
+            public void header(String name, int startAddr, int length) {
+                _startAddress = startAddr;
+                _pc = startAddr;
+            }
+            
+            @Override
+            public void text(int startAddr, byte[] code, int offset, int length) {
+                store(startAddr, code, offset, length);
+            }
+            
+            @Override
+            public void modification(int modifiedLoc, int modifiedLen) {
+                // Loaded at the assembled address, nothing moves
+            }
+            
+            @Override
+            public void modification(int modifiedLoc, int modifiedLen, char sign, String symbol) throws IOException {
+                throw new IOException("External symbol " + symbol + " needs linking");
+            }
+            
+            @Override
+            public void define(String[] names, int[] addresses) {
+            }
+            
+            @Override
+            public void refer(String[] names) {
+            }
+            
+            @Override
+            public void end(int firstExecAddr) {
+                _pc = firstExecAddr >= 0 ? firstExecAddr : _startAddress;
+            }
+            
+            @Override
+            public void close() {
+            }
+        };
+    }
+    
+    private void store(int address, byte[] data, int offset, int length) {
+        if (address < 0 || address + length > MEMORY_SIZE) {
+            throw new IllegalArgumentException(String.format("%06X lies outside memory", address));
+        }
+        
+        System.arraycopy(data, offset, _memory, address, length);
+        
+        for (int page = Math.max(address - 3, 0) >> PAGE_BITS; page <= (address + length - 1) >> PAGE_BITS; page++) {
+            _decoded[page] = null;
+        }
+    }
+    
+    public void attach(int id, Device device) {
+        _devices[id & 0xFF] = device;
+    }
+    
+    // Devices not attached read <prefix>.<id> and write <prefix>.<id>.out, with the id in hex
+    public void setDeviceFiles(File prefix) {
+        _deviceFiles = prefix;
+    }
+    
+    private Device device(int id) throws IOException {
+        Device device = _devices[id];
+        
+        if (device == null) {
+            if (_deviceFiles != null) {
+                String name = String.format("%s.%02X", _deviceFiles.getPath(), id);
+                
+                device = new StreamDevice(new File(name), new File(name + ".out"));
+            } else {
+                device = new StreamDevice();
+            }
+            
+            _devices[id] = device;
+        }
+        
+        return device;
+    }
+    
+    public byte[] memory() {
+        return _memory;
+    }
+    
+    public int pc() {
+        return _pc;
+    }
+    
+    public void setPC(int pc) {
+        _pc = pc;
+    }
+    
+    public double f() {
+        return _f;
+    }
+    
+    public int register(int r) {
+        switch (r) {
+            case 0:
+                return _a;
+            case 1:
+                return _x;
+            case 2:
+                return _l;
+            case 3:
+                return _b;
+            case 4:
+                return _s;
+            case 5:
+                return _t;
+            case 6:
+                return (int) fromDouble(_f) & 0xFFFFFF;
+            case 8:
+                return _pc;
+            case 9:
+                return sw();
+            default:
+                return 0;
+        }
+    }
+    
+    public void setRegister(int r, int value) {
+        value &= 0xFFFFFF;
+        
+        switch (r) {
+            case 0:
+                _a = value;
+                break;
+            case 1:
+                _x = value;
+                break;
+            case 2:
+                _l = value;
+                break;
+            case 3:
+                _b = value;
+                break;
+            case 4:
+                _s = value;
+                break;
+            case 5:
+                _t = value;
+                break;
+            case 6:
+                _f = value;
+                break;
+            case 8:
+                _pc = value;
+                break;
+            case 9:
+                _sw = value & ~0xC0;
+                _cc = (value & 0xC0) == 0x40 ? -1 : (value & 0xC0) == 0x80 ? 1 : 0;
+                break;
+        }
+    }
+    
+    // The condition code in bits 6 and 7 of SW: 01 for less, 00 for equal, 10 for greater
+    private int sw() {
+        return _sw | (_cc < 0 ? 0x40 : _cc > 0 ? 0x80 : 0);
+    }
+    
+    private long decoded(int address) {
+        long[] page = _decoded[address >> PAGE_BITS];
+        
+        if (page == null) {
+            page = _decoded[address >> PAGE_BITS] = new long[1 << PAGE_BITS];
+        }
+        
+        long d = page[address & PAGE_MASK];
+        
+        if (d == 0) {
+            d = page[address & PAGE_MASK] = decode(address);
+        }
+        
+        return d;
+    }
+    
+    private long decode(int address) {
+        int b0 = _memory[address] & 0xFF;
+        Operation op = OPERATIONS[b0];
+        
+        if (op == null) {
+            return DECODED | (long) INVALID << OPCODE_SHIFT | 1L << LENGTH_SHIFT;
+        }
+        
+        int b1 = _memory[(address + 1) & MASK] & 0xFF;
+        int b2 = _memory[(address + 2) & MASK] & 0xFF;
+        
+        switch (op.format()) {
+            case ONE:
+                return DECODED | (long) b0 << OPCODE_SHIFT | 1L << LENGTH_SHIFT;
+            case TWO:
+                return DECODED | (long) b0 << OPCODE_SHIFT | 2L << LENGTH_SHIFT | b1;
+            default:
+                int ni = b0 & 3;
+                long flags = (b1 & 0x80) != 0 ? INDEXED : 0;
+                int length = 3;
+                int operand;
+            
+                if (ni == 0) {
+                    operand = (b1 & 0x7F) << 8 | b2; // SIC: a 15 bit address
+                } else if ((b1 & 0x10) != 0) {
+                    operand = (b1 & 0xF) << 16 | b2 << 8 | _memory[(address + 3) & MASK] & 0xFF;
+                    length = 4;
+                } else {
+                    operand = (b1 & 0xF) << 8 | b2;
+                
+                    if ((b1 & 0x20) != 0) {
+                        operand = (operand << 20 >> 20) + address + 3;
+                    } else if ((b1 & 0x40) != 0) {
+                        flags |= BASED;
+                    }
+                }
+            
+                return DECODED | flags | (long) ni << NI_SHIFT | (long) (b0 & 0xFC) << OPCODE_SHIFT | (long) length << LENGTH_SHIFT | (operand & 0xFFFFFFFFL);
+        }
+    }
+    
+    // Instruction bytes may have changed under the cache: any instruction overlapping [address, address + length)
+    private void invalidate(int address, int length) {
+        for (int a = address - 3; a < address + length; a++) {
+            long[] page = _decoded[(a & MASK) >> PAGE_BITS];
+            
+            if (page != null) {
+                page[a & PAGE_MASK] = 0;
+            }
+        }
+    }
+    
+    private int word(int address) {
+        return (_memory[address & MASK] & 0xFF) << 16 | (_memory[(address + 1) & MASK] & 0xFF) << 8 | _memory[(address + 2) & MASK] & 0xFF;
+    }
+    
+    private void setWord(int address, int value) {
+        _memory[address & MASK] = (byte) (value >> 16);
+        _memory[(address + 1) & MASK] = (byte) (value >> 8);
+        _memory[(address + 2) & MASK] = (byte) value;
+        
+        invalidate(address, 3);
+    }
+    
+    private void setByte(int address, int value) {
+        _memory[address & MASK] = (byte) value;
+        
+        invalidate(address, 1);
+    }
+    
+    private long float48(int address) {
+        return (long) word(address) << 24 | word(address + 3);
+    }
+    
+    private void setFloat48(int address, long value) {
+        setWord(address, (int) (value >>> 24));
+        setWord(address + 3, (int) value);
+    }
+    
+    // The 48 bit format: a sign bit, an exponent biased by 1024 and a 36 bit fraction in [0.5, 1)
+    static double toDouble(long bits) {
+        long fraction = bits & 0xFFFFFFFFFL;
+        
+        if (fraction == 0) {
+            return 0;
+        }
+        
+        double value = Math.scalb((double) fraction, (int) (bits >>> 36 & 0x7FF) - 1024 - 36);
+        
+        return (bits & 1L << 47) != 0 ? -value : value;
+    }
+    
+    static long fromDouble(double value) {
+        if (value == 0 || Double.isNaN(value)) {
+            return 0;
+        }
+        
+        long sign = value < 0 ? 1L << 47 : 0;
+        int exponent = Math.getExponent(value) + 1;
+        long fraction = (long) Math.scalb(Math.abs(value), 36 - exponent);
+        
+        return sign | (long) ((exponent + 1024) & 0x7FF) << 36 | fraction & 0xFFFFFFFFFL;
+    }
+    
+    private static int signed(int value) {
+        return value << 8 >> 8;
+    }
+    
+    public Report run() throws IOException {
+        return run(DEFAULT_LIMIT);
+    }
+    
+    // Runs until the program returns to HALT, jumps to itself, faults or executes the given number of
+    // instructions
+    public Report run(long limit) throws IOException {
+        long[] counts = _counts;
+        long executed = 0;
+        long start = System.nanoTime();
+        String stop = null;
+        
+        while (stop == null) {
+            int pc = _pc;
+            
+            if (pc < 0 || pc >= MEMORY_SIZE) {
+                stop = pc == HALT ? "returned" : String.format("jumped outside memory to %06X", pc);
+                
+                break;
+            } else if (executed == limit) {
+                stop = "instruction limit reached";
+                
+                break;
+            }
+            
+            long d = decoded(pc);
+            int opcode = (int) (d >>> OPCODE_SHIFT) & 0xFF;
+            int operand = (int) d;
+            
+            _pc = pc + (int) (d >>> LENGTH_SHIFT & 7);
+            counts[opcode]++;
+            executed++;
+            
+            int ni = (int) (d >>> NI_SHIFT) & 3;
+            int ta = operand;
+            
+            if ((d & INDEXED) != 0) {
+                ta += _x;
+            }
+            
+            if ((d & BASED) != 0) {
+                ta += _b;
+            }
+            
+            ta &= 0xFFFFFF;
+            
+            if (ni == INDIRECT) {
+                ta = word(ta);
+            }
+            
+            int r1 = operand >> 4 & 0xF;
+            int r2 = operand & 0xF;
+            
+            switch (opcode) {
+                // Format 3/4: loads and stores
+                case 0x00: // LDA
+                    _a = ni == IMMEDIATE ? ta : word(ta);
+                    break;
+                case 0x04: // LDX
+                    _x = ni == IMMEDIATE ? ta : word(ta);
+                    break;
+                case 0x08: // LDL
+                    _l = ni == IMMEDIATE ? ta : word(ta);
+                    break;
+                case 0x68: // LDB
+                    _b = ni == IMMEDIATE ? ta : word(ta);
+                    break;
+                case 0x6C: // LDS
+                    _s = ni == IMMEDIATE ? ta : word(ta);
+                    break;
+                case 0x74: // LDT
+                    _t = ni == IMMEDIATE ? ta : word(ta);
+                    break;
+                case 0x50: // LDCH
+                    _a = _a & 0xFFFF00 | (ni == IMMEDIATE ? ta : _memory[ta & MASK]) & 0xFF;
+                    break;
+                case 0x70: // LDF
+                    _f = toDouble(float48(ta));
+                    break;
+                case 0x0C: // STA
+                    setWord(ta, _a);
+                    break;
+                case 0x10: // STX
+                    setWord(ta, _x);
+                    break;
+                case 0x14: // STL
+                    setWord(ta, _l);
+                    break;
+                case 0x78: // STB
+                    setWord(ta, _b);
+                    break;
+                case 0x7C: // STS
+                    setWord(ta, _s);
+                    break;
+                case 0x84: // STT
+                    setWord(ta, _t);
+                    break;
+                case 0xE8: // STSW
+                    setWord(ta, sw());
+                    break;
+                case 0x54: // STCH
+                    setByte(ta, _a);
+                    break;
+                case 0x80: // STF
+                    setFloat48(ta, fromDouble(_f));
+                    break;
+                // Format 3/4: arithmetic and comparison
+                case 0x18: // ADD
+                    _a = (_a + (ni == IMMEDIATE ? ta : word(ta))) & 0xFFFFFF;
+                    break;
+                case 0x1C: // SUB
+                    _a = (_a - (ni == IMMEDIATE ? ta : word(ta))) & 0xFFFFFF;
+                    break;
+                case 0x20: // MUL
+                    _a = signed(_a) * signed(ni == IMMEDIATE ? ta : word(ta)) & 0xFFFFFF;
+                    break;
+                case 0x24: // DIV
+                    int divisor = signed(ni == IMMEDIATE ? ta : word(ta));
+                
+                    if (divisor == 0) {
+                        stop = String.format("division by zero at %06X", pc);
+                    } else {
+                        _a = signed(_a) / divisor & 0xFFFFFF;
+                    }
+                
+                    break;
+                case 0x40: // AND
+                    _a &= ni == IMMEDIATE ? ta : word(ta);
+                    break;
+                case 0x44: // OR
+                    _a |= ni == IMMEDIATE ? ta : word(ta);
+                    break;
+                case 0x28: // COMP
+                    _cc = Integer.compare(signed(_a), signed(ni == IMMEDIATE ? ta : word(ta)));
+                    break;
+                case 0x2C: // TIX
+                    _x = (_x + 1) & 0xFFFFFF;
+                    _cc = Integer.compare(signed(_x), signed(ni == IMMEDIATE ? ta : word(ta)));
+                    break;
+                case 0x58: // ADDF
+                    _f += toDouble(float48(ta));
+                    break;
+                case 0x5C: // SUBF
+                    _f -= toDouble(float48(ta));
+                    break;
+                case 0x60: // MULF
+                    _f *= toDouble(float48(ta));
+                    break;
+                case 0x64: // DIVF
+                    _f /= toDouble(float48(ta));
+                    break;
+                case 0x88: // COMPF
+                    _cc = Double.compare(_f, toDouble(float48(ta)));
+                    break;
+                // Format 3/4: jumps
+                case 0x3C: // J
+                    if (ta == pc) {
+                        stop = "halted";
+                    }
+                
+                    _pc = ta;
+                    break;
+                case 0x30: // JEQ
+                    if (_cc == 0) {
+                        _pc = ta;
+                    }
+                
+                    break;
+                case 0x34: // JGT
+                    if (_cc > 0) {
+                        _pc = ta;
+                    }
+                
+                    break;
+                case 0x38: // JLT
+                    if (_cc < 0) {
+                        _pc = ta;
+                    }
+                
+                    break;
+                case 0x48: // JSUB
+                    _l = _pc;
+                    _pc = ta;
+                    break;
+                case 0x4C: // RSUB
+                    _pc = _l;
+                    break;
+                // Format 3/4: devices
+                case 0xE0: // TD
+                    _cc = device((ni == IMMEDIATE ? ta : _memory[ta & MASK]) & 0xFF).test() ? -1 : 0;
+                    break;
+                case 0xD8: // RD
+                    _a = _a & 0xFFFF00 | device((ni == IMMEDIATE ? ta : _memory[ta & MASK]) & 0xFF).read() & 0xFF;
+                    break;
+                case 0xDC: // WD
+                    device((ni == IMMEDIATE ? ta : _memory[ta & MASK]) & 0xFF).write(_a & 0xFF);
+                    break;
+                // Format 2
+                case 0x90: // ADDR
+                    setRegister(r2, register(r2) + register(r1));
+                    break;
+                case 0x94: // SUBR
+                    setRegister(r2, register(r2) - register(r1));
+                    break;
+                case 0x98: // MULR
+                    setRegister(r2, signed(register(r2)) * signed(register(r1)));
+                    break;
+                case 0x9C: // DIVR
+                    if (register(r1) == 0) {
+                        stop = String.format("division by zero at %06X", pc);
+                    } else {
+                        setRegister(r2, signed(register(r2)) / signed(register(r1)));
+                    }
+                
+                    break;
+                case 0xA0: // COMPR
+                    _cc = Integer.compare(signed(register(r1)), signed(register(r2)));
+                    break;
+                case 0xA4: // SHIFTL, circular
+                    int left = register(r1);
+                
+                    setRegister(r1, left << (r2 + 1) | left >>> (24 - (r2 + 1)));
+                    break;
+                case 0xA8: // SHIFTR, filling with the sign bit
+                    setRegister(r1, signed(register(r1)) >> (r2 + 1));
+                    break;
+                case 0xAC: // RMO
+                    setRegister(r2, register(r1));
+                    break;
+                case 0xB4: // CLEAR
+                    setRegister(r1, 0);
+                    break;
+                case 0xB8: // TIXR
+                    _x = (_x + 1) & 0xFFFFFF;
+                    _cc = Integer.compare(signed(_x), signed(register(r1)));
+                    break;
+                case 0xB0: // SVC
+                    stop = String.format("SVC %d at %06X", r1, pc);
+                    break;
+                // Format 1
+                case 0xC0: // FLOAT
+                    _f = signed(_a);
+                    break;
+                case 0xC4: // FIX
+                    _a = (int) _f & 0xFFFFFF;
+                    break;
+                case 0xC8: // NORM, doubles are always normalized
+                    break;
+                // Privileged instructions have no effect outside a supervisor
+                case 0xD0: // LPS
+                case 0xD4: // STI
+                case 0xEC: // SSK
+                case 0xF0: // SIO
+                case 0xF4: // HIO
+                case 0xF8: // TIO
+                    break;
+                default:
+                    stop = String.format("invalid opcode %02X at %06X", _memory[pc] & 0xFF, pc);
+                    _pc = pc;
+                    counts[opcode]--;
+                    executed--;
+            }
+        }
+        
+        return new Report(executed, System.nanoTime() - start, stop, counts);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        
+        for (int id = 0; id < _devices.length; id++) {
+            if (_devices[id] != null) {
+                try {
+                    _devices[id].close();
+                } catch (IOException e) {
+                    exception = e;
+                }
+                
+                _devices[id] = null;
+            }
+        }
+        
+        if (exception != null) {
+            throw exception;
+        }
+    }
+    
+    public static class Report {
+        private final long _instructions;
+        private final long _nanos;
+        private final String _stop;
+        private final long[] _counts;
+        
+        public Report(long instructions, long nanos, String stop, long[] counts) {
+            _instructions = instructions;
+            _nanos = nanos;
+            _stop = stop;
+            _counts = counts.clone();
+        }
+        
+        public long instructions() {
+            return _instructions;
+        }
+        
+        public long nanos() {
+            return _nanos;
+        }
+        
+        // Why the run ended: returned, halted, a fault or the instruction limit
+        public String stop() {
+            return _stop;
+        }
+        
+        public boolean isFault() {
+            return _stop.equals("returned") == false && _stop.equals("halted") == false;
+        }
+        
+        public double instructionsPerSecond() {
+            return _nanos > 0 ? _instructions / (_nanos / 1e9) : 0;
+        }
+        
+        public long count(String mnemonic) {
+            Operation op = Utility.getOperationTable().get(mnemonic);
+            
+            return op != null ? _counts[op.opcode()] : 0;
+        }
+        
+        // Mnemonics by descending execution count
+        public List<String> mnemonics() {
+            List<String> mnemonics = new ArrayList<>();
+            
+            for (Operation op : Utility.getOperationTable().operations()) {
+                if (_counts[op.opcode()] > 0) {
+                    mnemonics.add(op.mnemonic());
+                }
+            }
+            
+            Collections.sort(mnemonics, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    return Long.compare(count(b), count(a));
+                }
+            });
+            
+            return mnemonics;
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            
+            sb.append(String.format("%s after %d instructions in %.3f ms (%.1f MIPS)", _stop, _instructions, _nanos / 1e6, instructionsPerSecond() / 1e6));
+            
+            for (String mnemonic : mnemonics()) {
+                sb.append(String.format("%n  %-8s %12d", mnemonic, count(mnemonic)));
+            }
+            
+            return sb.toString();
+        }
+    }
+    
+    public static void main(String[] args) {
+        Simulator simulator = new Simulator();
+        long limit = DEFAULT_LIMIT;
+        int address = -1;
+        List<File> objects = new ArrayList<>();
+        
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-l":
+                    limit = Long.parseLong(args[++i]);
+                    break;
+                case "-d":
+                    simulator.setDeviceFiles(new File(args[++i]));
+                    break;
+                case "-a":
+                    address = Integer.parseInt(args[++i], 16);
+                    break;
+                default:
+                    objects.add(new File(args[i]));
+            }
+        }
+        
+        if (objects.isEmpty()) {
+            System.out.println("Usage: java assembler.Simulator [-l instructions] [-d device-prefix] [-a hex-address] <object...|image>");
+            System.exit(2);
+        }
+        
+        try {
+            if (objects.get(0).getName().endsWith(OutputFormat.IMAGE.extension())) {
+                simulator.loadImage(objects.get(0), address);
+            } else {
+                simulator.link(objects, address);
+            }
+            
+            Report report = simulator.run(limit);
+            
+            simulator.close();
+            System.out.println(report);
+            System.exit(report.isFault() ? 1 : 0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package assembler;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+public class SourceGenerator {
+    private static final String[] FORMAT3 = { "LDA", "LDX", "LDT", "STA", "STX", "STT", "ADD", "SUB", "COMP", "LDCH", "STCH", "J", "JEQ", "JLT", "JSUB", "TIX" };
+    private static final String[] FORMAT2 = { "CLEAR\tX", "CLEAR\tA", "COMPR\tA,S", "TIXR\tT", "ADDR\tS,A", "RMO\tA,T" };
+    private static final int BLOCK_SIZE = 3072; // keeps every label of a block within base-relative range
+    private static final int SECTION_SIZE = 0xFFFFF - 64; // keeps every label within the 20 bit address of format 4
+    private static final int WINDOW = 64;
+    
+    private final long _seed;
+    private double _labelDensity;
+    private double _format4Ratio;
+    private double _baseUsage;
+    private double _dataRatio;
+    private double _wordRatio;
+    
+    public SourceGenerator(long seed) {
+        _seed = seed;
+        _labelDensity = 0.3;
+        _format4Ratio = 0.1;
+        _baseUsage = 0.5;
+        _dataRatio = 0.15;
+        _wordRatio = 0.5;
+    }
+    
+    public SourceGenerator setLabelDensity(double labelDensity) {
+        _labelDensity = labelDensity;
+        
+        return this;
+    }
+    
+    public SourceGenerator setFormat4Ratio(double format4Ratio) {
+        _format4Ratio = format4Ratio;
+        
+        return this;
+    }
+    
+    public SourceGenerator setBaseUsage(double baseUsage) {
+        _baseUsage = baseUsage;
+        
+        return this;
+    }
+    
+    public SourceGenerator setDataRatio(double dataRatio) {
+        _dataRatio = dataRatio;
+        
+        return this;
+    }
+    
+    public SourceGenerator setWordRatio(double wordRatio) {
+        _wordRatio = wordRatio;
+        
+        return this;
+    }
+    
+    public void generate(int lines, File output) throws IOException {
+        try (Writer writer = new BufferedWriter(new FileWriter(output), 1 << 16)) {
+            generate(lines, writer);
+        }
+    }
+    
+    public void generate(int lines, Writer out) throws IOException {
+        Random random = new Random(_seed);
+        int[] window = new int[WINDOW];          // recent labels: index of label
+        int[] windowLoc = new int[WINDOW];       // and their locations
+        int windowSize = 0;
+        int labels = 0;
+        int sectionLabels = 0;                  // the first label of the section
+        int sections = 0;
+        int locctr = 0;
+        int blockStart = 0;
+        int blocks = 0;
+        boolean based = false;
+        
+        out.write("PROG\tSTART\t0\n");
+        out.write("FIRST\tCLEAR\tX\n");
+        locctr += 2;
+        
+        for (int line = 2; line < lines - 1; line++) {
+            // A program past the address space of format 4 goes on in a control section of its own,
+            // whose instructions use only its own labels
+            if (locctr >= SECTION_SIZE) {
+                out.write("SEC" + ++sections + "\tCSECT\n");
+                sectionLabels = labels;
+                windowSize = 0;
+                locctr = blockStart = 0;
+                based = false;
+                
+                continue;
+            }
+            
+            if (locctr - blockStart >= BLOCK_SIZE) {
+                blockStart = locctr;
+                windowSize = 0;
+                based = random.nextDouble() < _baseUsage;
+                
+                if (based) {
+                    String name = "B" + blocks++;
+                    
+                    out.write(name + "\tLDB\t#" + name + "\n");
+                    out.write("\tBASE\t" + name + "\n");
+                    locctr += 3;
+                    line++;
+                    
+                    continue;
+                } else {
+                    out.write("\tNOBASE\n");
+                    
+                    continue;
+                }
+            }
+            
+            if (random.nextDouble() < _labelDensity) {
+                String name = "L" + labels;
+                
+                window[windowSize % WINDOW] = labels;
+                windowLoc[windowSize % WINDOW] = locctr;
+                windowSize++;
+                labels++;
+                
+                out.write(name);
+            }
+            
+            out.write('\t');
+            
+            if (random.nextDouble() < _dataRatio) {
+                if (random.nextDouble() < _wordRatio) {
+                    if (random.nextInt(8) == 0) {
+                        int n = 1 + random.nextInt(4);
+                        
+                        out.write("RESW\t" + n + "\n");
+                        locctr += 3 * n;
+                    } else {
+                        out.write("WORD\t" + random.nextInt(1 << 20) + "\n");
+                        locctr += 3;
+                    }
+                } else {
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            int n = 1 + random.nextInt(8);
+                        
+                            out.write("BYTE\tC'");
+                        
+                            for (int i = 0; i < n; i++) {
+                                out.write('A' + random.nextInt(26));
+                            }
+                        
+                            out.write("'\n");
+                            locctr += n;
+                            break;
+                        case 1:
+                            out.write(String.format("BYTE\tX'%02X'\n", random.nextInt(256)));
+                            locctr += 1;
+                            break;
+                        default:
+                            int m = 1 + random.nextInt(16);
+                        
+                            out.write("RESB\t" + m + "\n");
+                            locctr += m;
+                    }
+                }
+            } else if (random.nextInt(10) == 0) {
+                out.write(FORMAT2[random.nextInt(FORMAT2.length)] + "\n");
+                locctr += 2;
+            } else {
+                String op = FORMAT3[random.nextInt(FORMAT3.length)];
+                
+                if (labels > sectionLabels && random.nextDouble() < _format4Ratio) {
+                    out.write("+" + op + "\tL" + (sectionLabels + random.nextInt(labels - sectionLabels)) + "\n");
+                    locctr += 4;
+                } else if (windowSize > 0) {
+                    int k = (windowSize - 1 - random.nextInt(Math.min(windowSize, WINDOW))) % WINDOW;
+                    int distance = locctr + 3 - windowLoc[k];
+                    
+                    if (distance <= 2048 || based) {
+                        out.write(op + "\tL" + window[k] + (random.nextInt(8) == 0 ? ",X" : "") + "\n");
+                    } else {
+                        out.write(op + "\t#" + random.nextInt(2048) + "\n");
+                    }
+                    
+                    locctr += 3;
+                } else {
+                    out.write(op + "\t#" + random.nextInt(2048) + "\n");
+                    locctr += 3;
+                }
+            }
+        }
+        
+        out.write("\tEND\tFIRST\n");
+    }
+    
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java assembler.SourceGenerator <lines> <output> [seed]");
+            System.exit(2);
+        }
+        
+        try {
+            new SourceGenerator(args.length > 2 ? Long.parseLong(args[2]) : 1).generate(Integer.parseInt(args[0]), new File(args[1]));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package assembler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+public class SourceReader implements LineSource {
+    private final InputStream _istream;
+    private byte[] _buffer;
+    private int _limit;
+    private int _lineStart;
+    private int _lineEnd;
+    private int _next;
+    private int _lineNumber;
+    private boolean _eof;
+    
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    
+    public SourceReader(InputStream istream) {
+        this(istream, DEFAULT_BUFFER_SIZE);
+    }
+    
+    public SourceReader(InputStream istream, int bufferSize) {
+        _istream = istream;
+        _buffer = new byte[bufferSize];
+        _limit = _lineStart = _lineEnd = _next = _lineNumber = 0;
+        _eof = false;
+    }
+    
+    @Override
+    public boolean next() throws IOException {
+        int pos = _next;
+        
+        while (true) {
+            while (pos < _limit && _buffer[pos] != '\n') {
+                pos++;
+            }
+            
+            if (pos < _limit || _eof) {
+                break;
+            }
+            
+            pos -= _next;
+            fill();
+            pos += _next;
+        }
+        
+        if (_next >= _limit && _eof) {
+            return false;
+        }
+        
+        _lineStart = _next;
+        _lineEnd = pos;
+        _next = pos + 1;
+        _lineNumber++;
+        
+        if (_lineEnd > _lineStart && _buffer[_lineEnd - 1] == '\r') {
+            _lineEnd--;
+        }
+        
+        return true;
+    }
+    
+    private void fill() throws IOException {
+        int remaining = _limit - _next;
+        
+        if (_next == 0 && _limit == _buffer.length) {
+            _buffer = Arrays.copyOf(_buffer, _buffer.length * 2);
+        } else {
+            System.arraycopy(_buffer, _next, _buffer, 0, remaining);
+        }
+        
+        _limit = remaining;
+        _next = 0;
+        
+        int n = _istream.read(_buffer, _limit, _buffer.length - _limit);
+        
+        if (n < 0) {
+            _eof = true;
+        } else {
+            _limit += n;
+        }
+    }
+    
+    @Override
+    public byte[] buffer() {
+        return _buffer;
+    }
+    
+    @Override
+    public int lineStart() {
+        return _lineStart;
+    }
+    
+    @Override
+    public int lineEnd() {
+        return _lineEnd;
+    }
+    
+    @Override
+    public int lineNumber() {
+        return _lineNumber;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        _istream.close();
+    }
+}
@@ -1,35 +1,92 @@
 package assembler;
 
-import java.io.Serializable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
-public class Statement implements Serializable, Comparable {
+public class Statement implements Comparable {
     private final String _label;
     private final String _operation;
+    private final Operation _instruction;
     private final String[] _symbols;
     private final String _comment;
-    private final boolean _extended;
+    private boolean _extended;
+    private int _labelId;
+    private int _symbolId;
     private int _location;
+    private int _line;                          // source line, that of the invocation for a macro's lines
+    private long _sourceHash;
+    private transient Expression _expression;   // compiled in pass 2, never spilled
     
-    private Statement(String label, String operation, boolean extended, String[] symbols, String comment) {
+    private Statement(String label, String operation, Operation instruction, boolean extended, String[] symbols, String comment, int labelId, int symbolId) {
         _label = label;
         _operation = operation;
+        _instruction = instruction;
         _extended = extended;
         _symbols = symbols;
         _comment = comment;
+        _labelId = labelId;
+        _symbolId = symbolId;
+    }
+    
+    public Statement(String label, Operation instruction, boolean extended, String[] symbols, int labelId, int symbolId) {
+        this(label, instruction.mnemonic(), instruction, extended, symbols, null, labelId, symbolId);
+    }
+    
+    public Statement(String label, String operation, boolean extended, String[] symbols, int labelId, int symbolId) {
+        this(label, operation, Utility.getOperationTable().get(operation), extended, symbols, null, labelId, symbolId);
     }
     
     public Statement(String label, String operation, boolean extended, String[] symbols) {
-        this(label, operation, extended, symbols, null);
+        this(label, operation, extended, symbols, -1, -1);
     }
     
     public Statement(String comment) {
-        this(null, ".", false, null, comment);
+        this(null, ".", null, false, null, comment, -1, -1);
+    }
+    
+    // A statement of its own with the same fields, for the lines of a macro expansion that are parsed once
+    Statement copy() {
+        Statement statement = new Statement(_label, _operation, _instruction, _extended, _symbols, _comment, _labelId, _symbolId);
+        
+        statement.setLine(_line);
+        statement.setSourceHash(_sourceHash);
+        
+        return statement;
     }
     
     public String label() {
         return _label;
     }
     
+    public Operation instruction() {
+        return _instruction;
+    }
+    
+    public int labelId() {
+        return _labelId;
+    }
+    
+    public int symbolId() {
+        return _symbolId;
+    }
+    
+    // Rebinds the ids to another symbol table
+    void setSymbolIds(int labelId, int symbolId) {
+        _labelId = labelId;
+        _symbolId = symbolId;
+    }
+    
+    // The operand expression of pass 2, once evaluated; null for a number or a plain symbol
+    Expression expression() {
+        return _expression;
+    }
+    
+    void setExpression(Expression expression) {
+        _expression = expression;
+    }
+    
     public String operation() {
         return _operation;
     }
@@ -46,10 +103,20 @@ public class Statement implements Serializable, Comparable {
         return _comment != null;
     }
     
+    // The text after the period of a comment line
+    public String comment() {
+        return _comment;
+    }
+    
     public boolean isExtended() {
         return _extended;
     }
     
+    // Promotes a format 3 instruction to format 4 during relaxation
+    void setExtended(boolean extended) {
+        _extended = extended;
+    }
+    
     public void setLocation(int loc) {
         _location = loc;
     }
@@ -58,80 +125,124 @@ public class Statement implements Serializable, Comparable {
         return _location;
     }
     
+    public void setLine(int line) {
+        _line = line;
+    }
+    
+    public int line() {
+        return _line;
+    }
+    
+    public void setSourceHash(long hash) {
+        _sourceHash = hash;
+    }
+    
+    public long sourceHash() {
+        return _sourceHash;
+    }
+    
     public static Statement parse(String statement) {
-        String[] tokens = statement.trim().split("\t");
+        byte[] bytes = statement.getBytes(StandardCharsets.ISO_8859_1);
         
-        if (tokens[0].compareTo(".") == 0) {
-            return new Statement(statement.substring(statement.indexOf('.') + 1));
+        return new Lexer(new SymbolPool(), new SymbolTable()).parse(bytes, 0, bytes.length);
+    }
+    
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(_location);
+        out.writeInt(_line);
+        out.writeLong(_sourceHash);
+        out.writeBoolean(_extended);
+        out.writeInt(_labelId);
+        out.writeInt(_symbolId);
+        writeString(out, _label);
+        writeString(out, _operation);
+        writeString(out, _comment);
+        
+        if (_symbols != null) {
+            out.writeBoolean(true);
+            writeString(out, _symbols[0]);
+            writeString(out, _symbols[1]);
         } else {
-            String label, operation;
-            String[] symbols;
-            boolean extended = false;
-            int index = 0;
-
-            if (tokens.length == 3) {
-                label = tokens[index++];
-            } else {
-                label = null;
-            }
-
-            operation = tokens[index++];
-            if (operation.charAt(0) == '+') {
-                extended = true;
-                operation = operation.substring(1);
-            }
-
-            symbols = new String[2];
-            if (index < tokens.length) {
-                int pos = tokens[index].indexOf(',');
-                if (pos >= 0) {
-                    symbols[0] = tokens[index].substring(0, pos);
-                    symbols[1] = tokens[index].substring(pos + 1);
-                } else {
-                    symbols[0] = tokens[index];
-                    symbols[1] = null;
-                }
-            } else {
-                symbols[0] = symbols[1] = null;
-            }
-
-            return new Statement(label, operation, extended, symbols);
+            out.writeBoolean(false);
+        }
+    }
+    
+    public static Statement read(DataInput in) throws IOException {
+        int location = in.readInt();
+        int line = in.readInt();
+        long sourceHash = in.readLong();
+        boolean extended = in.readBoolean();
+        int labelId = in.readInt();
+        int symbolId = in.readInt();
+        String label = readString(in);
+        String operation = readString(in);
+        String comment = readString(in);
+        String[] symbols = null;
+        
+        if (in.readBoolean()) {
+            symbols = new String[] { readString(in), readString(in) };
         }
+        
+        Statement statement = new Statement(label, operation, Utility.getOperationTable().get(operation), extended, symbols, comment, labelId, symbolId);
+        statement.setLocation(location);
+        statement.setLine(line);
+        statement.setSourceHash(sourceHash);
+        
+        return statement;
+    }
+    
+    private static void writeString(DataOutput out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+    
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
     }
     
     @Override
     public String toString() {
-        String s = String.format("%1$04X", _location) + "\t";
+        String location = Integer.toHexString(_location).toUpperCase();
+        StringBuilder s = new StringBuilder(48);
+        
+        for (int k = location.length(); k < 4; k++) {
+            s.append('0');
+        }
+        
+        s.append(location).append('\t');
         
         if (isComment()) {
-            s += ".\t" + _comment;
+            s.append(".\t").append(_comment);
         } else {
             if (_label != null) {
-                s += _label;
+                s.append(_label);
             }
-
-            s += "\t";
+            
+            s.append('\t');
             
             if (_extended) {
-                s += '+';
+                s.append('+');
             }
             
-            s += _operation + "\t";
-
+            s.append(_operation).append('\t');
+            
             if (_symbols != null) {
                 if (_symbols[0] != null) {
-                    s += _symbols[0];
+                    s.append(_symbols[0]);
                 }
-
+                
                 if (_symbols[1] != null) {
-                    s +=  "," + _symbols[1];
+                    s.append(',').append(_symbols[1]);
                 }
             }
         }
         
-        return s;
+        return s.toString();
     }
-
+    
     @Override
     public int compareTo(Object o) {
         return _operation.compareTo((String) o);
@@ -0,0 +1,159 @@
+package assembler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class StatementStore implements Iterable<Statement>, Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    
+    private final int _memoryLimit;
+    private Statement[] _statements;
+    private int _size;
+    private File _spillFile;
+    private DataOutputStream _spillStream;
+    private DataInputStream _spillReader;
+    
+    public static final int DEFAULT_MEMORY_LIMIT = 1 << 20;
+    
+    public StatementStore() {
+        this(DEFAULT_MEMORY_LIMIT);
+    }
+    
+    public StatementStore(int memoryLimit) {
+        _memoryLimit = memoryLimit;
+        _statements = new Statement[Math.min(Math.max(memoryLimit, 16), 1024)];
+        _size = 0;
+    }
+    
+    public void add(Statement statement) throws IOException {
+        if (_spillStream == null && _size == _memoryLimit) {
+            spill();
+        }
+        
+        if (_spillStream != null) {
+            statement.write(_spillStream);
+        } else {
+            if (_size == _statements.length) {
+                _statements = Arrays.copyOf(_statements, Math.min(_statements.length * 2, _memoryLimit));
+            }
+            
+            _statements[_size] = statement;
+        }
+        
+        _size++;
+    }
+    
+    public int size() {
+        return _size;
+    }
+    
+    public boolean isSpilled() {
+        return _spillFile != null;
+    }
+    
+    private void spill() throws IOException {
+        _spillFile = File.createTempFile("assembler", ".spill");
+        _spillFile.deleteOnExit();
+        _spillStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(_spillFile), BUFFER_SIZE));
+        
+        for (int i = 0; i < _size; i++) {
+            _statements[i].write(_spillStream);
+        }
+        
+        _statements = null;
+    }
+    
+    @Override
+    public Iterator<Statement> iterator() {
+        if (_spillStream == null) {
+            return new Iterator<Statement>() {
+                private int _index = 0;
+                
+                @Override
+                public boolean hasNext() {
+                    return _index < _size;
+                }
+                
+                @Override
+                public Statement next() {
+                    if (_index >= _size) {
+                        throw new NoSuchElementException();
+                    }
+                    
+                    return _statements[_index++];
+                }
+            };
+        }
+        
+        try {
+            _spillStream.flush();
+            
+            if (_spillReader != null) {
+                _spillReader.close();
+            }
+            
+            final DataInputStream istream = new DataInputStream(new BufferedInputStream(new FileInputStream(_spillFile), BUFFER_SIZE));
+            _spillReader = istream;
+            
+            return new Iterator<Statement>() {
+                private int _index = 0;
+                
+                @Override
+                public boolean hasNext() {
+                    return _index < _size;
+                }
+                
+                @Override
+                public Statement next() {
+                    if (_index >= _size) {
+                        throw new NoSuchElementException();
+                    }
+                    
+                    try {
+                        Statement statement = Statement.read(istream);
+                        
+                        if (++_index == _size) {
+                            istream.close();
+                        }
+                        
+                        return statement;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        _statements = null;
+        
+        if (_spillReader != null) {
+            _spillReader.close();
+            _spillReader = null;
+        }
+        
+        if (_spillStream != null) {
+            _spillStream.close();
+            _spillStream = null;
+        }
+        
+        if (_spillFile != null) {
+            _spillFile.delete();
+        }
+    }
+}
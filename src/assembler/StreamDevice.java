@@ -0,0 +1,71 @@
+package assembler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// A device backed by streams, in memory or on files; either side may be absent, reading nothing and
+// discarding writes
+public class StreamDevice implements Device {
+    private final InputStream _istream;
+    private OutputStream _ostream;
+    private final File _output;
+    
+    public StreamDevice() {
+        this((InputStream) null, null);
+    }
+    
+    public StreamDevice(InputStream istream, OutputStream ostream) {
+        _istream = istream;
+        _ostream = ostream;
+        _output = null;
+    }
+    
+    // Reads the input file if it exists, and creates the output file on the first write
+    public StreamDevice(File input, File output) throws IOException {
+        _istream = input != null && input.isFile() ? new BufferedInputStream(new FileInputStream(input), 1 << 16) : null;
+        _ostream = null;
+        _output = output;
+    }
+    
+    @Override
+    public boolean test() {
+        return true;
+    }
+    
+    @Override
+    public int read() throws IOException {
+        int b = _istream != null ? _istream.read() : -1;
+        
+        return b < 0 ? 0 : b;
+    }
+    
+    @Override
+    public void write(int b) throws IOException {
+        if (_ostream == null && _output != null) {
+            _ostream = new BufferedOutputStream(new FileOutputStream(_output), 1 << 16);
+        }
+        
+        if (_ostream != null) {
+            _ostream.write(b);
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            if (_istream != null) {
+                _istream.close();
+            }
+        } finally {
+            if (_ostream != null) {
+                _ostream.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package assembler;
+
+import java.nio.charset.StandardCharsets;
+
+public class SymbolPool {
+    private String[] _symbols;
+    private int[] _hashes;
+    private int _size;
+    
+    public SymbolPool() {
+        this(256);
+    }
+    
+    public SymbolPool(int capacity) {
+        int n = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1);
+        
+        _symbols = new String[n];
+        _hashes = new int[n];
+        _size = 0;
+    }
+    
+    public int size() {
+        return _size;
+    }
+    
+    public String intern(byte[] buf, int start, int end) {
+        int hash = hash(buf, start, end);
+        int mask = _symbols.length - 1;
+        
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            String s = _symbols[slot];
+            
+            if (s == null) {
+                s = new String(buf, start, end - start, StandardCharsets.ISO_8859_1);
+                
+                _symbols[slot] = s;
+                _hashes[slot] = hash;
+                
+                if (++_size * 2 > _symbols.length) {
+                    rehash();
+                }
+                
+                return s;
+            } else if (_hashes[slot] == hash && equals(s, buf, start, end)) {
+                return s;
+            }
+        }
+    }
+    
+    public String intern(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.ISO_8859_1);
+        
+        return intern(bytes, 0, bytes.length);
+    }
+    
+    // Same as String.hashCode() for ISO-8859-1 text
+    static int hash(byte[] buf, int start, int end) {
+        int h = 0;
+        
+        for (int i = start; i < end; i++) {
+            h = 31 * h + (buf[i] & 0xFF);
+        }
+        
+        return h;
+    }
+    
+    // Spreads the sequential hash codes of generated names such as L1, L2, ...
+    static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        
+        return hash ^ (hash >>> 13);
+    }
+    
+    static boolean equals(String s, byte[] buf, int start, int end) {
+        if (s.length() != end - start) {
+            return false;
+        }
+        
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i - start) != (buf[i] & 0xFF)) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    private void rehash() {
+        String[] symbols = _symbols;
+        int[] hashes = _hashes;
+        
+        _symbols = new String[symbols.length * 2];
+        _hashes = new int[symbols.length * 2];
+        
+        int mask = _symbols.length - 1;
+        
+        for (int i = 0; i < symbols.length; i++) {
+            if (symbols[i] != null) {
+                int slot = mix(hashes[i]) & mask;
+                
+                while (_symbols[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                
+                _symbols[slot] = symbols[i];
+                _hashes[slot] = hashes[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package assembler;
+
+import java.util.Arrays;
+
+public class SymbolTable {
+    private int[] _slots;
+    private String[] _names;
+    private int[] _addresses;
+    private byte[] _flags;
+    private int _size;
+    
+    public static final int UNDEFINED = Integer.MIN_VALUE;
+    
+    private static final byte EXTERNAL = 1;    // defined by EXTREF in another control section
+    private static final byte ANONYMOUS = 2;   // not in the hash table, such as a literal
+    private static final byte ABSOLUTE = 4;    // a number rather than an address, not relocated
+    private static final byte EQUATED = 8;     // defined by EQU, possibly once pass 1 ends
+    
+    public SymbolTable() {
+        this(256);
+    }
+    
+    public SymbolTable(int capacity) {
+        capacity = Math.max(capacity, 8);
+        
+        _slots = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+        _names = new String[capacity];
+        _addresses = new int[capacity];
+        _flags = new byte[capacity];
+        _size = 0;
+    }
+    
+    public int size() {
+        return _size;
+    }
+    
+    public int id(String name) {
+        int mask = _slots.length - 1;
+        
+        for (int slot = SymbolPool.mix(name.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int id = _slots[slot] - 1;
+            
+            if (id < 0) {
+                id = add(name, (byte) 0);
+                _slots[slot] = id + 1;
+                
+                if (_size * 2 > _slots.length) {
+                    rehash();
+                }
+                
+                return id;
+            } else if (_names[id] == name || _names[id].equals(name)) {
+                return id;
+            }
+        }
+    }
+    
+    // A symbol that id and find never return, such as the literal of one pool
+    public int create(String name) {
+        return add(name, ANONYMOUS);
+    }
+    
+    private int add(String name, byte flags) {
+        int id = _size++;
+        
+        if (id == _names.length) {
+            _names = Arrays.copyOf(_names, id * 2);
+            _addresses = Arrays.copyOf(_addresses, id * 2);
+            _flags = Arrays.copyOf(_flags, id * 2);
+        }
+        
+        _names[id] = name;
+        _addresses[id] = UNDEFINED;
+        _flags[id] = flags;
+        
+        return id;
+    }
+    
+    public int find(String name) {
+        int mask = _slots.length - 1;
+        
+        for (int slot = SymbolPool.mix(name.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int id = _slots[slot] - 1;
+            
+            if (id < 0) {
+                return -1;
+            } else if (_names[id] == name || _names[id].equals(name)) {
+                return id;
+            }
+        }
+    }
+    
+    public String name(int id) {
+        return _names[id];
+    }
+    
+    public boolean define(int id, int address) {
+        if (_addresses[id] != UNDEFINED) {
+            return false;
+        }
+        
+        _addresses[id] = address;
+        
+        return true;
+    }
+    
+    // An external reference is bound to address 0; the linker adds the real address
+    public boolean defineExternal(int id) {
+        if (define(id, 0) == false) {
+            return false;
+        }
+        
+        _flags[id] |= EXTERNAL;
+        
+        return true;
+    }
+    
+    // A symbol of create, such as a literal
+    boolean isAnonymous(int id) {
+        return id >= 0 && (_flags[id] & ANONYMOUS) != 0;
+    }
+    
+    public boolean isExternal(int id) {
+        return id >= 0 && (_flags[id] & EXTERNAL) != 0;
+    }
+    
+    // Marks a symbol of EQU, whose value may be a number
+    void setEquated(int id, boolean absolute) {
+        _flags[id] = (byte) (_flags[id] & ~ABSOLUTE | EQUATED | (absolute ? ABSOLUTE : 0));
+    }
+    
+    public boolean isEquated(int id) {
+        return id >= 0 && (_flags[id] & EQUATED) != 0;
+    }
+    
+    public boolean isAbsolute(int id) {
+        return id >= 0 && (_flags[id] & ABSOLUTE) != 0;
+    }
+    
+    public boolean isDefined(int id) {
+        return id >= 0 && _addresses[id] != UNDEFINED;
+    }
+    
+    public int address(int id) {
+        return _addresses[id];
+    }
+    
+    // Moves a defined symbol, for relaxation
+    void setAddress(int id, int address) {
+        _addresses[id] = address;
+    }
+    
+    private void rehash() {
+        _slots = new int[_slots.length * 2];
+        
+        int mask = _slots.length - 1;
+        
+        for (int id = 0; id < _size; id++) {
+            if ((_flags[id] & ANONYMOUS) != 0) {
+                continue;
+            }
+            
+            int slot = SymbolPool.mix(_names[id].hashCode()) & mask;
+            
+            while (_slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            
+            _slots[slot] = id + 1;
+        }
+    }
+}
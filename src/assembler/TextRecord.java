@@ -1,27 +1,53 @@
 package assembler;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
 
 public class TextRecord implements Record {
-    private final int _startAddress;
+    private int _startAddress;
     private int _length;
-    private final List<String> _objectCodes;
+    private final byte[] _objectCodes;
     
-    public static final int MAX_LENGTH = 0x20;
+    public static final int DEFAULT_LENGTH = 0x20;
+    public static final int MAX_LENGTH = 0xFF;    // the length field has two hex digits
     
     public TextRecord(int startAddr) {
+        this(startAddr, DEFAULT_LENGTH);
+    }
+    
+    public TextRecord(int startAddr, int capacity) {
+        _startAddress = startAddr;
+        _length = 0;
+        _objectCodes = new byte[capacity];
+    }
+    
+    public void reset(int startAddr) {
         _startAddress = startAddr;
         _length = 0;
-        _objectCodes = new ArrayList<>();
     }
     
-    public boolean add(String objectCode) {
-        if (objectCode.length() == 0) {
+    public int startAddress() {
+        return _startAddress;
+    }
+    
+    public int length() {
+        return _length;
+    }
+    
+    // The address right after the last byte
+    public int endAddress() {
+        return _startAddress + _length;
+    }
+    
+    public int room() {
+        return _objectCodes.length - _length;
+    }
+    
+    public boolean add(byte[] objectCode, int offset, int length) {
+        if (length == 0) {
             return true;
-        } else if (_length + objectCode.length() / 2 <= MAX_LENGTH) {
-            _objectCodes.add(objectCode);
-            _length += objectCode.length() / 2;
+        } else if (_length + length <= _objectCodes.length) {
+            System.arraycopy(objectCode, offset, _objectCodes, _length, length);
+            _length += length;
             
             return true;
         } else {
@@ -29,15 +55,37 @@ public class TextRecord implements Record {
         }
     }
     
+    // Overwrites the bytes already in the record that the range covers, which may be only some of
+    // them when the range spans records; the number of bytes overwritten
+    public int patch(int address, byte[] code, int offset, int length) {
+        int from = Math.max(address, _startAddress);
+        int to = Math.min(address + length, _startAddress + _length);
+        
+        if (from >= to) {
+            return 0;
+        }
+        
+        System.arraycopy(code, offset + from - address, _objectCodes, from - _startAddress, to - from);
+        
+        return to - from;
+    }
+    
     @Override
     public String toObjectProgram() {
-        String buf = String.format("T%06X%02X", _startAddress, _length);
+        StringBuilder buf = new StringBuilder(9 + _length * 2);
+        
+        buf.append(String.format("T%06X%02X", _startAddress, _length));
         
-        for (String s : _objectCodes) {
-            buf += s;
+        for (int i = 0; i < _length; i++) {
+            buf.append(String.format("%02X", _objectCodes[i] & 0xFF));
         }
         
-        return buf;
+        return buf.toString();
+    }
+    
+    @Override
+    public void writeTo(RecordWriter writer) throws IOException {
+        writer.text(_startAddress, _objectCodes, 0, _length);
     }
     
 }
@@ -0,0 +1,11 @@
+package assembler;
+
+class UndefinedSymbolException extends Exception {
+    public UndefinedSymbolException(Statement statement) {
+        super("Undefined symbol found: " + statement.operand1());
+    }
+    
+    public UndefinedSymbolException(String symbol) {
+        super("Undefined symbol found: " + symbol);
+    }
+}
@@ -1,55 +1,107 @@
 package assembler;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 public class Utility {
-    private static final Map<String, Operation> _operationTable;
+    private static final OperationTable _operationTable;
     private static final Map<String, Integer> _registerTable;
+    private static final Set<String> _directives;
     
     static {
-        _operationTable = new HashMap<>();
+        _operationTable = new OperationTable(
+                new Operation("ADD",     Format.THREE_FOUR, 0x18),
+                new Operation("ADDF",    Format.THREE_FOUR, 0x58, Operation.FLOATING_POINT),
+                new Operation("ADDR",    Format.TWO,        0x90),
+                new Operation("AND",     Format.THREE_FOUR, 0x40),
+                new Operation("CLEAR",   Format.TWO,        0xB4),
+                new Operation("COMP",    Format.THREE_FOUR, 0x28),
+                new Operation("COMPF",   Format.THREE_FOUR, 0x88, Operation.FLOATING_POINT),
+                new Operation("COMPR",   Format.TWO,        0xA0),
+                new Operation("DIV",     Format.THREE_FOUR, 0x24),
+                new Operation("DIVF",    Format.THREE_FOUR, 0x64, Operation.FLOATING_POINT),
+                new Operation("DIVR",    Format.TWO,        0x9C),
+                new Operation("FIX",     Format.ONE,        0xC4, Operation.FLOATING_POINT),
+                new Operation("FLOAT",   Format.ONE,        0xC0, Operation.FLOATING_POINT),
+                new Operation("HIO",     Format.ONE,        0xF4, Operation.PRIVILEGED),
+                new Operation("J",       Format.THREE_FOUR, 0x3C),
+                new Operation("JEQ",     Format.THREE_FOUR, 0x30),
+                new Operation("JGT",     Format.THREE_FOUR, 0x34),
+                new Operation("JLT",     Format.THREE_FOUR, 0x38),
+                new Operation("JSUB",    Format.THREE_FOUR, 0x48),
+                new Operation("LDA",     Format.THREE_FOUR, 0x00),
+                new Operation("LDB",     Format.THREE_FOUR, 0x68),
+                new Operation("LDCH",    Format.THREE_FOUR, 0x50),
+                new Operation("LDF",     Format.THREE_FOUR, 0x70, Operation.FLOATING_POINT),
+                new Operation("LDL",     Format.THREE_FOUR, 0x08),
+                new Operation("LDS",     Format.THREE_FOUR, 0x6C),
+                new Operation("LDT",     Format.THREE_FOUR, 0x74),
+                new Operation("LDX",     Format.THREE_FOUR, 0x04),
+                new Operation("LPS",     Format.THREE_FOUR, 0xD0, Operation.PRIVILEGED),
+                new Operation("MUL",     Format.THREE_FOUR, 0x20),
+                new Operation("MULF",    Format.THREE_FOUR, 0x60, Operation.FLOATING_POINT),
+                new Operation("MULR",    Format.TWO,        0x98),
+                new Operation("NORM",    Format.ONE,        0xC8, Operation.FLOATING_POINT),
+                new Operation("OR",      Format.THREE_FOUR, 0x44),
+                new Operation("RD",      Format.THREE_FOUR, 0xD8),
+                new Operation("RMO",     Format.TWO,        0xAC),
+                new Operation("RSUB",    Format.THREE_FOUR, 0x4C),
+                new Operation("SHIFTL",  Format.TWO,        0xA4, Operation.SHIFT),
+                new Operation("SHIFTR",  Format.TWO,        0xA8, Operation.SHIFT),
+                new Operation("SIO",     Format.ONE,        0xF0, Operation.PRIVILEGED),
+                new Operation("SSK",     Format.THREE_FOUR, 0xEC, Operation.PRIVILEGED),
+                new Operation("STA",     Format.THREE_FOUR, 0x0C),
+                new Operation("STB",     Format.THREE_FOUR, 0x78),
+                new Operation("STCH",    Format.THREE_FOUR, 0x54),
+                new Operation("STF",     Format.THREE_FOUR, 0x80, Operation.FLOATING_POINT),
+                new Operation("STI",     Format.THREE_FOUR, 0xD4, Operation.PRIVILEGED),
+                new Operation("STL",     Format.THREE_FOUR, 0x14),
+                new Operation("STS",     Format.THREE_FOUR, 0x7C),
+                new Operation("STSW",    Format.THREE_FOUR, 0xE8),
+                new Operation("STT",     Format.THREE_FOUR, 0x84),
+                new Operation("STX",     Format.THREE_FOUR, 0x10),
+                new Operation("SUB",     Format.THREE_FOUR, 0x1C),
+                new Operation("SUBF",    Format.THREE_FOUR, 0x5C, Operation.FLOATING_POINT),
+                new Operation("SUBR",    Format.TWO,        0x94),
+                new Operation("SVC",     Format.TWO,        0xB0),
+                new Operation("TD",      Format.THREE_FOUR, 0xE0),
+                new Operation("TIO",     Format.ONE,        0xF8, Operation.PRIVILEGED),
+                new Operation("TIX",     Format.THREE_FOUR, 0x2C),
+                new Operation("TIXR",    Format.TWO,        0xB8),
+                new Operation("WD",      Format.THREE_FOUR, 0xDC));
         
-        _operationTable.put("CLEAR", new Operation("CLEAR", "2",   "B4"));
-        _operationTable.put("COMP",  new Operation("COMP",  "3/4", "28"));
-        _operationTable.put("COMPR", new Operation("COMPR", "2",   "A0"));
-        _operationTable.put("J",     new Operation("J",     "3/4", "3C"));
-        _operationTable.put("JEQ",   new Operation("JEQ",   "3/4", "30"));
-        _operationTable.put("JLT",   new Operation("JLT",   "3/4", "38"));
-        _operationTable.put("JSUB",  new Operation("JSUB",  "3/4", "48"));
-        _operationTable.put("LDA",   new Operation("LDA",   "3/4", "00"));
-        _operationTable.put("LDB",   new Operation("LDB",   "3/4", "68"));
-        _operationTable.put("LDCH",  new Operation("LDCH",  "3/4", "50"));
-        _operationTable.put("LDT",   new Operation("LDT",   "3/4", "74"));
-        _operationTable.put("RD",    new Operation("RD",    "3/4", "D8"));
-        _operationTable.put("RSUB",  new Operation("RSUB",  "3/4", "4C"));
-        _operationTable.put("STA",   new Operation("STA",   "3/4", "0C"));
-        _operationTable.put("STCH",  new Operation("STCH",  "3/4", "54"));
-        _operationTable.put("STL",   new Operation("STL",   "3/4", "14"));
-        _operationTable.put("STX",   new Operation("STX",   "3/4", "10"));
-        _operationTable.put("TD",    new Operation("TD",    "3/4", "E0"));
-        _operationTable.put("TIXR",  new Operation("TIXR",  "2",   "B8"));
-        _operationTable.put("WD",    new Operation("WD",    "3/4", "DC"));
+        Map<String, Integer> registerTable = new HashMap<>();
         
-        _registerTable = new HashMap<>();
+        registerTable.put(null, 0);
+        registerTable.put("A", 0);
+        registerTable.put("X", 1);
+        registerTable.put("L", 2);
+        registerTable.put("B", 3);
+        registerTable.put("S", 4);
+        registerTable.put("T", 5);
+        registerTable.put("F", 6);
+        registerTable.put("PC", 8);
+        registerTable.put("SW", 9);
         
-        _registerTable.put(null, 0);
-        _registerTable.put("A", 0);
-        _registerTable.put("X", 1);
-        _registerTable.put("L", 2);
-        _registerTable.put("B", 3);
-        _registerTable.put("S", 4);
-        _registerTable.put("T", 5);
-        _registerTable.put("F", 6);
-        _registerTable.put("SW", 9);
+        _registerTable = Collections.unmodifiableMap(registerTable);
         
+        _directives = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+                "START", "END", "BYTE", "WORD", "RESB", "RESW", "BASE", "NOBASE", "CSECT", "EXTDEF", "EXTREF", "LTORG", "EQU", "ORG", "MACRO", "MEND")));
     }
     
-    public static Map<String, Operation> getOperaionTable() {
+    public static OperationTable getOperationTable() {
         return _operationTable;
     }
     
     public static Map<String, Integer> getRegisterTable() {
         return _registerTable;
     }
+    
+    public static boolean isDirective(String name) {
+        return _directives.contains(name);
+    }
 }